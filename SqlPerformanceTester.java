@@ -1,5 +1,7 @@
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
@@ -7,13 +9,9 @@ import java.sql.*;
 import java.util.*;
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.locks.LockSupport;
 import java.text.SimpleDateFormat;
-import java.time.Duration;
 import java.time.Instant;
-import java.time.OffsetDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Handler;
@@ -21,51 +19,118 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.SimpleFormatter;
 
+import perftest.BatchWorkload;
+import perftest.BindValues;
+import perftest.BindVariants;
+import perftest.HttpLogTailer;
+import perftest.ColdStart;
+import perftest.ConcurrentLoadRunner;
+import perftest.ConnectionBenchmark;
+import perftest.JdbcTiming;
+import perftest.JfrRecording;
+import perftest.JdbcUrls;
+import perftest.LatencyHistogram;
+import perftest.MemoryProbe;
+import perftest.PartitionedExtraction;
+import perftest.ResultComparison;
+import perftest.ResultConsumer;
+import perftest.ResultRecorder;
+import perftest.ResultsFile;
+import perftest.SoakRunner;
+import perftest.SweepRunner;
+import perftest.TargetMatrix;
+import perftest.LiveMetrics;
+import perftest.Options;
+import perftest.QueryFile;
+import perftest.QuerySpec;
+
 public class SqlPerformanceTester {
 
     private static final String CONFIG_FILE = "config.properties";
     private static final String QUERIES_FILE = "queries.sql";
     private static final String FILE_PREFIX = "performance_results_";
     private static final String INPUT_FILE = "fullLogs.log";
-    public static int globalOffset = 0;
-    public static int globalOffsetLines = 0;
-    private static final String START_TEXT = "Request completed in ";
-    private static final String END_TEXT = "ms";
 
-    //Class for getting the Timestamp and duration
-    public static class HTTPDurationResult {
-        private final String timestamp;
-        private final long sumOfDurations;
+    // Every --option the run modes read; anything else is a typo and is rejected
+    private static final Set<String> OPTIONS = new HashSet<>(Arrays.asList(
+        "config", "queries", "warmup", "fetch-strategy", "jdbc-timing",
+        "threads", "virtual-threads", "pool", "rate",
+        "sweep", "fetch-size", "max-rows", "url-property",
+        "partitioned", "parallelism",
+        "bind-variants", "batch", "batch-size", "commit-every",
+        "connections", "callers",
+        "duration", "window",
+        "targets",
+        "jfr", "jfr-settings", "metrics-file", "metrics-interval", "quiet", "label", "record-buffer",
+        "fork", "fork-jvm-args", "output-base"));
 
-        public HTTPDurationResult(String timestamp, long sumOfDurations) {
-            this.timestamp = timestamp;
-            this.sumOfDurations = sumOfDurations;
-        }
+    // Options that choose the run mode; at most one may be given
+    private static final List<String> MODES = Arrays.asList(
+        "duration", "connections", "batch", "bind-variants", "partitioned", "sweep", "threads", "targets");
 
-        public String getTimestamp() {
-            return timestamp;
-        }
+    // Options that only some modes read, and those modes ("default" is the mode chosen by no mode option)
+    private static final Map<String, List<String>> MODE_OPTIONS = new LinkedHashMap<>();
 
-        public long getSumOfDurations() {
-            return sumOfDurations;
-        }
+    static {
+        MODE_OPTIONS.put("rate", Arrays.asList("default"));
+        MODE_OPTIONS.put("fork", Arrays.asList("default"));
+        MODE_OPTIONS.put("jfr", Arrays.asList("default"));
+        MODE_OPTIONS.put("jfr-settings", Arrays.asList("default"));
+        MODE_OPTIONS.put("quiet", Arrays.asList("default"));
+        MODE_OPTIONS.put("label", Arrays.asList("default"));
+        MODE_OPTIONS.put("record-buffer", Arrays.asList("default"));
+        MODE_OPTIONS.put("metrics-file", Arrays.asList("default", "threads", "duration"));
+        MODE_OPTIONS.put("metrics-interval", Arrays.asList("default", "threads", "duration"));
+        MODE_OPTIONS.put("jdbc-timing", Arrays.asList("default", "threads"));
+        MODE_OPTIONS.put("fetch-strategy", Arrays.asList("default", "threads", "sweep", "bind-variants", "connections", "duration", "targets"));
+        MODE_OPTIONS.put("virtual-threads", Arrays.asList("threads"));
+        MODE_OPTIONS.put("pool", Arrays.asList("threads", "connections"));
+        MODE_OPTIONS.put("fetch-size", Arrays.asList("sweep"));
+        MODE_OPTIONS.put("max-rows", Arrays.asList("sweep"));
+        MODE_OPTIONS.put("url-property", Arrays.asList("sweep"));
+        MODE_OPTIONS.put("parallelism", Arrays.asList("partitioned"));
+        MODE_OPTIONS.put("batch-size", Arrays.asList("batch"));
+        MODE_OPTIONS.put("commit-every", Arrays.asList("batch"));
+        MODE_OPTIONS.put("callers", Arrays.asList("connections"));
+        MODE_OPTIONS.put("window", Arrays.asList("duration"));
     }
 
     private static final Logger LOGGER = Logger.getLogger(SqlPerformanceTester.class.getName());
+    // Parent of the loggers used by the perftest classes, so they share the run's handlers
+    private static final Logger HARNESS_LOGGER = Logger.getLogger("perftest");
 
     public static void main(String[] args) {
+        if (args.length >= 3 && args[0].equalsIgnoreCase("merge-histograms")) {
+            mergeHistograms(args[1], Arrays.asList(args).subList(2, args.length));
+            return;
+        }
+        if (args.length >= 3 && args[0].equalsIgnoreCase("compare")) {
+            compareResults(args[1], args[2], args);
+            return;
+        }
         if (args.length < 2) {
-            System.out.println("Usage 1 (Single Query): java SqlPerformanceTester <query_name_or_index> <iterations>");
-            System.out.println("Usage 2 (All Queries): java SqlPerformanceTester all <iterations>");
-            System.out.println("Example (Single): java SqlPerformanceTester Q2 100");
-            System.out.println("Example (All): java SqlPerformanceTester all 50");
+            printUsage();
             return;
         }
         
+        Options options;
+        try {
+            options = Options.parse(args, 2, OPTIONS);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            printUsage();
+            return;
+        }
+
         // --- 0. Setup File Names ---
         String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date().getTime());
-        String csvFileName = FILE_PREFIX + timestamp + ".csv";
-        String logFileName = FILE_PREFIX + timestamp + ".log";
+        // Forked children are told which files to add to
+        String outputBase = options.getString("output-base", FILE_PREFIX + timestamp);
+        String csvFileName = outputBase + ".csv";
+        // The parent keeps its own log open, so forked children log per query
+        String logFileName = options.has("output-base")
+            ? outputBase + "_" + args[0].replaceAll("[^A-Za-z0-9_.-]", "_") + ".log"
+            : outputBase + ".log";
         
         setupLogging(logFileName);
 
@@ -87,13 +152,15 @@ public class SqlPerformanceTester {
         LOGGER.config("Starting SQL Performance Tester with arguments: " + Arrays.toString(args));
 
         // --- 1. Load Configuration and Queries ---
-        Properties props = loadProperties();
+        String configFile = options.getString("config", CONFIG_FILE);
+        String queriesFile = options.getString("queries", QUERIES_FILE);
+        Properties props = loadProperties(configFile);
         if (props == null) return;
 
-        Map<String, String> allQueries = loadQueries();
+        Map<String, String> allQueries = loadQueries(queriesFile);
         if (allQueries == null || allQueries.isEmpty()) {
-            LOGGER.severe("Error: Could not load queries from " + QUERIES_FILE + ".");
-            System.err.println("Error: Could not load queries from " + QUERIES_FILE + ".");
+            LOGGER.severe("Error: Could not load queries from " + queriesFile + ".");
+            System.err.println("Error: Could not load queries from " + queriesFile + ".");
             return;
         }
 
@@ -144,16 +211,159 @@ public class SqlPerformanceTester {
         LOGGER.info("CSV output path: " + csvFileName);
         LOGGER.info("Log output path: " + logFileName);
 
+        // Values for ? placeholders, from -- @binds / -- @bind directives
+        Map<String, BindValues> bindValues = loadBindValues(queriesToRun, queriesFile);
+        if (bindValues == null) return;
+
+        // Named targets (targets= in the configuration, or --targets) are compared side by side;
+        // --targets none runs against the plain jdbc.* connection instead
+        String targetNames = options.getString("targets", props.getProperty("targets"));
+        if (targetNames != null && targetNames.trim().equalsIgnoreCase("none")) {
+            targetNames = null;
+        }
+        String modeError = checkMode(options, targetNames, configFile);
+        if (modeError != null) {
+            LOGGER.severe("Error: " + modeError);
+            System.err.println("Error: " + modeError);
+            return;
+        }
+
         // --- 3. Execute Test(s) ---
-        runPerformanceTests(props, queriesToRun, iterations, csvFileName);
+        if (options.getFlag("fork")) {
+            runForked(queriesToRun, iterations, csvFileName, options);
+        } else if (options.has("duration")) {
+            runSoak(props, queriesToRun, bindValues, csvFileName, options);
+        } else if (options.getFlag("connections")) {
+            runConnectionBenchmark(props, queriesToRun, iterations, csvFileName, options);
+        } else if (options.getFlag("batch")) {
+            runBatchWrites(props, queriesToRun, bindValues, queriesFile, iterations, csvFileName, options);
+        } else if (options.getFlag("bind-variants")) {
+            runBindVariants(props, queriesToRun, bindValues, queriesFile, iterations, csvFileName, options);
+        } else if (options.getFlag("partitioned")) {
+            runPartitioned(props, queriesToRun, queriesFile, iterations, csvFileName, options);
+        } else if (options.getFlag("sweep")) {
+            runSweep(props, queriesToRun, iterations, csvFileName, options);
+        } else if (options.has("threads")) {
+            runConcurrentLoadTest(props, queriesToRun, iterations, csvFileName, options);
+        } else if (targetNames != null) {
+            runTargetMatrix(props, targetNames, queriesToRun, bindValues, iterations, csvFileName, options);
+        } else {
+            runPerformanceTests(props, queriesToRun, bindValues, iterations, csvFileName, options);
+        }
+    }
+    /**
+     * Checks that at most one mode is chosen and that every option given applies to
+     * it. Returns the error, or null when the combination is fine.
+     */
+    private static String checkMode(Options options, String targetNames, String configFile) {
+        List<String> modes = new ArrayList<>();
+        for (String mode : MODES) {
+            if (mode.equals("targets") ? targetNames != null : options.has(mode)) {
+                modes.add(mode);
+            }
+        }
+        boolean configTargets = targetNames != null && !options.has("targets");
+        if (modes.size() > 1) {
+            if (configTargets) {
+                return configFile + " names targets (targets=" + targetNames + "), which cannot be combined with --"
+                    + modes.get(0) + ". Add --targets none to use the plain jdbc.* connection.";
+            }
+            return "--" + String.join(" and --", modes) + " are separate modes and cannot be combined.";
+        }
+        String mode = modes.isEmpty() ? "default" : modes.get(0);
+        for (Map.Entry<String, List<String>> entry : MODE_OPTIONS.entrySet()) {
+            List<String> allowed = entry.getValue();
+            if (!options.has(entry.getKey()) || allowed.contains(mode)) {
+                continue;
+            }
+            String error = "--" + entry.getKey() + " does not apply " + describeMode(mode, configTargets)
+                + "; it only applies " + describeModes(allowed) + ".";
+            if (configTargets) {
+                error += " Add --targets none to use the plain jdbc.* connection.";
+            }
+            return error;
+        }
+        if (options.has("fork-jvm-args") && !options.getFlag("fork")) {
+            return "--fork-jvm-args only applies with --fork.";
+        }
+        return null;
     }
+
+    private static String describeMode(String mode, boolean configTargets) {
+        if (mode.equals("default")) {
+            return "to the default mode";
+        }
+        return configTargets ? "to the targets named in the configuration" : "with --" + mode;
+    }
+
+    private static String describeModes(List<String> modes) {
+        List<String> names = new ArrayList<>();
+        for (String mode : modes) {
+            names.add(mode.equals("default") ? "to the default mode" : "with --" + mode);
+        }
+        return String.join(" or ", names);
+    }
+
+    private static void printUsage() {
+        System.out.println("Usage 1 (Single Query): java SqlPerformanceTester <query_name_or_index> <iterations>");
+        System.out.println("Usage 2 (All Queries): java SqlPerformanceTester all <iterations>");
+        System.out.println("Example (Single): java SqlPerformanceTester Q2 100");
+        System.out.println("Example (All): java SqlPerformanceTester all 50");
+        System.out.println();
+        System.out.println("Options:");
+        System.out.println("  --config <file>       Connection settings to use instead of config.properties");
+        System.out.println("  --queries <file>      Queries to use instead of queries.sql");
+        System.out.println("  --threads <n>         Concurrent load mode with n workers");
+        System.out.println("  --virtual-threads     Run the workers on virtual threads (Java 21+)");
+        System.out.println("  --pool <n>            Workers share a pool of n connections instead of one each");
+        System.out.println("  --rate <per_second>   Open-loop mode: start runs on a fixed schedule, report response time from the scheduled start");
+        System.out.println("  --fetch-strategy <s>  How rows are read: object (default), typed, string or cursor");
+        System.out.println("  --sweep               Try every combination of the settings below and rank them");
+        System.out.println("    --fetch-size <list>         Statement.setFetchSize values, e.g. 0,100..1000:300");
+        System.out.println("    --max-rows <list>           Statement.setMaxRows values");
+        System.out.println("    --url-property <name=list>  Connection-string property values, e.g. PageSize=100,500 (repeatable)");
+        System.out.println("  --partitioned         Fetch each query's -- @partition predicates concurrently and compare with one cursor");
+        System.out.println("    --parallelism <list>        Numbers of connections to try, e.g. 1,2,4,8 (default: powers of 2 up to the partition count)");
+        System.out.println("  --bind-variants       Compare prepared once, prepared per execution and plain Statement with the same bind values");
+        System.out.println("  --batch               Run the -- @rows write workloads through addBatch/executeBatch for each batch size");
+        System.out.println("    --batch-size <list>         Batch sizes to try, e.g. 1,10,100,1000 (default: the query's -- @batch-size)");
+        System.out.println("    --commit-every <n>          Rows per transaction, 0 for auto-commit (default: the query's -- @commit-every)");
+        System.out.println("  --connections         Time connect, first and later connections, and compare a new connection per query, reused connections and a pool");
+        System.out.println("    --callers <list>            Numbers of concurrent callers, e.g. 1,8 (default)");
+        System.out.println("    --pool <n>                  Size of the pool (default 4)");
+        System.out.println("  --duration <time>     Soak mode: run the queries in turn for e.g. 30m or 2h (iterations are ignored) and watch for drift");
+        System.out.println("    --window <time>             Length of the reporting windows (default: a twentieth of the duration)");
+        System.out.println("  --targets <list>      Run against the named targets of the configuration in turn and compare them side by side");
+        System.out.println("                        (default: the targets= key; see target.<name>.jdbc.url, .jdbc.driver.class, .jdbc.driver.path)");
+        System.out.println("                        --targets none runs against the plain jdbc.* connection");
+        System.out.println("  --warmup <n>          Unmeasured runs per query before the measured ones");
+        System.out.println("  --jdbc-timing         Time every JDBC call through a proxy and report per-call histograms");
+        System.out.println("  --jfr                 Record the measured iterations of each query with Java Flight Recorder");
+        System.out.println("    --jfr-settings <name>       JFR settings to use: profile (default) or default");
+        System.out.println("  --metrics-file <file> Keep live counters and latency percentiles in this file in the Prometheus text format (always published over JMX)");
+        System.out.println("    --metrics-interval <time>   How often the file is rewritten (default 10s)");
+        System.out.println("  --quiet               Leave out the per-run console lines");
+        System.out.println("  --label <text>        Name for the run in the .results file (default: the driver name and version)");
+        System.out.println("  --record-buffer <n>   Runs the result recorder buffers before the timed loop waits for it (default 4096)");
+        System.out.println("  --fork                Run each query in a fresh JVM (JVM options via --fork-jvm-args \"-Xmx2g ...\")");
+        System.out.println("Give at most one of --threads, --sweep, --partitioned, --bind-variants, --batch, --connections, --duration and --targets.");
+        System.out.println("Example (Load): java SqlPerformanceTester all 50 --threads 32 --pool 8");
+        System.out.println("Merge histograms: java SqlPerformanceTester merge-histograms <output.hist> <input.hist>...");
+        System.out.println("Compare runs: java SqlPerformanceTester compare <baseline.results> <candidate.results> [--alpha 0.01] [--min-change 5]");
+        System.out.println("              (exit status 1 when a query got significantly slower)");
+    }
+
     private static void setupLogging(String logFileName) {
         LOGGER.setLevel(Level.FINER); // Set logger level to FINE (Verbosity 2)
+        HARNESS_LOGGER.setLevel(Level.FINER);
         
         // Remove existing handlers to prevent duplicate output
         for (Handler handler : LOGGER.getHandlers()) {
             LOGGER.removeHandler(handler);
         }
+        for (Handler handler : HARNESS_LOGGER.getHandlers()) {
+            HARNESS_LOGGER.removeHandler(handler);
+        }
 
         try {
             // File Handler: Logs detailed information to the file
@@ -161,11 +371,16 @@ public class SqlPerformanceTester {
             fileHandler.setFormatter(new SimpleFormatter());
             fileHandler.setLevel(Level.FINER);
             LOGGER.addHandler(fileHandler);
+            HARNESS_LOGGER.addHandler(fileHandler);
 
-            // Console Handler: Logs INFO and above to the console (user-facing status)
+            // Console Handler: only warnings and errors; the status lines are printed directly
             ConsoleHandler consoleHandler = new ConsoleHandler();
-            consoleHandler.setLevel(Level.FINER);
+            consoleHandler.setLevel(Level.WARNING);
             LOGGER.addHandler(consoleHandler);
+            HARNESS_LOGGER.addHandler(consoleHandler);
+            // The root logger has a console handler of its own
+            LOGGER.setUseParentHandlers(false);
+            HARNESS_LOGGER.setUseParentHandlers(false);
 
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Could not set up file logging.", e);
@@ -173,144 +388,859 @@ public class SqlPerformanceTester {
     }
 
     /**
-     * Loads JDBC connection properties from config.properties.
+     * Loads JDBC connection properties from config.properties, or the file given with --config.
      */
-    private static Properties loadProperties() {
+    private static Properties loadProperties(String configFile) {
         Properties props = new Properties();
-        LOGGER.info("Loading configuration from " + CONFIG_FILE + "...");
-        try (InputStream input = Files.newInputStream(Paths.get(CONFIG_FILE))) {
+        LOGGER.info("Loading configuration from " + configFile + "...");
+        try (InputStream input = Files.newInputStream(Paths.get(configFile))) {
             props.load(input);
             return props;
         } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, "Error: Could not read " + CONFIG_FILE, ex);
-            System.err.println("Error: Could not read " + CONFIG_FILE + ". Ensure it exists and is correctly formatted.");
+            LOGGER.log(Level.SEVERE, "Error: Could not read " + configFile, ex);
+            System.err.println("Error: Could not read " + configFile + ". Ensure it exists and is correctly formatted.");
             return null;
         }
     }
 
     /**
-     * Loads SQL queries from queries.sql. 
+     * Loads SQL queries from queries.sql, or the file given with --queries.
      * Uses $$QueryName$$ delimiters.
      */
-    private static Map<String, String> loadQueries() {
-        Map<String, String> queries = new LinkedHashMap<>();
+    private static Map<String, String> loadQueries(String queriesFile) {
+        Map<String, String> queries;
         try {
-            String content = new String(Files.readAllBytes(Paths.get(QUERIES_FILE)));
-            
-            // Pattern to find $$QueryName$$ markers across multiple lines
-            // (\\s*\\$\\$\\s*([^$]*?)\\s*\\$\\$\\s*) captures the full marker block
-            Pattern pattern = Pattern.compile("(\\s*\\$\\$\\s*([^$]*?)\\s*\\$\\$\\s*)", Pattern.DOTALL);
-            Matcher matcher = pattern.matcher(content);
-            
-            int lastEnd = 0;
-            String previousName = null;
-            LOGGER.fine("Starting query parsing...");
-
-            while (matcher.find()) {
-                if (previousName != null) {
-                    // Extract the query content between the previous marker and the current one
-                    String queryContent = content.substring(lastEnd, matcher.start()).trim();
-                    if (!queryContent.isEmpty()) {
-                        queries.put(previousName, queryContent);
-                        LOGGER.fine("Parsed Query: " + previousName + " (Length: " + queryContent.length() + ")");
-                    }
+            queries = QueryFile.load(Paths.get(queriesFile));
+            LOGGER.info("Successfully parsed " + queries.size() + " queries.");
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error reading queries file: " + queriesFile, e);
+            return null;
+        }
+        return queries;
+    }
+
+    /**
+     * Loads the bind values of the queries that declare them, keyed by query name.
+     * Returns null after reporting the error if a bind source is missing or does
+     * not match the query's placeholders.
+     */
+    private static Map<String, BindValues> loadBindValues(Map<String, String> queriesToRun, String queriesFile) {
+        Map<String, BindValues> bindValues = new LinkedHashMap<>();
+        try {
+            Path queriesPath = Paths.get(queriesFile).toAbsolutePath();
+            Map<String, QuerySpec> allSpecs = QueryFile.loadSpecs(queriesPath);
+            for (String queryName : queriesToRun.keySet()) {
+                BindValues binds = BindValues.forQuery(allSpecs.get(queryName), queriesPath.getParent());
+                if (binds != null) {
+                    bindValues.put(queryName, binds);
+                    LOGGER.info("Query " + queryName + " binds " + binds.getParameterCount() + " values per run from " + binds.getSource());
                 }
-                
-                // Group 2 is the actual query name between $$ markers
-                previousName = matcher.group(2).trim();
-                lastEnd = matcher.end();
             }
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.severe("Error: " + e.getMessage());
+            System.err.println("Error: Could not load bind values: " + e.getMessage());
+            return null;
+        }
+        return bindValues;
+    }
 
-            // Handle the final query block (from the last marker to the end of the file)
-            if (previousName != null) {
-                String finalQueryContent = content.substring(lastEnd).trim();
-                if (!finalQueryContent.isEmpty()) {
-                    queries.put(previousName, finalQueryContent);
-                    LOGGER.fine("Parsed Final Query: " + previousName + " (Length: " + finalQueryContent.length() + ")");
-                }
+    /**
+     * Returns the queries without ? placeholders, for the modes that do not bind
+     * values. Each query left out gets a "skipped" line in {@code skipped} rather
+     * than running unbound and failing every execution.
+     */
+    private static Map<String, String> unboundQueries(Map<String, String> queriesToRun, String mode, List<String> skipped) {
+        Map<String, String> queries = new LinkedHashMap<>();
+        for (Map.Entry<String, String> query : queriesToRun.entrySet()) {
+            if (BindValues.countPlaceholders(query.getValue()) == 0) {
+                queries.put(query.getKey(), query.getValue());
+            } else {
+                String message = "Query " + query.getKey() + " skipped: it has ? placeholders, which " + mode + " does not bind.";
+                LOGGER.warning(message);
+                skipped.add(message);
             }
-            LOGGER.info("Successfully parsed " + queries.size() + " queries.");
+        }
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException(mode + " needs at least one query without ? placeholders.");
+        }
+        return queries;
+    }
 
+    /**
+     * Executes the query, first binding the next row of values when it has any.
+     */
+    private static ResultSet executeBound(PreparedStatement stmt, BindValues binds) throws SQLException {
+        if (binds != null) {
+            binds.bind(stmt, binds.next());
+        }
+        return stmt.executeQuery();
+    }
+
+    /**
+     * Reads the HTTP log lines the driver wrote since the previous poll. A log that
+     * cannot be read yields an empty result rather than aborting the run.
+     */
+    private static HttpLogTailer.Result pollHttpLog(HttpLogTailer httpLog) {
+        try {
+            return httpLog.poll();
         } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Error reading queries file: " + QUERIES_FILE, e);
-            return null;
+            LOGGER.log(Level.WARNING, "Error reading HTTP log: " + httpLog.getPath(), e);
+            System.err.println("Error reading source file: " + httpLog.getPath());
+            return new HttpLogTailer.Result(null, 0, 0);
         }
-        return queries;
     }
 
-    public static HTTPDurationResult extractHTTPDurationVerbosity2Timestamp(String sourcePath, int offset) {
-        
-        // --- Step 1: Initialization ---
-        
-        List<Long> extractedNumbers = new ArrayList<>();
-        String extractedTimestamp = null; 
-        
-        int startIndex = START_TEXT.length(); 
-        int currentLineNumber = 0; // Tracks the physical line number in the file (0-indexed)
-        
-        // --- Step 2: Read the file, extract numbers, and the specific timestamp ---
-        
-        try (BufferedReader br = new BufferedReader(new FileReader(sourcePath))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                
-                // A. Check for Timestamp Extraction
-                if (currentLineNumber == SqlPerformanceTester.globalOffsetLines) {
-                    int tsEnd = line.indexOf("\t");
-                    if (tsEnd != -1) {
-                        // Extract the timestamp up to the first decimal point
-                        extractedTimestamp = line.substring(0, tsEnd); 
-                    }
+    private static boolean hasConnectionProperties(Properties props) {
+        if (props.getProperty("jdbc.url") == null || props.getProperty("jdbc.username") == null
+                || props.getProperty("jdbc.password") == null || props.getProperty("jdbc.driver.class") == null) {
+            LOGGER.severe("Missing required properties in config.properties.");
+            System.err.println("Missing required properties in config.properties.");
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean loadDriver(String driverClass) {
+        try {
+            LOGGER.info("Attempting to load JDBC driver: " + driverClass);
+            Class.forName(driverClass);
+            return true;
+        } catch (ClassNotFoundException e) {
+            LOGGER.log(Level.SEVERE, "FATAL ERROR: JDBC Driver class '" + driverClass + "' not found. Check classpath.", e);
+            System.err.println("FATAL ERROR: JDBC Driver class '" + driverClass + "' not found. Check classpath.");
+            return false;
+        }
+    }
+
+    /**
+     * Runs each query in its own freshly started JVM (--fork), so JIT state, class
+     * loading and driver caches left behind by one query do not carry over to the
+     * next. The children add to this run's CSV, log and histogram files.
+     */
+    private static void runForked(Map<String, String> queriesToRun, int iterations, String csvFileName, Options options) {
+        String javaExecutable = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> jvmArgs = options.has("fork-jvm-args")
+            ? Arrays.asList(options.getString("fork-jvm-args", "").trim().split("\\s+"))
+            : ManagementFactory.getRuntimeMXBean().getInputArguments();
+        List<String> childOptions = options.toArgs("fork", "fork-jvm-args", "output-base");
+
+        List<String> summaries = new ArrayList<>();
+        for (String queryName : queriesToRun.keySet()) {
+            List<String> command = new ArrayList<>();
+            command.add(javaExecutable);
+            for (String jvmArg : jvmArgs) {
+                if (!jvmArg.isEmpty()) {
+                    command.add(jvmArg);
                 }
-                
-                // B. Check for Duration Extraction
-                int start = line.indexOf(START_TEXT);
-                if (start != -1) {
-                    int numberStart = start + startIndex;
-                    int numberEnd = line.indexOf(END_TEXT, numberStart);
+            }
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(SqlPerformanceTester.class.getName());
+            command.add(queryName);
+            command.add(String.valueOf(iterations));
+            command.addAll(childOptions);
+            command.add("--output-base");
+            command.add(outputBase(csvFileName));
 
-                    if (numberEnd != -1) {
-                        try {
-                            String numberStr = line.substring(numberStart, numberEnd).trim();
-                            extractedNumbers.add(Long.parseLong(numberStr));
-                        } catch (NumberFormatException e) {
-                            // Skip lines where number extraction fails
-                        }
-                    }
+            System.out.println("\n--- Forking JVM for Query: " + queryName + " ---");
+            LOGGER.info("Forking JVM: " + command);
+            try {
+                Process process = new ProcessBuilder(command).inheritIO().start();
+                int exitCode = process.waitFor();
+                summaries.add(String.format("Query %s: forked JVM exited with code %d", queryName, exitCode));
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Could not start a JVM for query " + queryName, e);
+                summaries.add(String.format("Query %s: could not start JVM (%s)", queryName, e.getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        System.out.println("\n==================================");
+        System.out.println("--- FORKED RUNS COMPLETED ---");
+        System.out.println("Results exported to " + csvFileName);
+        System.out.println("----------------------------------");
+        summaries.forEach(System.out::println);
+        System.out.println("==================================\n");
+    }
+
+    /**
+     * Runs the queries in turn until --duration is up and reports each window as it
+     * closes, then tests early against late windows for drift.
+     */
+    private static void runSoak(Properties props, Map<String, String> queriesToRun, Map<String, BindValues> bindValues,
+                                String csvFileName, Options options) {
+        if (!hasConnectionProperties(props)) {
+            return;
+        }
+        SoakRunner soak;
+        LiveMetrics metrics;
+        try {
+            long durationMillis = options.getDurationMillis("duration", 0);
+            long windowMillis = options.getDurationMillis("window", Math.max(1000, durationMillis / 20));
+            soak = new SoakRunner(props.getProperty("jdbc.url"), props.getProperty("jdbc.username"),
+                props.getProperty("jdbc.password"), queriesToRun, bindValues, durationMillis, windowMillis,
+                new ResultConsumer(ResultConsumer.Strategy.parse(options.getString("fetch-strategy", "object"))));
+            soak.setWarmup(parseWarmup(options));
+            metrics = openLiveMetrics(options);
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe("Error: " + e.getMessage());
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+
+        if (!loadDriver(props.getProperty("jdbc.driver.class"))) {
+            metrics.close();
+            return;
+        }
+
+        List<String> report;
+        soak.setLiveMetrics(metrics);
+        try (PrintWriter csvWriter = new PrintWriter(new FileWriter(csvFileName, false))) {
+            report = soak.run(csvWriter);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "FATAL SQL ERROR: Could not establish connection.", e);
+            System.err.println("\n--- FATAL SQL ERROR ---\nCould not establish connection.");
+            e.printStackTrace();
+            return;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "FATAL FILE ERROR: Could not write to CSV file.", e);
+            System.err.println("\n--- FATAL FILE ERROR ---\nCould not write to CSV file.");
+            e.printStackTrace();
+            return;
+        } finally {
+            metrics.close();
+        }
+
+        System.out.println("\n==================================");
+        System.out.println("--- SOAK SUMMARY ---");
+        System.out.println("Results exported to " + csvFileName);
+        System.out.println("----------------------------------");
+        for (String line : report) {
+            System.out.println(line);
+            LOGGER.info("Soak summary: " + line);
+        }
+        System.out.println("==================================\n");
+    }
+
+    /**
+     * Measures connection setup and compares connecting per query, reusing a
+     * connection and pooling under sequential and concurrent callers (--connections).
+     */
+    private static void runConnectionBenchmark(Properties props, Map<String, String> queriesToRun, int iterations,
+                                               String csvFileName, Options options) {
+        if (!hasConnectionProperties(props)) {
+            return;
+        }
+        List<String> skipped = new ArrayList<>();
+        ConnectionBenchmark benchmark;
+        try {
+            List<String> queries = new ArrayList<>(unboundQueries(queriesToRun, "--connections", skipped).values());
+            benchmark = new ConnectionBenchmark(props.getProperty("jdbc.url"), props.getProperty("jdbc.username"),
+                props.getProperty("jdbc.password"), queries, iterations,
+                SweepRunner.parseIntValues(options.getString("callers", "1,8")),
+                options.getInt("pool", 4),
+                ResultConsumer.Strategy.parse(options.getString("fetch-strategy", "object")));
+            benchmark.setWarmup(parseWarmup(options));
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe("Error: " + e.getMessage());
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+
+        if (!loadDriver(props.getProperty("jdbc.driver.class"))) {
+            return;
+        }
+
+        List<String> report;
+        try (PrintWriter csvWriter = new PrintWriter(new FileWriter(csvFileName, false))) {
+            report = benchmark.run(csvWriter);
+            report.addAll(0, skipped);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "FATAL FILE ERROR: Could not write to CSV file.", e);
+            System.err.println("\n--- FATAL FILE ERROR ---\nCould not write to CSV file.");
+            e.printStackTrace();
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        System.out.println("\n==================================");
+        System.out.println("--- CONNECTION BENCHMARK SUMMARY ---");
+        System.out.println("Results exported to " + csvFileName);
+        System.out.println("Connections in the connect series / operations per caller: " + iterations);
+        System.out.println("----------------------------------");
+        for (String line : report) {
+            System.out.println(line);
+            LOGGER.info("Connection benchmark summary: " + line);
+        }
+        System.out.println("==================================\n");
+    }
+
+    /**
+     * Runs the queries against every named target in turn, each driver in its own
+     * class loader, and reports them side by side.
+     */
+    private static void runTargetMatrix(Properties props, String targetNames, Map<String, String> queriesToRun,
+                                        Map<String, BindValues> bindValues, int iterations, String csvFileName, Options options) {
+        TargetMatrix matrix;
+        try {
+            matrix = new TargetMatrix(TargetMatrix.parseTargets(props, targetNames), queriesToRun, bindValues, iterations,
+                new ResultConsumer(ResultConsumer.Strategy.parse(options.getString("fetch-strategy", "object"))));
+            matrix.setWarmup(parseWarmup(options));
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe("Error: " + e.getMessage());
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+
+        List<String> report;
+        try (PrintWriter csvWriter = new PrintWriter(new FileWriter(csvFileName, false))) {
+            report = matrix.run(csvWriter);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "FATAL SQL ERROR: Could not connect to a target.", e);
+            System.err.println("\n--- FATAL SQL ERROR ---\nCould not connect to a target: " + e.getMessage());
+            return;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "FATAL FILE ERROR: Could not write to CSV file.", e);
+            System.err.println("\n--- FATAL FILE ERROR ---\nCould not write to CSV file.");
+            e.printStackTrace();
+            return;
+        }
+
+        System.out.println("\n==================================");
+        System.out.println("--- TARGET MATRIX SUMMARY ---");
+        System.out.println("Results exported to " + csvFileName);
+        System.out.println("Total queries run: " + queriesToRun.size());
+        System.out.println("Iterations per query per target: " + iterations);
+        System.out.println("----------------------------------");
+        for (String line : report) {
+            System.out.println(line);
+            LOGGER.info("Target matrix summary: " + line);
+        }
+        System.out.println("==================================\n");
+    }
+
+    /**
+     * Runs the write workloads (queries with -- @rows) through addBatch/executeBatch
+     * for each batch size (--batch) and reports throughput and HTTP round trips.
+     */
+    private static void runBatchWrites(Properties props, Map<String, String> queriesToRun, Map<String, BindValues> bindValues,
+                                       String queriesFile, int iterations, String csvFileName, Options options) {
+        if (!hasConnectionProperties(props)) {
+            return;
+        }
+        BatchWorkload workload;
+        try {
+            List<QuerySpec> specs = new ArrayList<>();
+            Map<String, QuerySpec> allSpecs = QueryFile.loadSpecs(Paths.get(queriesFile));
+            for (String queryName : queriesToRun.keySet()) {
+                specs.add(allSpecs.get(queryName));
+            }
+            workload = new BatchWorkload(props.getProperty("jdbc.url"), props.getProperty("jdbc.username"),
+                props.getProperty("jdbc.password"), specs, bindValues, iterations,
+                SweepRunner.parseIntValues(options.getString("batch-size", "")),
+                options.getInt("commit-every", -1));
+            workload.setWarmup(parseWarmup(options));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error reading queries file: " + queriesFile, e);
+            System.err.println("Error: Could not read " + queriesFile + ": " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe("Error: " + e.getMessage());
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+
+        if (!loadDriver(props.getProperty("jdbc.driver.class"))) {
+            return;
+        }
+
+        List<String> report;
+        try (PrintWriter csvWriter = new PrintWriter(new FileWriter(csvFileName, false))) {
+            report = workload.run(csvWriter);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "FATAL FILE ERROR: Could not write to CSV file.", e);
+            System.err.println("\n--- FATAL FILE ERROR ---\nCould not write to CSV file.");
+            e.printStackTrace();
+            return;
+        }
+
+        System.out.println("\n==================================");
+        System.out.println("--- BATCH WRITE SUMMARY ---");
+        System.out.println("Results exported to " + csvFileName);
+        System.out.println("Iterations per batch size: " + iterations);
+        System.out.println("----------------------------------");
+        for (String line : report) {
+            System.out.println(line);
+            LOGGER.info("Batch write summary: " + line);
+        }
+        System.out.println("==================================\n");
+    }
+
+    /**
+     * Runs each query prepared once, prepared per execution and as a plain Statement
+     * with the same bind values (--bind-variants) and compares the three.
+     */
+    private static void runBindVariants(Properties props, Map<String, String> queriesToRun, Map<String, BindValues> bindValues,
+                                        String queriesFile, int iterations, String csvFileName, Options options) {
+        if (!hasConnectionProperties(props)) {
+            return;
+        }
+        BindVariants variants;
+        try {
+            List<QuerySpec> specs = new ArrayList<>();
+            Map<String, QuerySpec> allSpecs = QueryFile.loadSpecs(Paths.get(queriesFile));
+            for (String queryName : queriesToRun.keySet()) {
+                specs.add(allSpecs.get(queryName));
+            }
+            variants = new BindVariants(props.getProperty("jdbc.url"), props.getProperty("jdbc.username"),
+                props.getProperty("jdbc.password"), specs, bindValues, iterations,
+                new ResultConsumer(ResultConsumer.Strategy.parse(options.getString("fetch-strategy", "object"))));
+            variants.setWarmup(parseWarmup(options));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error reading queries file: " + queriesFile, e);
+            System.err.println("Error: Could not read " + queriesFile + ": " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe("Error: " + e.getMessage());
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+
+        if (!loadDriver(props.getProperty("jdbc.driver.class"))) {
+            return;
+        }
+
+        List<String> report;
+        try (PrintWriter csvWriter = new PrintWriter(new FileWriter(csvFileName, false))) {
+            report = variants.run(csvWriter);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "FATAL FILE ERROR: Could not write to CSV file.", e);
+            System.err.println("\n--- FATAL FILE ERROR ---\nCould not write to CSV file.");
+            e.printStackTrace();
+            return;
+        }
+
+        System.out.println("\n==================================");
+        System.out.println("--- BIND VARIANTS SUMMARY ---");
+        System.out.println("Results exported to " + csvFileName);
+        System.out.println("Iterations per variant: " + iterations);
+        System.out.println("----------------------------------");
+        for (String line : report) {
+            System.out.println(line);
+            LOGGER.info("Bind variants summary: " + line);
+        }
+        System.out.println("==================================\n");
+    }
+
+    /**
+     * Extracts each query in partitions on several connections at once (--partitioned)
+     * and reports speedup and efficiency against a single cursor.
+     */
+    private static void runPartitioned(Properties props, Map<String, String> queriesToRun, String queriesFile,
+                                       int iterations, String csvFileName, Options options) {
+        if (!hasConnectionProperties(props)) {
+            return;
+        }
+        List<QuerySpec> specs = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        PartitionedExtraction extraction;
+        try {
+            Map<String, QuerySpec> allSpecs = QueryFile.loadSpecs(Paths.get(queriesFile));
+            for (String queryName : unboundQueries(queriesToRun, "--partitioned", skipped).keySet()) {
+                specs.add(allSpecs.get(queryName));
+            }
+            extraction = new PartitionedExtraction(props.getProperty("jdbc.url"), props.getProperty("jdbc.username"),
+                props.getProperty("jdbc.password"), specs, iterations,
+                SweepRunner.parseIntValues(options.getString("parallelism", "")));
+            extraction.setWarmup(parseWarmup(options));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error reading queries file: " + queriesFile, e);
+            System.err.println("Error: Could not read " + queriesFile + ": " + e.getMessage());
+            return;
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe("Error: " + e.getMessage());
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+
+        if (!loadDriver(props.getProperty("jdbc.driver.class"))) {
+            return;
+        }
+
+        List<String> report;
+        try (PrintWriter csvWriter = new PrintWriter(new FileWriter(csvFileName, false))) {
+            report = extraction.run(csvWriter);
+            report.addAll(0, skipped);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "FATAL FILE ERROR: Could not write to CSV file.", e);
+            System.err.println("\n--- FATAL FILE ERROR ---\nCould not write to CSV file.");
+            e.printStackTrace();
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        System.out.println("\n==================================");
+        System.out.println("--- PARTITIONED EXTRACTION SUMMARY ---");
+        System.out.println("Results exported to " + csvFileName);
+        System.out.println("Iterations per setting: " + iterations);
+        System.out.println("----------------------------------");
+        for (String line : report) {
+            System.out.println(line);
+            LOGGER.info("Partitioned summary: " + line);
+        }
+        System.out.println("==================================\n");
+    }
+
+    /**
+     * Runs the specified queries under every combination of fetch size, max rows and
+     * connection-string properties (--sweep) and ranks the combinations per query.
+     */
+    private static void runSweep(Properties props, Map<String, String> queriesToRun, int iterations, String csvFileName, Options options) {
+        if (!hasConnectionProperties(props)) {
+            return;
+        }
+        String url = props.getProperty("jdbc.url");
+        String driverClass = props.getProperty("jdbc.driver.class");
+
+        List<String> skipped = new ArrayList<>();
+        SweepRunner runner;
+        try {
+            Map<String, String> queries = unboundQueries(queriesToRun, "--sweep", skipped);
+            Map<String, List<String>> urlProperties = new LinkedHashMap<>();
+            for (String spec : options.getAll("url-property")) {
+                int eq = spec.indexOf('=');
+                if (eq <= 0) {
+                    throw new IllegalArgumentException("--url-property expects Name=value1,value2 but was '" + spec + "'.");
                 }
-                
-                currentLineNumber++;
+                urlProperties.put(spec.substring(0, eq).trim(), SweepRunner.parseValues(spec.substring(eq + 1)));
             }
+            runner = new SweepRunner(url, props.getProperty("jdbc.username"), props.getProperty("jdbc.password"),
+                queries, iterations,
+                ResultConsumer.Strategy.parse(options.getString("fetch-strategy", "object")),
+                SweepRunner.parseIntValues(options.getString("fetch-size", "")),
+                SweepRunner.parseIntValues(options.getString("max-rows", "")),
+                urlProperties);
+            runner.setWarmup(parseWarmup(options));
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe("Error: " + e.getMessage());
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+
+        if (!loadDriver(driverClass)) {
+            return;
+        }
+
+        List<String> report;
+        try (PrintWriter csvWriter = new PrintWriter(new FileWriter(csvFileName, false))) {
+            report = runner.run(csvWriter);
+            report.addAll(0, skipped);
         } catch (IOException e) {
-            System.err.println("Error reading source file: " + sourcePath);
+            LOGGER.log(Level.SEVERE, "FATAL FILE ERROR: Could not write to CSV file.", e);
+            System.err.println("\n--- FATAL FILE ERROR ---\nCould not write to CSV file.");
             e.printStackTrace();
-            return new HTTPDurationResult(null, 0); 
+            return;
         }
 
-        int initialListSizeE = extractedNumbers.size();
-        
-        
-        if (offset > 0 && offset < initialListSizeE) {
-            extractedNumbers = extractedNumbers.subList(offset, initialListSizeE);
-        } else if (offset >= initialListSizeE) {
-            extractedNumbers.clear();
+        System.out.println("\n==================================");
+        System.out.println("--- SWEEP SUMMARY ---");
+        System.out.println("Results exported to " + csvFileName);
+        System.out.println("Iterations per combination: " + iterations);
+        System.out.println("----------------------------------");
+        for (String line : report) {
+            System.out.println(line);
+            LOGGER.info("Sweep summary: " + line);
         }
-        
-        long totalSum = 0;
-        for (Long number : extractedNumbers) {
-            totalSum += number;
+        System.out.println("==================================\n");
+    }
+
+    /**
+     * Runs the specified queries from several concurrent workers (--threads) and reports
+     * aggregate throughput next to per-worker latency and HTTP time.
+     */
+    private static void runConcurrentLoadTest(Properties props, Map<String, String> queriesToRun, int iterations, String csvFileName, Options options) {
+        if (!hasConnectionProperties(props)) {
+            return;
+        }
+        String url = props.getProperty("jdbc.url");
+        String user = props.getProperty("jdbc.username");
+        String password = props.getProperty("jdbc.password");
+        String driverClass = props.getProperty("jdbc.driver.class");
+
+        int threads;
+        int poolSize;
+        int warmup;
+        ResultConsumer.Strategy strategy;
+        List<String> skipped = new ArrayList<>();
+        Map<String, String> queries;
+        LiveMetrics metrics;
+        try {
+            queries = unboundQueries(queriesToRun, "--threads", skipped);
+            warmup = parseWarmup(options);
+            strategy = ResultConsumer.Strategy.parse(options.getString("fetch-strategy", "object"));
+            threads = options.getInt("threads", 1);
+            poolSize = options.getInt("pool", 0);
+            if (threads <= 0 || poolSize < 0) {
+                throw new IllegalArgumentException("--threads must be positive and --pool must not be negative.");
+            }
+            metrics = openLiveMetrics(options);
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe("Error: " + e.getMessage());
+            System.err.println("Error: " + e.getMessage());
+            return;
         }
+        boolean virtualThreads = options.getFlag("virtual-threads");
 
-        SqlPerformanceTester.globalOffset = initialListSizeE;
-        SqlPerformanceTester.globalOffsetLines = currentLineNumber;
-        
-        return new HTTPDurationResult(extractedTimestamp, totalSum);
+        if (!loadDriver(driverClass)) {
+            metrics.close();
+            return;
+        }
+
+        System.out.printf("Workers: %d (%s threads), %s\n\n", threads, virtualThreads ? "virtual" : "platform",
+            poolSize > 0 ? "shared pool of " + poolSize + " connections" : "one connection per worker");
+        LOGGER.info("Starting concurrent load with " + threads + " workers");
+
+        List<String> report;
+        ConcurrentLoadRunner runner = new ConcurrentLoadRunner(url, user, password, queries,
+            iterations, threads, virtualThreads, poolSize, strategy);
+        runner.setWarmup(warmup);
+        JdbcTiming timing = options.getFlag("jdbc-timing") ? new JdbcTiming() : null;
+        runner.setJdbcTiming(timing);
+        runner.setLiveMetrics(metrics);
+        try (PrintWriter csvWriter = new PrintWriter(new FileWriter(csvFileName, false))) {
+            report = runner.run(csvWriter);
+            report.addAll(0, skipped);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "FATAL SQL ERROR: Could not establish worker connections.", e);
+            System.err.println("\n--- FATAL SQL ERROR ---\nCould not establish worker connections.");
+            e.printStackTrace();
+            return;
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "FATAL FILE ERROR: Could not write to CSV file.", e);
+            System.err.println("\n--- FATAL FILE ERROR ---\nCould not write to CSV file.");
+            e.printStackTrace();
+            return;
+        } catch (IllegalStateException e) {
+            LOGGER.severe("Error: " + e.getMessage());
+            System.err.println("Error: " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            metrics.close();
+        }
+
+        System.out.println("\n==================================");
+        System.out.println("--- CONCURRENT LOAD SUMMARY ---");
+        System.out.println("Results exported to " + csvFileName);
+        System.out.println("Total queries run: " + queries.size());
+        System.out.println("Iterations per query per worker: " + iterations);
+        System.out.println("----------------------------------");
+        for (String line : report) {
+            System.out.println(line);
+            LOGGER.info("Load summary: " + line);
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : runner.getQueryHistograms().entrySet()) {
+            writeHistogram(csvFileName, entry.getKey(), "", entry.getValue());
+        }
+        if (timing != null) {
+            JdbcTiming.Snapshot calls = timing.snapshot();
+            long measuredNanos = 0;
+            for (LatencyHistogram histogram : runner.getQueryHistograms().values()) {
+                measuredNanos += (long) (histogram.getMean() * histogram.getCount());
+            }
+            System.out.println("JDBC calls, all workers (share of summed query time):");
+            for (String line : calls.summaryLines(measuredNanos)) {
+                System.out.println(line);
+                LOGGER.info("JDBC calls: " + line.trim());
+            }
+            Path jdbcCallsCsv = Paths.get(outputBase(csvFileName) + "_jdbc_calls.csv");
+            try {
+                JdbcTiming.writeCsv(jdbcCallsCsv, false, Collections.singletonMap("all", calls));
+                System.out.println("JDBC call timings exported to " + jdbcCallsCsv);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not write " + jdbcCallsCsv, e);
+            }
+        }
+        System.out.println("==================================\n");
+    }
+
+    /**
+     * Writes a query's histogram next to the CSV, e.g. performance_results_20250101_120000_Q1.hist.
+     */
+    private static void writeHistogram(String csvFileName, String queryName, String suffix, LatencyHistogram histogram) {
+        Path path = Paths.get(outputBase(csvFileName) + "_" + queryName.replaceAll("[^A-Za-z0-9_.-]", "_") + suffix + ".hist");
+        try {
+            histogram.write(path);
+            LOGGER.info("Histogram for " + queryName + " written to " + path);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write histogram " + path, e);
+            System.err.println("Could not write histogram " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The CSV file name without its extension; other output files are named after it.
+     */
+    private static String outputBase(String csvFileName) {
+        return csvFileName.endsWith(".csv") ? csvFileName.substring(0, csvFileName.length() - 4) : csvFileName;
+    }
+
+    /**
+     * Forked children (--output-base) add their lines to the CSV the parent named
+     * instead of starting a new one.
+     */
+    private static boolean isAppending(String csvFileName, Options options) {
+        File csv = new File(csvFileName);
+        return options.has("output-base") && csv.exists() && csv.length() > 0;
+    }
+
+    private static int parseWarmup(Options options) {
+        int warmup = options.getInt("warmup", 0);
+        if (warmup < 0) {
+            throw new IllegalArgumentException("--warmup must not be negative.");
+        }
+        return warmup;
+    }
+
+    /**
+     * Live metrics for the run, published as JMX MBeans and, with --metrics-file,
+     * rewritten to that file every --metrics-interval. Close it when the run is over.
+     */
+    private static LiveMetrics openLiveMetrics(Options options) {
+        long intervalMillis = options.getDurationMillis("metrics-interval", 10_000);
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("--metrics-interval must be positive.");
+        }
+        String file = options.getString("metrics-file", null);
+        return new LiveMetrics(file == null ? null : Paths.get(file), intervalMillis);
+    }
+
+    /**
+     * Opens the test connection and records how long it took, together with the
+     * HTTP traffic (OAuth refresh, metadata discovery) the driver logged meanwhile.
+     * With --jdbc-timing the connection is returned wrapped in the timing proxy.
+     */
+    private static Connection connect(String url, String user, String password, HttpLogTailer httpLog, ColdStart coldStart,
+                                      JdbcTiming timing) throws SQLException {
+        long startNanos = System.nanoTime();
+        Connection conn = DriverManager.getConnection(url, user, password);
+        coldStart.record("first connect", null, System.nanoTime() - startNanos, pollHttpLog(httpLog));
+        return timing == null ? conn : timing.wrap(conn);
+    }
+
+    /**
+     * Merges histogram files from separate runs into one and prints its percentiles.
+     */
+    private static void mergeHistograms(String outputFile, List<String> inputFiles) {
+        LatencyHistogram merged = new LatencyHistogram();
+        try {
+            for (String input : inputFiles) {
+                merged.merge(LatencyHistogram.read(Paths.get(input)));
+            }
+            merged.write(Paths.get(outputFile));
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+        System.out.println("Merged " + inputFiles.size() + " histograms into " + outputFile);
+        System.out.println(merged.summary());
+    }
+
+    /**
+     * Compares the results files of two runs query by query. Exits with status 1
+     * when a query got significantly slower, so a driver upgrade can be gated on it.
+     */
+    private static void compareResults(String baselineFile, String candidateFile, String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args, 3, Arrays.asList("alpha", "min-change"));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            printUsage();
+            return;
+        }
+        ResultComparison comparison;
+        List<String> report;
+        try {
+            comparison = new ResultComparison(ResultsFile.read(Paths.get(baselineFile)), ResultsFile.read(Paths.get(candidateFile)),
+                options.getDouble("alpha", 0.01), options.getDouble("min-change", 5) / 100);
+            report = comparison.run();
+        } catch (NoSuchFileException e) {
+            System.err.println("Error: No such file: " + e.getFile());
+            return;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+        System.out.println("\n==================================");
+        System.out.println("--- COMPARISON ---");
+        System.out.println("Baseline file:  " + baselineFile);
+        System.out.println("Candidate file: " + candidateFile);
+        System.out.println("----------------------------------");
+        report.forEach(System.out::println);
+        System.out.println("==================================\n");
+        if (comparison.hasRegression()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * The driver's name and version as it reports them, to label a results file.
+     */
+    private static String describeDriver(String url, Connection conn) {
+        try {
+            DatabaseMetaData meta = conn.getMetaData();
+            return meta.getDriverName() + " " + meta.getDriverVersion();
+        } catch (SQLException e) {
+            try {
+                Driver driver = DriverManager.getDriver(url);
+                return driver.getClass().getSimpleName() + " " + driver.getMajorVersion() + "." + driver.getMinorVersion();
+            } catch (SQLException ignored) {
+                return "unknown driver";
+            }
+        }
+    }
+
+    /**
+     * Names the part of the HTTP timeline that took the most time.
+     */
+    private static String largestShare(long leadMillis, long httpMillis, long gapMillis, long tailMillis) {
+        long largest = Math.max(Math.max(leadMillis, httpMillis), Math.max(gapMillis, tailMillis));
+        if (largest == httpMillis) {
+            return "mostly waiting on HTTP (network/server)";
+        }
+        if (largest == gapMillis) {
+            return "mostly between requests (driver decoding/client)";
+        }
+        if (largest == leadMillis) {
+            return "mostly before the first request (driver pre-processing)";
+        }
+        return "mostly after the last request (reading the final page)";
+    }
+
+    /**
+     * Sleeps until System.nanoTime() reaches the deadline; returns at once when it is already late.
+     */
+    private static void waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
     }
 
     /**
      * Connects to the database and runs the performance test for all specified queries.
      */
-    private static void runPerformanceTests(Properties props, Map<String, String> queriesToRun, int iterations, String csvFileName) {
+    private static void runPerformanceTests(Properties props, Map<String, String> queriesToRun, Map<String, BindValues> bindValues,
+                                            int iterations, String csvFileName, Options options) {
         String url = props.getProperty("jdbc.url");
         String user = props.getProperty("jdbc.username");
         String password = props.getProperty("jdbc.password");
@@ -322,9 +1252,42 @@ public class SqlPerformanceTester {
             return;
         }
 
+        // Open-loop mode: issue runs on a fixed schedule instead of back to back
+        double targetRate;
+        try {
+            targetRate = options.getDouble("rate", 0);
+            if (targetRate < 0) {
+                throw new IllegalArgumentException("--rate must not be negative.");
+            }
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe("Error: " + e.getMessage());
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+        long intervalNanos = targetRate > 0 ? (long) (1_000_000_000L / targetRate) : 0;
+
+        ResultConsumer consumer;
+        int warmup;
+        int recordBuffer;
+        LiveMetrics metrics;
+        try {
+            consumer = new ResultConsumer(ResultConsumer.Strategy.parse(options.getString("fetch-strategy", "object")));
+            warmup = parseWarmup(options);
+            recordBuffer = options.getInt("record-buffer", 4096);
+            if (recordBuffer <= 0) {
+                throw new IllegalArgumentException("--record-buffer must be positive.");
+            }
+            metrics = openLiveMetrics(options);
+        } catch (IllegalArgumentException e) {
+            LOGGER.severe("Error: " + e.getMessage());
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+
         // 0 Clean up Env
+        Path httpLogPath = JdbcUrls.httpLogPath(url, INPUT_FILE);
         try {
-            File logs = new File(INPUT_FILE);
+            File logs = httpLogPath.toFile();
             if (logs.delete()) {
                 System.out.println("deleted the file");
             }
@@ -333,135 +1296,284 @@ public class SqlPerformanceTester {
 
 
         // --- 1. Load JDBC Driver ---
-        try {
-            LOGGER.info("Attempting to load JDBC driver: " + driverClass);
-            Class.forName(driverClass);
-        } catch (ClassNotFoundException e) {
-            LOGGER.log(Level.SEVERE, "FATAL ERROR: JDBC Driver class '" + driverClass + "' not found. Check classpath.", e);
-            System.err.println("FATAL ERROR: JDBC Driver class '" + driverClass + "' not found. Check classpath.");
+        ColdStart coldStart = new ColdStart();
+        long driverLoadStartNanos = System.nanoTime();
+        if (!loadDriver(driverClass)) {
+            metrics.close();
             return;
         }
+        coldStart.record("driver load", null, System.nanoTime() - driverLoadStartNanos, null);
 
         // --- 2. Run Tests ---
         List<String> allSummaries = new ArrayList<>(); 
+        boolean appendCsv = isAppending(csvFileName, options);
+        JdbcTiming timing = options.getFlag("jdbc-timing") ? new JdbcTiming() : null;
+        Map<String, JdbcTiming.Snapshot> jdbcCalls = new LinkedHashMap<>();
+        MemoryProbe memory = new MemoryProbe();
+        boolean jfr = options.getFlag("jfr");
+        boolean quiet = options.getFlag("quiet");
+        Path resultsFile = Paths.get(outputBase(csvFileName) + ".results");
+        String jfrSettings = options.getString("jfr-settings", "profile");
         
         try (
             // Establish connection before the loop
-            Connection conn = DriverManager.getConnection(url, user, password);
-            PrintWriter csvWriter = new PrintWriter(new FileWriter(csvFileName, false))
+            HttpLogTailer httpLog = new HttpLogTailer(httpLogPath);
+            Connection conn = connect(url, user, password, httpLog, coldStart, timing);
+            PrintWriter csvWriter = new PrintWriter(new FileWriter(csvFileName, appendCsv));
+            PrintWriter timelineWriter = new PrintWriter(new FileWriter(outputBase(csvFileName) + "_timeline.csv", appendCsv));
+            // Measured runs are handed to a background writer; the CSV is written from the same records
+            ResultRecorder recorder = new ResultRecorder(resultsFile, csvWriter, timelineWriter,
+                options.getString("label", describeDriver(url, conn)), recordBuffer, !quiet)
         ) {
             LOGGER.info("Connection established successfully to: " + url);
             System.out.println("Connection established successfully.");
             
             // CSV Header
-            csvWriter.println("Query Name,Iteration,start-res,res-read,total,HTTPLogTime,start-HTTPStart");
+            if (!appendCsv) {
+                csvWriter.println(ResultsFile.CSV_HEADER);
+                timelineWriter.println("Query Name,Iteration,Request,start-offset,duration,gap-before,run-total");
+            }
 
             for (Map.Entry<String, String> entry : queriesToRun.entrySet()) {
                 String queryName = entry.getKey();
                 String query = entry.getValue();
+                BindValues binds = bindValues.get(queryName);
+                LiveMetrics.Query live = metrics.query(queryName);
+                int queryId = recorder.queryId(queryName);
+                long[] record = new long[ResultsFile.COLUMN_COUNT];
                 
                 System.out.println("\n--- Starting Test for Query: " + queryName + " ---");
+                if (binds != null) {
+                    System.out.println("Bind values: " + binds.getSource());
+                }
                 LOGGER.info("Starting run for query: " + queryName);
                 
-                List<Long> durations = new ArrayList<>();
-                long totalDurationNanos = 0;
+                // Service time: from the actual start of a run to its last row
+                LatencyHistogram serviceTimes = new LatencyHistogram();
+                // Response time: from the scheduled start, so queueing behind slow runs is counted
+                LatencyHistogram responseTimes = new LatencyHistogram();
+                LatencyHistogram firstRowTimes = new LatencyHistogram();
+                long totalRows = 0;
+                long totalBytes = 0;
+                long totalAllocated = 0;
+                long totalGcCount = 0;
+                long totalGcMillis = 0;
+                long maxPeakHeap = 0;
+                JfrRecording recording = null;
 
+                long prepareStartNanos = System.nanoTime();
                 try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                    coldStart.record("first prepare", queryName, System.nanoTime() - prepareStartNanos, pollHttpLog(httpLog));
                     LOGGER.fine("Prepared statement for query: " + queryName);
                     
-                    for (int i = 1; i <= iterations; i++) {
-                        System.out.printf("  Executing (Run %d/%d)... ", i, iterations);
-                        LOGGER.fine("Executing run " + i + " of " + iterations);
+                    // The first execute is the cold start and is never measured, even without --warmup
+                    int unmeasured = Math.max(warmup, 1);
+                    long scheduleStartNanos = System.nanoTime();
+                    for (int run = 1; run <= unmeasured + iterations; run++) {
+                        // Warmup runs come first and are left out of the statistics and the CSV
+                        boolean warmupRun = run <= unmeasured;
+                        int i = run - unmeasured;
+                        if (i == 1) {
+                            scheduleStartNanos = System.nanoTime();
+                        }
+                        if (timing != null) {
+                            timing.setRecording(!warmupRun);
+                        }
+                        if (jfr && i == 1) {
+                            // Only the measured iterations are recorded
+                            try {
+                                recording = JfrRecording.start(jfrSettings);
+                            } catch (IllegalStateException e) {
+                                LOGGER.log(Level.WARNING, "Continuing without JFR: " + e.getMessage(), e);
+                                System.err.println("Warning: " + e.getMessage() + " Continuing without JFR.");
+                                jfr = false;
+                            }
+                        }
+                        long intendedStartNanos = scheduleStartNanos + (i - 1) * intervalNanos;
+                        if (intervalNanos > 0 && !warmupRun) {
+                            waitUntil(intendedStartNanos);
+                        }
+                        // Measured runs are printed and logged by the recorder, after the fact
+                        if (warmupRun) {
+                            if (!quiet) {
+                                if (warmup == 0) {
+                                    System.out.print("  First execute (cold start)... ");
+                                } else {
+                                    System.out.printf("  Warmup (Run %d/%d)... ", run, warmup);
+                                }
+                            }
+                            LOGGER.fine("Executing warmup run " + run + " of " + unmeasured);
+                        } else {
+                            live.started();
+                        }
                         
+                        memory.start();
                         long startTimeNanos = System.nanoTime();
+                        if (intervalNanos == 0 || warmupRun) {
+                            intendedStartNanos = startTimeNanos;
+                        }
                         Instant startTimeInstant = Instant.now();
                         long resultReturnTimeNanos = System.nanoTime();
-                        try (ResultSet rs = stmt.executeQuery()) {
+                        try (ResultSet rs = executeBound(stmt, binds)) {
                             // Consume the entire result set
                             
                             resultReturnTimeNanos = System.nanoTime();
                             
                             //long preProcessing =  TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeNanos);
-                            int rowCount = 0;
-                            Object colValue;
-                            while (rs.next()) { 
-                                rowCount++;
-                                for (int l=1; l< rs.getMetaData().getColumnCount(); l++) {
-                                    colValue = rs.getObject(l);
-                                    //System.out.println(rs.getObject(l));
-                                }
-                            }
-                            LOGGER.fine("Run " + i + " returned " + rowCount + " rows.");
+                            consumer.consume(rs, startTimeNanos);
                         } catch (SQLException e) {
-                            LOGGER.log(Level.WARNING, "SQL Execution Error in Run " + i + " for query " + queryName, e);
-                            System.err.printf("\n  --- SQL ERROR in Run %d ---\n", i);
+                            LOGGER.log(Level.WARNING, "SQL Execution Error in Run " + run + " for query " + queryName, e);
+                            System.err.printf("\n  --- SQL ERROR in Run %d ---\n", run);
                             System.err.println("  Message: " + e.getMessage());
                             System.err.println("  ---------------------------\n");
+                            pollHttpLog(httpLog); // Keep this run's HTTP lines out of the next one
+                            if (!warmupRun) {
+                                live.failed();
+                            }
                             continue; // Skip timing for this failed run
                         }
                         
                         long resultParsedAllTimeNanos = System.nanoTime();
+                        memory.stop();
 
 
                         long durationNanos = resultParsedAllTimeNanos - startTimeNanos;
                         long durationMs = TimeUnit.NANOSECONDS.toMillis(resultParsedAllTimeNanos - startTimeNanos);
-                         
-
-                        durations.add(durationMs);
-                        totalDurationNanos += durationNanos;
-
-
-                        System.out.printf("Time: %d ms\n", durationMs);
-                        LOGGER.fine("Run " + i + " duration: " + durationMs + " ms");
-
-                        // Write to CSV
-                        //String sanitizedQuery = query.replace('\n', ' ');
-
-                        HTTPDurationResult runHTTPResult = extractHTTPDurationVerbosity2Timestamp(INPUT_FILE,SqlPerformanceTester.globalOffset);
-                        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-                        long durationPPMS = 0;
-                        //OffsetDateTime odt;
-
-                        OffsetDateTime odt = OffsetDateTime.parse(runHTTPResult.getTimestamp().replace("'", ""), formatter);
-                        Instant HTTPInstant = odt.toInstant();
-                        Duration PreProcessing = Duration.between(startTimeInstant, HTTPInstant);
-                        durationPPMS = PreProcessing.toMillis();
-
-                        csvWriter.printf("%s,%d,%d,%d,%d,%d,%d\n", 
-                            queryName, 
-                            i, 
-                            TimeUnit.NANOSECONDS.toMillis(resultReturnTimeNanos - startTimeNanos),
-                            TimeUnit.NANOSECONDS.toMillis(resultParsedAllTimeNanos - resultReturnTimeNanos),
-                            TimeUnit.NANOSECONDS.toMillis(resultParsedAllTimeNanos - startTimeNanos), 
-                            //startTimeNanos,
-                            //extractHTTPDurationVerbosity2(INPUT_FILE,SqlPerformanceTester.globalOffset)
-                            runHTTPResult.getSumOfDurations(),
-                            //runHTTPResult.getTimestamp(),
-                            //startTimeNanos,
-                            durationPPMS //runHTTPResult.getTimestamp(),
-                           
-                        );
 
+                        HttpLogTailer.Result runHTTPResult = pollHttpLog(httpLog);
+                        if (run == 1) {
+                            coldStart.record("first execute", queryName, durationNanos, runHTTPResult);
+                        }
+                        if (warmupRun) {
+                            if (!quiet) {
+                                System.out.printf(warmup == 0 ? "Time: %d ms\n" : "Time: %d ms (warmup)\n", durationMs);
+                            }
+                            LOGGER.fine("Warmup run " + run + " duration: " + durationMs + " ms, " + consumer.getRows() + " rows");
+                            continue;
+                        }
+
+                        live.completed(durationNanos, consumer.getRows(), runHTTPResult);
+                        serviceTimes.record(durationNanos);
+                        responseTimes.record(resultParsedAllTimeNanos - intendedStartNanos);
+                        if (consumer.getFirstRowNanos() >= 0) {
+                            firstRowTimes.record(consumer.getFirstRowNanos());
+                        }
+                        totalRows += consumer.getRows();
+                        totalBytes += consumer.getBytes();
+                        totalAllocated += Math.max(0, memory.getAllocatedBytes());
+                        totalGcCount += memory.getGcCount();
+                        totalGcMillis += memory.getGcMillis();
+                        maxPeakHeap = Math.max(maxPeakHeap, memory.getPeakHeapBytes());
+
+                        record[ResultsFile.ITERATION] = i;
+                        record[ResultsFile.START_RES_NANOS] = resultReturnTimeNanos - startTimeNanos;
+                        record[ResultsFile.RES_READ_NANOS] = resultParsedAllTimeNanos - resultReturnTimeNanos;
+                        record[ResultsFile.TOTAL_NANOS] = durationNanos;
+                        record[ResultsFile.HTTP_MILLIS] = runHTTPResult.getSumOfDurations();
+                        record[ResultsFile.QUEUE_DELAY_NANOS] = startTimeNanos - intendedStartNanos;
+                        record[ResultsFile.ROWS] = consumer.getRows();
+                        record[ResultsFile.FIRST_ROW_NANOS] = consumer.getFirstRowNanos();
+                        record[ResultsFile.EST_BYTES] = consumer.getBytes();
+                        record[ResultsFile.ALLOC_BYTES] = memory.getAllocatedBytes();
+                        record[ResultsFile.GC_COUNT] = memory.getGcCount();
+                        record[ResultsFile.GC_MILLIS] = memory.getGcMillis();
+                        record[ResultsFile.PEAK_HEAP_BYTES] = memory.getPeakHeapBytes();
+                        // The timeline and the HTTP columns are worked out by the recorder's thread
+                        recorder.record(queryId, record, startTimeInstant.toEpochMilli(), runHTTPResult);
                     }
+                    recorder.awaitDrained();
+                    ResultRecorder.HttpTotals httpTotals = recorder.getHttpTotals(queryId);
+                    LatencyHistogram pageTimes = httpTotals.getPageTimes();
+                    long timelineRuns = httpTotals.getTimelineRuns();
                     
                     // Generate and store summary for this query
-                    if (!durations.isEmpty()) {
-                        double averageDurationMs = (double) totalDurationNanos / iterations / 1_000_000.0;
-                        long minDurationMs = durations.stream().mapToLong(l -> l).min().orElse(0);
-                        long maxDurationMs = durations.stream().mapToLong(l -> l).max().orElse(0);
-                        
-                        String summary = String.format("Query %s: Avg=%.2f ms, Min=%d ms, Max=%d ms", 
-                            queryName, averageDurationMs, minDurationMs, maxDurationMs);
+                    if (serviceTimes.getCount() > 0) {
+                        String summary = String.format("Query %s: %s", queryName, serviceTimes.summary());
+                        if (serviceTimes.getCount() < iterations) {
+                            summary += String.format(" (%d failed runs excluded)", iterations - serviceTimes.getCount());
+                        }
                         allSummaries.add(summary);
                         LOGGER.info("Summary for " + queryName + ": " + summary);
+                        writeHistogram(csvFileName, queryName, "", serviceTimes);
+
+                        double serviceSeconds = serviceTimes.getMean() * serviceTimes.getCount() / 1_000_000_000.0;
+                        String throughput = String.format("  %s fetch: %d rows/run, %.1f rows/sec, ~%d bytes/run, first row p50=%.3f ms",
+                            consumer.getStrategy(), totalRows / serviceTimes.getCount(),
+                            serviceSeconds > 0 ? totalRows / serviceSeconds : 0.0,
+                            totalBytes / serviceTimes.getCount(),
+                            firstRowTimes.getValueAtPercentile(50) / 1_000_000.0);
+                        allSummaries.add(throughput);
+                        LOGGER.info("Summary for " + queryName + ": " + throughput.trim());
+
+                        String memoryUse = String.format("  memory: %.2f MB allocated/run (%d bytes/row), %d GCs, %d ms GC time, peak heap %.1f MB",
+                            totalAllocated / (1024.0 * 1024.0) / serviceTimes.getCount(),
+                            totalRows > 0 ? totalAllocated / totalRows : 0,
+                            totalGcCount, totalGcMillis, maxPeakHeap / (1024.0 * 1024.0));
+                        allSummaries.add(memoryUse);
+                        LOGGER.info("Summary for " + queryName + ": " + memoryUse.trim());
+
+                        if (pageTimes.getCount() > 0) {
+                            String http = String.format("  HTTP: %.1f requests/run, request p50=%.0f ms, p90=%.0f ms, Max=%.0f ms",
+                                (double) pageTimes.getCount() / serviceTimes.getCount(),
+                                pageTimes.getValueAtPercentile(50) / 1_000_000.0,
+                                pageTimes.getValueAtPercentile(90) / 1_000_000.0,
+                                pageTimes.getMax() / 1_000_000.0);
+                            allSummaries.add(http);
+                            LOGGER.info("Summary for " + queryName + ": " + http.trim());
+                        }
+                        if (timelineRuns > 0) {
+                            String split = String.format("  Per run: %d ms before the first request, %d ms in requests, %d ms between requests, %d ms after the last; %s",
+                                httpTotals.getLeadMillis() / timelineRuns, httpTotals.getHttpMillis() / timelineRuns,
+                                httpTotals.getGapMillis() / timelineRuns, httpTotals.getTailMillis() / timelineRuns,
+                                largestShare(httpTotals.getLeadMillis(), httpTotals.getHttpMillis(),
+                                    httpTotals.getGapMillis(), httpTotals.getTailMillis()));
+                            allSummaries.add(split);
+                            LOGGER.info("Summary for " + queryName + ": " + split.trim());
+                        }
+
+                        if (intervalNanos > 0) {
+                            String response = String.format("Query %s response @ %.2f/s: %s", queryName, targetRate, responseTimes.summary());
+                            allSummaries.add(response);
+                            LOGGER.info("Summary for " + queryName + ": " + response);
+                            writeHistogram(csvFileName, queryName, "_response", responseTimes);
+                        }
                     }
                 } catch (SQLException e) {
                     LOGGER.log(Level.SEVERE, "Fatal Error Preparing Query " + queryName, e);
                     System.err.println("\n--- Fatal Error Preparing Query " + queryName + " ---");
                     e.printStackTrace();
+                } finally {
+                    if (recording != null) {
+                        Path jfrFile = Paths.get(outputBase(csvFileName) + "_" + queryName.replaceAll("[^A-Za-z0-9_.-]", "_") + ".jfr");
+                        try {
+                            recording.stopAndDump(jfrFile);
+                            allSummaries.add("  JFR recording: " + jfrFile);
+                            LOGGER.info("JFR recording for " + queryName + " written to " + jfrFile);
+                        } catch (IllegalStateException e) {
+                            LOGGER.log(Level.WARNING, e.getMessage(), e);
+                            System.err.println("Warning: " + e.getMessage());
+                        }
+                    }
+                }
+
+                if (timing != null) {
+                    JdbcTiming.Snapshot calls = timing.snapshot();
+                    jdbcCalls.put(queryName, calls);
+                    if (!calls.isEmpty()) {
+                        allSummaries.add("  JDBC calls (share of measured time):");
+                        long measuredNanos = (long) (serviceTimes.getMean() * serviceTimes.getCount());
+                        for (String line : calls.summaryLines(measuredNanos)) {
+                            allSummaries.add("  " + line);
+                            LOGGER.info("JDBC calls for " + queryName + ": " + line.trim());
+                        }
+                    }
                 }
 
             }
+            if (recorder.getStalls() > 0) {
+                allSummaries.add(String.format("Result recorder: the timed loop waited for the writer %d times; raise --record-buffer",
+                    recorder.getStalls()));
+            }
         
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, "FATAL SQL ERROR: Could not execute test or establish connection.", e);
@@ -473,17 +1585,43 @@ public class SqlPerformanceTester {
             System.err.println("\n--- FATAL FILE ERROR ---\nCould not write to CSV file.");
             e.printStackTrace();
             return;
+        } finally {
+            metrics.close();
         }
 
         // --- 3. Display Final Summary ---
         System.out.println("\n==================================");
         System.out.println("--- ALL TESTS COMPLETED SUMMARY ---");
         System.out.println("Results exported to " + csvFileName);
+        System.out.println("Results file (for compare): " + resultsFile);
         //System.out.println("Log details exported to " + logFileName);
         System.out.println("Total queries run: " + queriesToRun.size());
         System.out.println("Iterations per query: " + iterations);
         System.out.println("----------------------------------");
         allSummaries.forEach(System.out::println);
+        if (!coldStart.isEmpty()) {
+            System.out.println("--- Cold start (not in the statistics above) ---");
+            for (String line : coldStart.summaryLines()) {
+                System.out.println(line);
+                LOGGER.info("Cold start: " + line.trim());
+            }
+            Path coldStartCsv = Paths.get(outputBase(csvFileName) + "_coldstart.csv");
+            try {
+                coldStart.writeCsv(coldStartCsv, appendCsv);
+                System.out.println("Cold start timings exported to " + coldStartCsv);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not write " + coldStartCsv, e);
+            }
+        }
+        if (!jdbcCalls.isEmpty()) {
+            Path jdbcCallsCsv = Paths.get(outputBase(csvFileName) + "_jdbc_calls.csv");
+            try {
+                JdbcTiming.writeCsv(jdbcCallsCsv, appendCsv, jdbcCalls);
+                System.out.println("JDBC call timings exported to " + jdbcCallsCsv);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not write " + jdbcCallsCsv, e);
+            }
+        }
         System.out.println("==================================\n");
     }
 }
@@ -0,0 +1,115 @@
+package perftest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import perftest.mock.MockDriver;
+
+class BindValuesTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void queryWithoutDirectivesHasNoBindValues() throws IOException {
+        assertNull(BindValues.forQuery(QuerySpec.parse("Q1", "SELECT 1"), dir));
+    }
+
+    @Test
+    void generatorsCycleThroughTheirValues() throws IOException {
+        BindValues values = BindValues.forQuery(QuerySpec.parse("Q1",
+            "-- @bind: seq:5..7\n-- @bind: list:main|dev\n-- @bind: date:2024-02-28..2024-03-01\n"
+                + "SELECT * FROM Commits WHERE Id > ? AND Branch = ? AND Day = ?"), dir);
+        assertEquals("@bind generators", values.getSource());
+        assertEquals(3, values.getParameterCount());
+        assertArrayEquals(new Object[] {5L, "main", Date.valueOf("2024-02-28")}, values.next());
+        assertArrayEquals(new Object[] {6L, "dev", Date.valueOf("2024-02-29")}, values.next());
+        assertArrayEquals(new Object[] {7L, "main", Date.valueOf("2024-03-01")}, values.next());
+        assertArrayEquals(new Object[] {5L, "dev", Date.valueOf("2024-02-28")}, values.next());
+    }
+
+    @Test
+    void randomGeneratorStaysInItsRangeAndRepeatsItself() {
+        BindValues first = BindValues.fromGenerators(Collections.singletonList("random:10..20"));
+        BindValues second = BindValues.fromGenerators(Collections.singletonList("random:10..20"));
+        for (int i = 0; i < 200; i++) {
+            long value = (Long) first.next()[0];
+            assertTrue(value >= 10 && value <= 20, "value " + value);
+            assertEquals(value, second.next()[0]);
+        }
+    }
+
+    @Test
+    void csvColumnsAreTypedAndEmptyFieldsAreNull() throws IOException {
+        Files.write(dir.resolve("params.csv"), ("id:int,name,amount:decimal,active:boolean\n"
+            + "1,\"Smith, J\",12.50,true\n"
+            + "\n"
+            + "2,,3,false\n").getBytes(StandardCharsets.UTF_8));
+        BindValues values = BindValues.forQuery(QuerySpec.parse("Q1",
+            "-- @binds: params.csv\nSELECT * FROM T WHERE Id = ? AND Name = ? AND Amount = ? AND Active = ?"), dir);
+        assertEquals("params.csv", values.getSource());
+        assertArrayEquals(new Object[] {1, "Smith, J", new BigDecimal("12.50"), true}, values.next());
+        assertArrayEquals(new Object[] {2, null, new BigDecimal("3"), false}, values.next());
+        assertEquals(1, values.next()[0]);
+    }
+
+    @Test
+    void placeholderCountMustMatchTheValues() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> BindValues.forQuery(
+            QuerySpec.parse("Q1", "-- @bind: seq:1..3\nSELECT * FROM T WHERE A = ? AND B = ?"), dir));
+        assertTrue(e.getMessage().contains("2 ? placeholders but 1 bind values"), e.getMessage());
+    }
+
+    @Test
+    void fileAndGeneratorsCannotBeMixed() {
+        assertThrows(IllegalArgumentException.class, () -> BindValues.forQuery(
+            QuerySpec.parse("Q1", "-- @binds: a.csv\n-- @bind: seq:1..3\nSELECT * FROM T WHERE A = ?"), dir));
+    }
+
+    @Test
+    void badGeneratorIsReported() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> BindValues.fromGenerators(Collections.singletonList("seq:9..1")));
+        assertTrue(e.getMessage().startsWith("Invalid @bind generator 'seq:9..1'"), e.getMessage());
+    }
+
+    @Test
+    void placeholdersInQuotesDoNotCount() {
+        assertEquals(2, BindValues.countPlaceholders("SELECT '?', \"a?\", [b?] FROM T WHERE A = ? AND B = ?"));
+        assertEquals("SELECT '?' FROM T WHERE A = 7 AND B = 'O''Brien' AND C = NULL AND D = TRUE",
+            BindValues.inline("SELECT '?' FROM T WHERE A = ? AND B = ? AND C = ? AND D = ?",
+                new Object[] {7, "O'Brien", null, true}));
+    }
+
+    @Test
+    void bindsThroughTheMockDriver() throws Exception {
+        BindValues values = BindValues.fromGenerators(Collections.singletonList("seq:1..3"));
+        try (Connection connection = new MockDriver().connect("jdbc:mock:Rows=3;Columns=1;", new Properties());
+             PreparedStatement stmt = connection.prepareStatement("SELECT * FROM T WHERE Id = ?")) {
+            values.bind(stmt, values.next());
+            try (ResultSet rs = stmt.executeQuery()) {
+                int rows = 0;
+                while (rs.next()) {
+                    rows++;
+                }
+                assertEquals(3, rows);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package perftest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import perftest.mock.MockDriver;
+
+class HttpLogTailerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void countsTheRequestsTheMockDriverLogs() throws Exception {
+        Path log = dir.resolve("http.log");
+        String url = "jdbc:mock:Rows=1000;Columns=2;PageSize=250;PageLatency=fixed:1;Logfile=" + log + ";";
+        try (HttpLogTailer tailer = new HttpLogTailer(log);
+             Connection connection = new MockDriver().connect(url, new Properties())) {
+            tailer.skipToEnd();
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT * FROM T")) {
+                while (rs.next()) {
+                    rs.getObject(1);
+                }
+            }
+            HttpLogTailer.Result result = tailer.poll();
+            assertEquals(4, result.getRequestCount());
+            assertEquals(4, result.getRequests().size());
+            for (HttpLogTailer.Request request : result.getRequests()) {
+                // The timestamp is parsed on first use; the start is derived from the end and the duration
+                assertEquals(request.getEndMillis() - request.getDurationMillis(), request.getStartMillis());
+            }
+            assertEquals(0, tailer.poll().getRequestCount());
+        }
+    }
+
+    @Test
+    void readsOnlyWhatWasAppendedSinceTheLastPoll() throws IOException {
+        Path log = dir.resolve("http.log");
+        append(log, request("2024-05-01T10:00:00.100+0000", 40));
+        try (HttpLogTailer tailer = new HttpLogTailer(log)) {
+            HttpLogTailer.Result first = tailer.poll();
+            assertEquals(1, first.getRequestCount());
+            assertEquals(40, first.getSumOfDurations());
+            assertEquals("2024-05-01T10:00:00.100+0000", first.getTimestamp());
+
+            append(log, request("2024-05-01T10:00:01.000+0000", 5) + request("2024-05-01T10:00:02.000+0000", 7));
+            HttpLogTailer.Result second = tailer.poll();
+            assertEquals(2, second.getRequestCount());
+            assertEquals(12, second.getSumOfDurations());
+            assertEquals(HttpLogTailer.parseMillis("2024-05-01T10:00:01.000+0000") - 5,
+                second.getRequests().get(0).getStartMillis());
+        }
+    }
+
+    @Test
+    void waitsForTheRestOfAPartialLine() throws IOException {
+        Path log = dir.resolve("http.log");
+        try (HttpLogTailer tailer = new HttpLogTailer(log)) {
+            append(log, "2024-05-01T10:00:00.100+0000\t[HTTP|Info] Request completed in 1");
+            assertEquals(0, tailer.poll().getRequestCount());
+            append(log, "23 ms.\n");
+            HttpLogTailer.Result result = tailer.poll();
+            assertEquals(1, result.getRequestCount());
+            assertEquals(123, result.getSumOfDurations());
+        }
+    }
+
+    @Test
+    void startsOverWhenTheLogIsTruncated() throws IOException {
+        Path log = dir.resolve("http.log");
+        append(log, request("2024-05-01T10:00:00.000+0000", 10) + request("2024-05-01T10:00:01.000+0000", 20));
+        try (HttpLogTailer tailer = new HttpLogTailer(log)) {
+            assertEquals(2, tailer.poll().getRequestCount());
+
+            Files.write(log, request("2024-05-01T10:00:02.000+0000", 3).getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.TRUNCATE_EXISTING);
+            HttpLogTailer.Result result = tailer.poll();
+            assertEquals(1, result.getRequestCount());
+            assertEquals(3, result.getSumOfDurations());
+        }
+    }
+
+    @Test
+    void finishesTheOldFileAndFollowsTheNewOneAfterRotation() throws IOException {
+        Path log = dir.resolve("http.log");
+        append(log, request("2024-05-01T10:00:00.000+0000", 10));
+        try (HttpLogTailer tailer = new HttpLogTailer(log)) {
+            assertEquals(1, tailer.poll().getRequestCount());
+
+            // Written to the old file just before it was rotated away
+            append(log, request("2024-05-01T10:00:01.000+0000", 20));
+            Files.move(log, dir.resolve("http.log.1"));
+            append(log, request("2024-05-01T10:00:02.000+0000", 30) + request("2024-05-01T10:00:03.000+0000", 40));
+
+            HttpLogTailer.Result result = tailer.poll();
+            assertEquals(3, result.getRequestCount());
+            assertEquals(90, result.getSumOfDurations());
+        }
+    }
+
+    @Test
+    void reportsNothingWhileTheLogDoesNotExist() throws IOException {
+        try (HttpLogTailer tailer = new HttpLogTailer(dir.resolve("missing.log"))) {
+            HttpLogTailer.Result result = tailer.poll();
+            assertEquals(0, result.getRequestCount());
+            assertNull(result.getTimestamp());
+        }
+    }
+
+    @Test
+    void parsesTheDriverTimestampFormat() {
+        assertEquals(1714557600123L, HttpLogTailer.parseMillis("2024-05-01T10:00:00.123+0000"));
+        assertEquals(1714557600123L, HttpLogTailer.parseMillis("'2024-05-01T12:00:00.123+0200'"));
+        assertEquals(-1, HttpLogTailer.parseMillis("not a timestamp"));
+    }
+
+    private static String request(String timestamp, long millis) {
+        return timestamp + "\t[HTTP|Info] Sending GET request to mock://page\n"
+            + timestamp + "\t[HTTP|Info] Request completed in " + millis + " ms.\n";
+    }
+
+    private static void append(Path log, String text) throws IOException {
+        Files.write(log, text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
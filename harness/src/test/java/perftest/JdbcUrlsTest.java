@@ -0,0 +1,49 @@
+package perftest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Paths;
+import org.junit.jupiter.api.Test;
+
+class JdbcUrlsTest {
+
+    @Test
+    void propertiesAreFoundCaseInsensitivelyAndUnquoted() {
+        String url = "jdbc:github:InitiateOAuth=GETANDREFRESH; logfile = 'C:\\demo\\full Logs.log';Verbosity=2;";
+        assertEquals("GETANDREFRESH", JdbcUrls.getProperty(url, "initiateoauth"));
+        assertEquals("C:\\demo\\full Logs.log", JdbcUrls.getProperty(url, "Logfile"));
+        assertEquals("2", JdbcUrls.getProperty(url, "Verbosity"));
+        assertNull(JdbcUrls.getProperty(url, "OAuth"));
+    }
+
+    @Test
+    void withPropertyReplacesOrAppends() {
+        assertEquals("jdbc:mock:Rows=10;PageSize=50;", JdbcUrls.withProperty("jdbc:mock:Rows=10;PageSize=100;", "PageSize", "50"));
+        assertEquals("jdbc:mock:Rows=10;PageSize=50;", JdbcUrls.withProperty("jdbc:mock:Rows=10", "PageSize", "50"));
+        assertEquals("jdbc:mock:PageSize=50;", JdbcUrls.withProperty("jdbc:mock:", "PageSize", "50"));
+    }
+
+    @Test
+    void replacedValueKeepsItsQuotes() {
+        assertEquals("jdbc:mock:Logfile=\"C:\\other logs\\http.log\";",
+            JdbcUrls.withProperty("jdbc:mock:Logfile=\"C:\\demo\\full Logs.log\";", "Logfile", "C:\\other logs\\http.log"));
+        assertEquals("jdbc:mock:Logfile='a b.log';", JdbcUrls.withProperty("jdbc:mock:Logfile='x.log';", "Logfile", "a b.log"));
+        // A value that brings its own quotes is not quoted twice
+        assertEquals("jdbc:mock:Logfile='a b.log';", JdbcUrls.withProperty("jdbc:mock:Logfile=\"x.log\";", "Logfile", "'a b.log'"));
+    }
+
+    @Test
+    void logfileSuffixGoesBeforeTheExtension() {
+        assertEquals("jdbc:github:Logfile=\"C:\\demo\\full Logs.conn2.log\";Verbosity=2;",
+            JdbcUrls.withLogfileSuffix("jdbc:github:Logfile=\"C:\\demo\\full Logs.log\";Verbosity=2;", "conn2"));
+        assertEquals("jdbc:mock:Logfile=/tmp/v1.2/http.w1;", JdbcUrls.withLogfileSuffix("jdbc:mock:Logfile=/tmp/v1.2/http;", "w1"));
+        assertEquals("jdbc:mock:Rows=1;", JdbcUrls.withLogfileSuffix("jdbc:mock:Rows=1;", "w1"));
+    }
+
+    @Test
+    void httpLogPathFallsBackToTheDefault() {
+        assertEquals(Paths.get("full Logs.log"), JdbcUrls.httpLogPath("jdbc:mock:Logfile=\"full Logs.log\";", "fullLogs.log"));
+        assertEquals(Paths.get("fullLogs.log"), JdbcUrls.httpLogPath("jdbc:mock:Rows=1;", "fullLogs.log"));
+    }
+}
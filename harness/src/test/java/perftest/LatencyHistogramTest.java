@@ -0,0 +1,116 @@
+package perftest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LatencyHistogramTest {
+
+    // Every value is reproduced within 1/64 of itself
+    private static final double PRECISION = 1.0 / 64;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void percentilesAreWithinTheBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long ms = 1; ms <= 1000; ms++) {
+            histogram.record(ms * 1_000_000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMin());
+        assertEquals(1_000_000_000, histogram.getMax());
+        assertEquals(500.5 * 1_000_000, histogram.getMean(), 1e-6);
+        assertClose(500_000_000, histogram.getValueAtPercentile(50));
+        assertClose(900_000_000, histogram.getValueAtPercentile(90));
+        assertClose(990_000_000, histogram.getValueAtPercentile(99));
+        assertEquals(1_000_000_000, histogram.getValueAtPercentile(100));
+        assertClose(1_000_000, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    void percentilesStayWithinMinAndMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(123_456_789);
+        assertEquals(123_456_789, histogram.getValueAtPercentile(50));
+        assertEquals(123_456_789, histogram.getValueAtPercentile(99.9));
+    }
+
+    @Test
+    void emptyHistogramReportsZeros() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0.0, histogram.getMean());
+    }
+
+    @Test
+    void mergeGivesTheSameHistogramAsRecordingEverythingInOne() {
+        LatencyHistogram all = new LatencyHistogram();
+        LatencyHistogram low = new LatencyHistogram();
+        LatencyHistogram high = new LatencyHistogram();
+        for (long v = 1; v <= 5000; v++) {
+            long nanos = v * 7919;
+            all.record(nanos);
+            (v % 2 == 0 ? low : high).record(nanos);
+        }
+        LatencyHistogram merged = low.copy();
+        merged.merge(high);
+        assertEquals(all.getCount(), merged.getCount());
+        assertEquals(all.getMin(), merged.getMin());
+        assertEquals(all.getMax(), merged.getMax());
+        assertEquals(all.getMean(), merged.getMean(), 1e-9);
+        for (double p : new double[] {1, 25, 50, 75, 90, 99, 99.9}) {
+            assertEquals(all.getValueAtPercentile(p), merged.getValueAtPercentile(p), "p" + p);
+        }
+        assertEquals(0.0, all.rankSumZ(merged), 1e-9);
+    }
+
+    @Test
+    void resetForgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5_000_000);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        histogram.record(2_000);
+        assertEquals(2_000, histogram.getMin());
+    }
+
+    @Test
+    void valuesAboveTheTrackableRangeAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE / 2);
+        histogram.record(-5);
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getMin());
+        assertTrue(histogram.getValueAtPercentile(100) <= Long.MAX_VALUE / 2);
+    }
+
+    @Test
+    void writeAndReadRoundTrip() throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 300; v++) {
+            histogram.record(v * v * 1000);
+        }
+        Path file = dir.resolve("q.hist");
+        histogram.write(file);
+        LatencyHistogram read = LatencyHistogram.read(file);
+        assertEquals(histogram.getCount(), read.getCount());
+        assertEquals(histogram.getMin(), read.getMin());
+        assertEquals(histogram.getMax(), read.getMax());
+        assertEquals(histogram.getValueAtPercentile(50), read.getValueAtPercentile(50));
+        assertEquals(histogram.getValueAtPercentile(99), read.getValueAtPercentile(99));
+    }
+
+    private static void assertClose(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * PRECISION,
+            "expected about " + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,60 @@
+package perftest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class QuerySpecTest {
+
+    @Test
+    void directivesAreTakenOutOfTheSql() {
+        QuerySpec spec = QuerySpec.parse("Q1", "-- @partition: AuthoredDate < '2024-01-01'\n"
+            + "-- @Partition: AuthoredDate >= '2024-01-01'\n"
+            + "  --@batch-size 100\n"
+            + "SELECT Id FROM Commits\n"
+            + "WHERE ${partition}");
+        assertEquals("Q1", spec.getName());
+        assertEquals(Arrays.asList("AuthoredDate < '2024-01-01'", "AuthoredDate >= '2024-01-01'"),
+            spec.getDirective("partition"));
+        assertEquals(Collections.singletonList("100"), spec.getDirective("BATCH-SIZE"));
+        assertTrue(spec.getDirective("binds").isEmpty());
+        assertEquals("SELECT Id FROM Commits\nWHERE ${partition}", spec.getTemplate());
+    }
+
+    @Test
+    void ordinaryCommentsStayInTheSql() {
+        QuerySpec spec = QuerySpec.parse("Q2", "-- counts the rows\nSELECT COUNT(*) FROM T");
+        assertEquals("-- counts the rows\nSELECT COUNT(*) FROM T", spec.getTemplate());
+    }
+
+    @Test
+    void placeholdersGetTheirValuesOrDefaults() {
+        QuerySpec spec = QuerySpec.parse("Q1", "SELECT * FROM T WHERE ${partition} AND Owner = '${owner}'");
+        assertTrue(spec.hasPlaceholder("partition"));
+        assertFalse(spec.hasPlaceholder("region"));
+        assertEquals("SELECT * FROM T WHERE 1=1 AND Owner = '${owner}'", spec.getSql());
+        Map<String, String> values = Collections.singletonMap("partition", "Id < 100");
+        assertEquals("SELECT * FROM T WHERE Id < 100 AND Owner = '${owner}'", spec.render(values));
+        // Replacement text is taken literally
+        assertEquals("SELECT * FROM T WHERE Cost > $5 AND Owner = '${owner}'",
+            spec.render(Collections.singletonMap("partition", "Cost > $5")));
+    }
+
+    @Test
+    void queryFileSplitsBlocksByName() {
+        String content = "$$Q1$$\nSELECT 1\n\n$$Q2$$\n-- @bind: seq:1..10\nSELECT * FROM T WHERE Id = ?\n"
+            + "$$Only-directives$$\n-- @rows: 10\n";
+        Map<String, QuerySpec> specs = QueryFile.parseSpecs(content);
+        assertEquals(Arrays.asList("Q1", "Q2", "Only-directives"), Arrays.asList(specs.keySet().toArray()));
+        assertEquals(Collections.singletonList("seq:1..10"), specs.get("Q2").getDirective("bind"));
+
+        Map<String, String> queries = QueryFile.parse(content);
+        assertEquals(Arrays.asList("Q1", "Q2"), Arrays.asList(queries.keySet().toArray()));
+        assertEquals("SELECT * FROM T WHERE Id = ?", queries.get("Q2"));
+    }
+}
@@ -0,0 +1,70 @@
+package perftest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class RankSumTest {
+
+    @Test
+    void identicalSamplesAreNotDifferent() {
+        double[] a = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(0.0, RankSum.z(a, a.clone()), 1e-12);
+        assertEquals(1.0, RankSum.pValue(0), 1e-6);
+    }
+
+    @Test
+    void zIsPositiveWhenTheSecondSampleIsLarger() {
+        double[] a = new double[20];
+        double[] b = new double[20];
+        for (int i = 0; i < 20; i++) {
+            a[i] = i;
+            b[i] = i + 20;
+        }
+        double z = RankSum.z(a, b);
+        assertTrue(z > 5, "z=" + z);
+        assertEquals(-z, RankSum.z(b, a), 1e-12);
+        assertTrue(RankSum.pValue(z) < 1e-6);
+    }
+
+    @Test
+    void matchesTheTextbookValueWithoutTies() {
+        // b has ranks 4, 6, 8, 9 and 10, so U is 37 - 15 = 22 of 25; mean 12.5, variance 5*5*11/12
+        double[] a = {1, 2, 3, 6, 8};
+        double[] b = {4, 7, 9, 10, 11};
+        assertEquals((22 - 12.5) / Math.sqrt(25 * 11 / 12.0), RankSum.z(a, b), 1e-12);
+    }
+
+    @Test
+    void tiesShareTheirRanks() {
+        double[] a = {1, 1, 2, 2};
+        double[] b = {2, 2, 3, 3};
+        // The 1s share rank 1.5, the four 2s 4.5 and the 3s 7.5; b's rank sum is 2*4.5 + 2*7.5 = 24
+        double u = 24 - 4 * 5 / 2.0;
+        double ties = (8 - 2) + (64 - 4) + (8 - 2);
+        double variance = 16 / 12.0 * (9 - ties / (8 * 7));
+        assertEquals((u - 8) / Math.sqrt(variance), RankSum.z(a, b), 1e-12);
+    }
+
+    @Test
+    void allEqualOrEmptySamplesGiveZero() {
+        assertEquals(0.0, RankSum.z(new double[] {5, 5, 5}, new double[] {5, 5}));
+        assertEquals(0.0, RankSum.z(new double[0], new double[] {1, 2}));
+    }
+
+    @Test
+    void countsGiveTheSameAnswerAsValues() {
+        double[] a = {1, 1, 2, 3, 3, 3};
+        double[] b = {2, 3, 4, 4};
+        long[] countsA = {2, 1, 3, 0};
+        long[] countsB = {0, 1, 1, 2};
+        assertEquals(RankSum.z(a, b), RankSum.z(countsA, countsB, 4), 1e-12);
+    }
+
+    @Test
+    void pValueOfTheUsualCriticalValues() {
+        assertEquals(0.05, RankSum.pValue(1.959964), 1e-6);
+        assertEquals(0.01, RankSum.pValue(-2.575829), 1e-6);
+    }
+}
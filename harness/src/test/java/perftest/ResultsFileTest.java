@@ -0,0 +1,163 @@
+package perftest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResultsFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordedRunsReadBack() throws IOException {
+        Path file = dir.resolve("run.results");
+        StringWriter csv = new StringWriter();
+        StringWriter timeline = new StringWriter();
+        // A buffer of two forces the recorder to wrap around and wait for its writer
+        try (ResultRecorder recorder = new ResultRecorder(file, new PrintWriter(csv), new PrintWriter(timeline),
+                "Mock 1.0", 2, false)) {
+            int q1 = recorder.queryId("Q1");
+            int q2 = recorder.queryId("Q2");
+            assertEquals(q1, recorder.queryId("Q1"));
+            for (int i = 1; i <= 10; i++) {
+                recorder.record(q1, row(i, i * 1_000_000L), 1_000, http(5, 40));
+                recorder.record(q2, row(i, -i), 1_000, new HttpLogTailer.Result(null, 0, 0));
+            }
+            recorder.awaitDrained();
+            assertEquals(20, recorder.getHttpTotals(q1).getPageTimes().getCount());
+            assertEquals(10, recorder.getHttpTotals(q1).getTimelineRuns());
+            assertEquals(0, recorder.getHttpTotals(q2).getPageTimes().getCount());
+        }
+
+        ResultsFile results = ResultsFile.read(file);
+        assertEquals(Collections.singletonList("Mock 1.0"), results.getLabels());
+        assertEquals(Arrays.asList("Q1", "Q2"), results.getQueryNames());
+        assertArrayEquals(new long[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, results.column("Q1", ResultsFile.ITERATION));
+        assertEquals(10_000_000L, results.column("Q1", ResultsFile.TOTAL_NANOS)[9]);
+        assertEquals(-3, results.column("Q2", ResultsFile.TOTAL_NANOS)[2]);
+        // Filled in by the recorder from the HTTP log result
+        assertEquals(2, results.column("Q1", ResultsFile.HTTP_REQUESTS)[0]);
+        assertEquals(40, results.column("Q1", ResultsFile.PAGE_MAX_MILLIS)[0]);
+        assertEquals(0, results.column("Q2", ResultsFile.HTTP_REQUESTS)[0]);
+        assertEquals(-1, results.column("Q2", ResultsFile.START_HTTP_MILLIS)[0]);
+        assertEquals(0, results.column("Q3", ResultsFile.ROWS).length);
+
+        String[] csvLines = csv.toString().split("\n");
+        assertEquals(20, csvLines.length);
+        assertTrue(csvLines[0].startsWith("Q1,1,"), csvLines[0]);
+        assertEquals(20, timeline.toString().split("\n").length);
+    }
+
+    @Test
+    void laterRunsAppendToTheSameFile() throws IOException {
+        Path file = dir.resolve("run.results");
+        for (String label : new String[] {"first", "second", "first"}) {
+            try (ResultRecorder recorder = new ResultRecorder(file, new PrintWriter(new StringWriter()),
+                    new PrintWriter(new StringWriter()), label, 16, false)) {
+                recorder.record(recorder.queryId("Q1"), row(1, 5), 0, new HttpLogTailer.Result(null, 0, 0));
+            }
+        }
+        ResultsFile results = ResultsFile.read(file);
+        assertEquals(Arrays.asList("first", "second"), results.getLabels());
+        assertEquals(3, results.column("Q1", ResultsFile.TOTAL_NANOS).length);
+    }
+
+    @Test
+    void runThatCannotBeWrittenIsReportedOnClose() throws IOException {
+        Path file = dir.resolve("run.results");
+        StringWriter csv = new StringWriter();
+        ResultRecorder recorder = new ResultRecorder(file, new PrintWriter(csv), new PrintWriter(new StringWriter()),
+            "Mock", 2, false);
+        int q1 = recorder.queryId("Q1");
+        recorder.record(q1, row(1, 5), 0, new HttpLogTailer.Result(null, 0, 0));
+        // No HTTP result fails in the writer; the runs after it are still drained
+        recorder.record(q1, row(2, 5), 0, null);
+        for (int i = 3; i <= 6; i++) {
+            recorder.record(q1, row(i, 5), 0, new HttpLogTailer.Result(null, 0, 0));
+        }
+        recorder.awaitDrained();
+        IOException e = assertThrows(IOException.class, recorder::close);
+        assertTrue(e.getMessage().startsWith("Could not record run 2 of Q1"), e.getMessage());
+        assertEquals(5, csv.toString().split("\n").length);
+        // Nothing drains after close, so waiting for the writer fails instead of hanging
+        recorder.record(q1, row(7, 5), 0, new HttpLogTailer.Result(null, 0, 0));
+        IllegalStateException stopped = assertThrows(IllegalStateException.class, recorder::awaitDrained);
+        assertEquals("The result recorder has stopped.", stopped.getMessage());
+    }
+
+    @Test
+    void otherFilesAreRejected() throws IOException {
+        Path file = dir.resolve("not.results");
+        Files.write(file, "Query Name,Iteration\n".getBytes(StandardCharsets.UTF_8));
+        IOException e = assertThrows(IOException.class, () -> ResultsFile.read(file));
+        assertTrue(e.getMessage().contains("is not a results file"), e.getMessage());
+    }
+
+    @Test
+    void truncatedFileIsReported() throws IOException {
+        Path file = dir.resolve("run.results");
+        try (ResultRecorder recorder = new ResultRecorder(file, new PrintWriter(new StringWriter()),
+                new PrintWriter(new StringWriter()), "Mock", 16, false)) {
+            recorder.record(recorder.queryId("Q1"), row(1, Long.MAX_VALUE), 0, new HttpLogTailer.Result(null, 0, 0));
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        IOException e = assertThrows(IOException.class, () -> ResultsFile.read(file));
+        assertTrue(e.getMessage().contains("ends in the middle of an entry"), e.getMessage());
+    }
+
+    @Test
+    void varLongsRoundTrip() throws IOException {
+        long[] values = {0, 1, -1, 63, -64, 64, 300, -300, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (long value : values) {
+                ResultsFile.writeVarLong(out, value);
+            }
+        }
+        // Small values of either sign take one byte
+        assertEquals(1, encodedLength(-64));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (long value : values) {
+            assertEquals(value, ResultsFile.readVarLong(in));
+        }
+    }
+
+    private static int encodedLength(long value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            ResultsFile.writeVarLong(out, value);
+        }
+        return bytes.size();
+    }
+
+    private static long[] row(int iteration, long totalNanos) {
+        long[] row = new long[ResultsFile.COLUMN_COUNT];
+        row[ResultsFile.ITERATION] = iteration;
+        row[ResultsFile.TOTAL_NANOS] = totalNanos;
+        row[ResultsFile.ROWS] = 100;
+        return row;
+    }
+
+    private static HttpLogTailer.Result http(long firstMillis, long secondMillis) {
+        return new HttpLogTailer.Result("bad timestamp", firstMillis + secondMillis, 2, Arrays.asList(
+            new HttpLogTailer.Request(1_000, firstMillis), new HttpLogTailer.Request(1_000 + firstMillis, secondMillis)));
+    }
+}
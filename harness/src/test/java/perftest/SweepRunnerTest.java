@@ -0,0 +1,47 @@
+package perftest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+
+class SweepRunnerTest {
+
+    @Test
+    void expandsRangesAndKeepsPlainValues() {
+        assertEquals(Arrays.asList("0", "100", "400", "700", "1000"), SweepRunner.parseValues("0,100..1000:300"));
+        assertEquals(Arrays.asList("1", "2", "3"), SweepRunner.parseValues("1..3"));
+        assertEquals(Arrays.asList("100", "500", "auto"), SweepRunner.parseValues(" 100 , 500,,auto "));
+        assertEquals(Collections.singletonList("5"), SweepRunner.parseValues("5..5"));
+        assertEquals(Arrays.asList("-2", "0", "2"), SweepRunner.parseValues("-2..2:2"));
+    }
+
+    @Test
+    void rangeStopsAtTheLastStepNotPastTheEnd() {
+        assertEquals(Arrays.asList("10", "35", "60"), SweepRunner.parseValues("10..80:25"));
+    }
+
+    @Test
+    void emptySpecGivesNoValues() {
+        assertTrue(SweepRunner.parseValues("").isEmpty());
+        assertTrue(SweepRunner.parseIntValues("").isEmpty());
+    }
+
+    @Test
+    void badRangesAreRejected() {
+        for (String spec : new String[] {"10..1", "1..10:0", "1..10:-2", "a..b", "1..", "1..10:x"}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> SweepRunner.parseValues(spec), spec);
+            assertTrue(e.getMessage().startsWith("Invalid range"), e.getMessage());
+        }
+    }
+
+    @Test
+    void integerValuesAreChecked() {
+        assertEquals(Arrays.asList(1, 2, 4, 8), SweepRunner.parseIntValues("1,2,4,8"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> SweepRunner.parseIntValues("1,many"));
+        assertEquals("Expected an integer but was 'many'.", e.getMessage());
+    }
+}
@@ -0,0 +1,79 @@
+package perftest.mock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class LatencyDistributionTest {
+
+    @Test
+    void plainNumberIsAFixedLatency() {
+        assertEquals(20.0, LatencyDistribution.parse("20").sampleMillis(new Random(1)));
+        assertEquals(20.0, LatencyDistribution.parse("fixed:20").sampleMillis(new Random(1)));
+        assertSame(LatencyDistribution.NONE, LatencyDistribution.parse("0"));
+        assertSame(LatencyDistribution.NONE, LatencyDistribution.parse("fixed:0"));
+    }
+
+    @Test
+    void samplesStayInRangeAndAreNeverNegative() {
+        Random random = new Random(42);
+        LatencyDistribution uniform = LatencyDistribution.parse("uniform:10:50");
+        LatencyDistribution normal = LatencyDistribution.parse("normal:1:10");
+        for (int i = 0; i < 1000; i++) {
+            double value = uniform.sampleMillis(random);
+            assertTrue(value >= 10 && value <= 50, "uniform " + value);
+            assertTrue(normal.sampleMillis(random) >= 0);
+        }
+    }
+
+    @Test
+    void meansAndMediansAreWhatTheSpecSays() {
+        assertEquals(30, mean(LatencyDistribution.parse("normal:30:5")), 0.5);
+        assertEquals(25, mean(LatencyDistribution.parse("exp:25")), 1.5);
+        assertEquals(30, median(LatencyDistribution.parse("lognormal:30:0.5")), 1.0);
+        assertEquals(30, mean(LatencyDistribution.parse("uniform:10:50")), 0.5);
+    }
+
+    @Test
+    void sameSeedGivesTheSameSamples() {
+        LatencyDistribution latency = LatencyDistribution.parse("lognormal:120:0.4");
+        Random first = new Random(7);
+        Random second = new Random(7);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(latency.sampleMillis(first), latency.sampleMillis(second));
+        }
+    }
+
+    @Test
+    void badSpecsAreRejected() {
+        for (String spec : new String[] {"gamma:3", "uniform:50:10", "normal:", "fixed:x", ""}) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> LatencyDistribution.parse(spec), spec);
+            assertTrue(e.getMessage().startsWith("Invalid latency '" + spec + "'"), e.getMessage());
+        }
+    }
+
+    private static double mean(LatencyDistribution latency) {
+        Random random = new Random(42);
+        double sum = 0;
+        for (int i = 0; i < 20_000; i++) {
+            sum += latency.sampleMillis(random);
+        }
+        return sum / 20_000;
+    }
+
+    private static double median(LatencyDistribution latency) {
+        Random random = new Random(42);
+        double[] samples = new double[20_001];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = latency.sampleMillis(random);
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+}
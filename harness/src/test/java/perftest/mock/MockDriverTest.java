@@ -0,0 +1,192 @@
+package perftest.mock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MockDriverTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void rowsAndColumnsFollowTheUrl() throws SQLException {
+        try (Connection connection = connect("Rows=7;Columns=3;ColumnTypes=int,decimal;Width=5;");
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM T")) {
+            ResultSetMetaData meta = rs.getMetaData();
+            assertEquals(3, meta.getColumnCount());
+            assertEquals("Col2", meta.getColumnLabel(2));
+            int rows = 0;
+            while (rs.next()) {
+                rows++;
+                assertTrue(rs.getObject(1) instanceof Integer);
+                assertTrue(rs.getObject(2) instanceof BigDecimal);
+                // Shorter type lists repeat, so the third column is an int again
+                assertTrue(rs.getObject(3) instanceof Integer);
+            }
+            assertEquals(7, rows);
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    void countQueryReturnsTheRowCount() throws SQLException {
+        try (Connection connection = connect("Rows=1234;");
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("select count(*) from T")) {
+            assertTrue(rs.next());
+            assertEquals(1234, rs.getLong(1));
+            assertFalse(rs.next());
+        }
+    }
+
+    @Test
+    void pagesFollowPageSizeFetchSizeAndMaxRows() throws Exception {
+        assertEquals(4, pageRequests("Rows=1000;PageSize=250;", 0, 0));
+        // An empty result still costs the first page request
+        assertEquals(1, pageRequests("Rows=0;", 0, 0));
+        // A statement fetch size overrides PageSize; max rows stops the paging early
+        assertEquals(10, pageRequests("Rows=1000;PageSize=250;", 100, 0));
+        assertEquals(2, pageRequests("Rows=1000;PageSize=250;", 0, 300));
+    }
+
+    @Test
+    void valuesAreTheSameForEveryQuery() throws SQLException {
+        String url = "Rows=20;ColumnTypes=int,bigint,double,decimal,boolean,timestamp,varchar,binary;Width=8;";
+        assertEquals(values(url), values(url));
+        try (Connection connection = connect(url);
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM T")) {
+            rs.next();
+            assertEquals(8, rs.getString(7).length());
+            assertEquals(8, rs.getBytes(8).length);
+            assertTrue(rs.getObject(6) instanceof Timestamp);
+        }
+    }
+
+    @Test
+    void sameSeedGivesTheSameFailures() throws SQLException {
+        String url = "Rows=1;ErrorRate=0.5;Seed=7;";
+        List<Boolean> first = failures(url, 40);
+        assertEquals(first, failures(url, 40));
+        assertTrue(first.contains(true) && first.contains(false), first.toString());
+        assertNotEquals(first, failures("Rows=1;ErrorRate=0.5;Seed=8;", 40));
+        assertFalse(failures("Rows=1;", 40).contains(true));
+        assertTrue(failures("Rows=1;ErrorRate=1;", 5).stream().allMatch(failed -> failed));
+    }
+
+    @Test
+    void unknownAndInvalidPropertiesAreRejected() {
+        SQLException unknown = assertThrows(SQLException.class, () -> connect("Rows=10;Colums=3;"));
+        assertEquals("Unknown connection property 'Colums'.", unknown.getMessage());
+        assertThrows(SQLException.class, () -> connect("Rows"));
+        assertThrows(SQLException.class, () -> connect("PageSize=0;"));
+        assertThrows(SQLException.class, () -> connect("ErrorRate=2;"));
+        assertThrows(SQLException.class, () -> connect("PageLatency=gamma:3;"));
+    }
+
+    @Test
+    void propertiesAreCaseInsensitiveAndMayBeQuoted() throws Exception {
+        Path log = dir.resolve("full Logs.log");
+        try (Connection connection = connect("rows=3;PAGESIZE=1;Logfile=\"" + log + "\";");
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM T")) {
+            while (rs.next()) {
+                rs.getObject(1);
+            }
+        }
+        assertTrue(Files.exists(log));
+    }
+
+    @Test
+    void otherUrlsAreNotAccepted() throws SQLException {
+        MockDriver driver = new MockDriver();
+        assertTrue(driver.acceptsURL("JDBC:MOCK:Rows=1;"));
+        assertFalse(driver.acceptsURL("jdbc:github:AuthScheme=OAuth;"));
+        assertNull(driver.connect("jdbc:github:AuthScheme=OAuth;", new Properties()));
+    }
+
+    private Connection connect(String properties) throws SQLException {
+        return new MockDriver().connect("jdbc:mock:" + properties, new Properties());
+    }
+
+    /**
+     * Reads a whole result set and returns the number of page requests written to the log.
+     */
+    private int pageRequests(String properties, int fetchSize, int maxRows) throws Exception {
+        Path log = Files.createTempFile(dir, "http", ".log");
+        try (Connection connection = connect(properties + "Logfile=" + log + ";");
+             Statement stmt = connection.createStatement()) {
+            stmt.setFetchSize(fetchSize);
+            stmt.setMaxRows(maxRows);
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM T")) {
+                while (rs.next()) {
+                    rs.getObject(1);
+                }
+            }
+        }
+        return countLines(log, "mock://query/page/");
+    }
+
+    private List<String> values(String properties) throws SQLException {
+        List<String> values = new ArrayList<>();
+        try (Connection connection = connect(properties);
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM T")) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                for (int c = 1; c <= columns; c++) {
+                    values.add(rs.getString(c));
+                }
+            }
+        }
+        return values;
+    }
+
+    private List<Boolean> failures(String properties, int executions) throws SQLException {
+        List<Boolean> failures = new ArrayList<>();
+        try (Connection connection = connect(properties);
+             Statement stmt = connection.createStatement()) {
+            for (int i = 0; i < executions; i++) {
+                try (ResultSet rs = stmt.executeQuery("SELECT * FROM T")) {
+                    failures.add(false);
+                } catch (SQLException e) {
+                    assertEquals("08S01", e.getSQLState());
+                    failures.add(true);
+                }
+            }
+        }
+        return failures;
+    }
+
+    private static int countLines(Path log, String text) throws IOException {
+        int count = 0;
+        for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            if (line.contains(text)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
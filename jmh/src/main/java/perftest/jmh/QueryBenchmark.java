@@ -0,0 +1,121 @@
+package perftest.jmh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import perftest.QueryFile;
+import perftest.ResultConsumer;
+
+/**
+ * Times the harness's execute-and-consume path under JMH: one execution of a
+ * prepared query from queries.sql, read to the end with a {@link ResultConsumer}.
+ * Connection settings come from config.properties; any of them can be
+ * overridden with -p on the JMH command line, e.g.
+ * <pre>
+ * java -cp "benchmarks.jar;cdata.jdbc.github.jar" org.openjdk.jmh.Main QueryBenchmark -p query=Q1,Q2 -p fetchStrategy=object,typed -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class QueryBenchmark {
+
+    /** Connection settings file, relative to the working directory. */
+    @Param("config.properties")
+    public String configFile;
+
+    @Param("queries.sql")
+    public String queriesFile;
+
+    /** Name of the query in queries.sql. */
+    @Param("Q2")
+    public String query;
+
+    /** object, typed, string or cursor; see ResultConsumer.Strategy. */
+    @Param("object")
+    public String fetchStrategy;
+
+    /** Statement.setFetchSize; 0 leaves the driver default. */
+    @Param("0")
+    public int fetchSize;
+
+    /** Overrides jdbc.url from the config file when not empty. */
+    @Param("")
+    public String url;
+
+    /** Overrides jdbc.driver.class from the config file when not empty. */
+    @Param("")
+    public String driverClass;
+
+    private Connection connection;
+    private PreparedStatement statement;
+    private ResultConsumer consumer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException, ClassNotFoundException {
+        Properties props = new Properties();
+        try (InputStream input = Files.newInputStream(Paths.get(configFile))) {
+            props.load(input);
+        }
+        Map<String, String> queries = QueryFile.load(Paths.get(queriesFile));
+        String sql = queries.get(query);
+        if (sql == null) {
+            throw new IllegalArgumentException("Query '" + query + "' not found in " + queriesFile + ". Available: " + queries.keySet());
+        }
+
+        Class.forName(driverClass.isEmpty() ? props.getProperty("jdbc.driver.class") : driverClass);
+        connection = DriverManager.getConnection(url.isEmpty() ? props.getProperty("jdbc.url") : url,
+            props.getProperty("jdbc.username"), props.getProperty("jdbc.password"));
+        statement = connection.prepareStatement(sql);
+        statement.setFetchSize(fetchSize);
+        consumer = new ResultConsumer(ResultConsumer.Strategy.parse(fetchStrategy));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        if (statement != null) {
+            statement.close();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public void executeAndConsume(Blackhole blackhole) throws SQLException {
+        long startNanos = System.nanoTime();
+        try (ResultSet rs = statement.executeQuery()) {
+            consumer.consume(rs, startNanos);
+        }
+        blackhole.consume(consumer.getRows());
+        blackhole.consume(consumer.getBytes());
+    }
+}
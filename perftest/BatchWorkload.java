@@ -0,0 +1,299 @@
+package perftest;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write workloads: an INSERT or UPDATE with ? placeholders, run through
+ * addBatch/executeBatch for each of several batch sizes. A workload is a query in
+ * queries.sql with a "-- @rows:" directive giving the rows written per run; the
+ * rows come from its bind values ({@link BindValues}, usually generators).
+ * <pre>
+ * $$W1$$
+ * -- @rows: 5000
+ * -- @bind: seq:1..100000000
+ * -- @bind: list:alpha|beta|gamma
+ * -- @batch-size: 1,10,100,500,1000
+ * -- @commit-every: 1000
+ * -- @cleanup: DELETE FROM Scratch WHERE Name IN ('alpha', 'beta', 'gamma')
+ * INSERT INTO Scratch (Id, Name) VALUES (?, ?)
+ * </pre>
+ * With commit-every the connection leaves auto-commit and commits after that many
+ * rows and at the end of the run; commits are part of the run time. The cleanup
+ * statements run after every run, outside the measured window.
+ */
+public final class BatchWorkload {
+
+    private static final Logger LOGGER = Logger.getLogger(BatchWorkload.class.getName());
+
+    private static final List<Integer> DEFAULT_BATCH_SIZES = Arrays.asList(1, 10, 100, 1000);
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final List<QuerySpec> queries;
+    private final Map<String, BindValues> bindValues;
+    private final int iterations;
+    private final List<Integer> batchSizes;
+    private final int commitEvery;
+    private int warmup;
+    private int connectionId;
+
+    /**
+     * @param batchSizes batch sizes to try for every workload; empty to use each query's @batch-size
+     * @param commitEvery rows per transaction for every workload; -1 to use each query's @commit-every
+     */
+    public BatchWorkload(String url, String user, String password, List<QuerySpec> queries,
+                         Map<String, BindValues> bindValues, int iterations, List<Integer> batchSizes, int commitEvery) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.queries = queries;
+        this.bindValues = bindValues;
+        this.iterations = iterations;
+        this.batchSizes = batchSizes;
+        this.commitEvery = commitEvery;
+    }
+
+    /**
+     * Unmeasured runs before each measured series.
+     */
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * Runs every batch size for each workload and writes one CSV line per run.
+     * Returns the report lines.
+     */
+    public List<String> run(PrintWriter csvWriter) {
+        csvWriter.println("Query Name,Batch Size,Commit Every,Iteration,total,rows,rows-per-sec,batches,batch-p50,batch-max,commit-ms,HTTPRequests,HTTPLogTime,errors");
+        List<String> report = new ArrayList<>();
+        for (QuerySpec query : queries) {
+            BindValues rows = bindValues.get(query.getName());
+            List<String> rowsDirective = query.getDirective("rows");
+            if (rowsDirective.isEmpty() || rows == null) {
+                String message = "Query " + query.getName() + " skipped: a write workload needs \"-- @rows: n\" and @bind or @binds directives.";
+                LOGGER.warning(message);
+                report.add(message);
+                continue;
+            }
+            int rowsPerRun;
+            List<Integer> sizes;
+            int commit;
+            try {
+                rowsPerRun = Integer.parseInt(rowsDirective.get(0).trim());
+                sizes = !batchSizes.isEmpty() ? batchSizes
+                    : query.getDirective("batch-size").isEmpty() ? DEFAULT_BATCH_SIZES
+                    : SweepRunner.parseIntValues(query.getDirective("batch-size").get(0));
+                commit = commitEvery >= 0 ? commitEvery
+                    : query.getDirective("commit-every").isEmpty() ? 0
+                    : Integer.parseInt(query.getDirective("commit-every").get(0).trim());
+            } catch (IllegalArgumentException e) {
+                String message = "Query " + query.getName() + " skipped: invalid @rows, @batch-size or @commit-every (" + e.getMessage() + ").";
+                LOGGER.warning(message);
+                report.add(message);
+                continue;
+            }
+
+            System.out.println("\n--- Batch writes for Query: " + query.getName() + " (" + rowsPerRun + " rows/run"
+                + (commit > 0 ? ", commit every " + commit + " rows" : ", auto-commit") + ") ---");
+            List<Series> results = new ArrayList<>();
+            for (int batchSize : new TreeSet<>(sizes)) {
+                if (batchSize <= 0) {
+                    continue;
+                }
+                Series series = new Series(batchSize);
+                measure(query, rows, rowsPerRun, commit, series, csvWriter);
+                results.add(series);
+            }
+            report(query.getName(), rowsPerRun, commit, results, report);
+        }
+        return report;
+    }
+
+    /**
+     * Runs the warmup and measured runs of one batch size on a fresh connection.
+     */
+    private void measure(QuerySpec query, BindValues rows, int rowsPerRun, int commit, Series series, PrintWriter csvWriter) {
+        System.out.printf("  Batch size %d:", series.batchSize);
+        try (TrackedConnection connection = TrackedConnection.open(url, user, password, ++connectionId)) {
+            Connection conn = connection.getConnection();
+            if (commit > 0) {
+                conn.setAutoCommit(false);
+            }
+            PreparedStatement stmt = connection.prepare(query.getSql());
+            connection.pollHttpLog();
+            for (int run = 1; run <= warmup + iterations; run++) {
+                boolean measured = run > warmup;
+                Run result = write(conn, stmt, rows, rowsPerRun, series.batchSize, commit);
+                HttpLogTailer.Result http = connection.pollHttpLog();
+                cleanup(conn, query);
+                connection.pollHttpLog();
+                if (!measured) {
+                    continue;
+                }
+                if (result.error) {
+                    series.errors++;
+                    System.out.print(" failed");
+                } else {
+                    series.total.record(result.nanos);
+                    series.batches.merge(result.batches);
+                    series.rows += result.rows;
+                    series.httpRequests += http.getRequestCount();
+                    System.out.printf(" %d ms", TimeUnit.NANOSECONDS.toMillis(result.nanos));
+                }
+                csvWriter.printf("%s,%d,%d,%d,%d,%d,%.1f,%d,%.3f,%.3f,%d,%d,%d,%d\n",
+                    query.getName(), series.batchSize, commit, run - warmup,
+                    TimeUnit.NANOSECONDS.toMillis(result.nanos), result.rows,
+                    result.rows * 1_000_000_000.0 / Math.max(1, result.nanos),
+                    result.batches.getCount(),
+                    result.batches.getValueAtPercentile(50) / 1_000_000.0,
+                    result.batches.getMax() / 1_000_000.0,
+                    TimeUnit.NANOSECONDS.toMillis(result.commitNanos),
+                    http.getRequestCount(), http.getSumOfDurations(), result.error ? 1 : 0);
+            }
+        } catch (SQLException e) {
+            series.errors += iterations;
+            LOGGER.log(Level.WARNING, "Could not connect or prepare " + query.getName() + " for batch size " + series.batchSize, e);
+            System.err.println("  Could not connect or prepare: " + e.getMessage());
+        } finally {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Writes one run's rows, timing each executeBatch and commit.
+     */
+    private static Run write(Connection conn, PreparedStatement stmt, BindValues rows, int rowsPerRun,
+                             int batchSize, int commit) {
+        Run run = new Run();
+        long startNanos = System.nanoTime();
+        try {
+            int pending = 0;
+            int uncommitted = 0;
+            for (int row = 1; row <= rowsPerRun; row++) {
+                rows.bind(stmt, rows.next());
+                stmt.addBatch();
+                pending++;
+                uncommitted++;
+                if (pending == batchSize || row == rowsPerRun) {
+                    long batchStart = System.nanoTime();
+                    stmt.executeBatch();
+                    run.batches.record(System.nanoTime() - batchStart);
+                    run.rows += pending;
+                    pending = 0;
+                }
+                if (commit > 0 && pending == 0 && (uncommitted >= commit || row == rowsPerRun)) {
+                    long commitStart = System.nanoTime();
+                    conn.commit();
+                    run.commitNanos += System.nanoTime() - commitStart;
+                    uncommitted = 0;
+                }
+            }
+        } catch (SQLException e) {
+            run.error = true;
+            LOGGER.log(Level.WARNING, "Batch write failed after " + run.rows + " rows", e);
+            try {
+                stmt.clearBatch();
+                if (commit > 0) {
+                    conn.rollback();
+                }
+            } catch (SQLException ignored) {
+            }
+        }
+        run.nanos = System.nanoTime() - startNanos;
+        return run;
+    }
+
+    private static void cleanup(Connection conn, QuerySpec query) {
+        List<String> statements = query.getDirective("cleanup");
+        if (statements.isEmpty()) {
+            return;
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : statements) {
+                stmt.executeUpdate(sql);
+            }
+            if (!conn.getAutoCommit()) {
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Cleanup failed for " + query.getName(), e);
+        }
+    }
+
+    private void report(String queryName, int rowsPerRun, int commit, List<Series> results, List<String> report) {
+        report.add(String.format("Query %s, %d rows/run, %s:", queryName, rowsPerRun,
+            commit > 0 ? "commit every " + commit + " rows" : "auto-commit"));
+        Series previous = null;
+        Series knee = null;
+        for (Series series : results) {
+            if (series.total.getCount() == 0) {
+                report.add(String.format("  batch size %d: every run failed", series.batchSize));
+                continue;
+            }
+            StringBuilder line = new StringBuilder(String.format(
+                "  batch size %d: %.1f rows/sec, run p50=%.3f ms, batch p50=%.3f ms, batch p99=%.3f ms, %.1f HTTP requests/run",
+                series.batchSize, series.rowsPerSecond(), series.total.getValueAtPercentile(50) / 1_000_000.0,
+                series.batches.getValueAtPercentile(50) / 1_000_000.0,
+                series.batches.getValueAtPercentile(99) / 1_000_000.0, series.httpRequestsPerRun()));
+            if (series.errors > 0) {
+                line.append(", ").append(series.errors).append(" failed runs");
+            }
+            report.add(line.toString());
+            // Requests per run that drop by less than 5% no longer count as fewer round trips
+            if (previous != null && knee == null && series.httpRequestsPerRun() > 0.95 * previous.httpRequestsPerRun()) {
+                knee = previous;
+            }
+            previous = series;
+        }
+        if (knee != null && knee.httpRequestsPerRun() > 0) {
+            report.add(String.format("  HTTP requests stop falling above batch size %d (%.1f requests/run)",
+                knee.batchSize, knee.httpRequestsPerRun()));
+        } else if (previous != null && previous != results.get(0)) {
+            report.add(String.format("  HTTP requests still fall at batch size %d; try larger batches", previous.batchSize));
+        }
+    }
+
+    private static final class Run {
+        final LatencyHistogram batches = new LatencyHistogram();
+        long nanos;
+        long rows;
+        long commitNanos;
+        boolean error;
+    }
+
+    private static final class Series {
+        final int batchSize;
+        final LatencyHistogram total = new LatencyHistogram();
+        final LatencyHistogram batches = new LatencyHistogram();
+        long rows;
+        long httpRequests;
+        long errors;
+
+        Series(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        double rowsPerSecond() {
+            double seconds = total.getMean() * total.getCount() / 1_000_000_000.0;
+            return seconds > 0 ? rows / seconds : 0.0;
+        }
+
+        double httpRequestsPerRun() {
+            return total.getCount() == 0 ? 0.0 : (double) httpRequests / total.getCount();
+        }
+    }
+}
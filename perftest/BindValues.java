@@ -0,0 +1,377 @@
+package perftest;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Values for the ? placeholders of a query, one row per execution, so repeated
+ * runs do not hit the same cache entry every time. A query takes its values from
+ * a CSV file or from one generator per placeholder, given as directives:
+ * <pre>
+ * -- @binds: commits_params.csv
+ *
+ * -- @bind: seq:1..5000
+ * -- @bind: list:main|develop|release
+ * -- @bind: date:2024-01-01..2024-12-31
+ * </pre>
+ * The CSV's first line names the columns, optionally typed as name:type with type
+ * one of int, long, double, decimal, boolean, date, timestamp or string (default).
+ * Empty fields bind NULL. Generators are seq:start..end (counts up and wraps),
+ * random:start..end (a fixed pseudo-random sequence), list:a|b|c (cycles) and
+ * date:first..last (one day further per execution, wrapping). After the last row
+ * the values start again from the first.
+ */
+public final class BindValues {
+
+    private final String source;
+    private final int parameterCount;
+    private final int[] sqlTypes;
+    private final List<Object[]> rows;
+    private final List<Generator> generators;
+    private long position;
+
+    private BindValues(String source, int[] sqlTypes, List<Object[]> rows, List<Generator> generators) {
+        this.source = source;
+        this.parameterCount = sqlTypes.length;
+        this.sqlTypes = sqlTypes;
+        this.rows = rows;
+        this.generators = generators;
+    }
+
+    /**
+     * The bind values a query's directives ask for, or null when it has none.
+     *
+     * @param baseDir directory relative CSV paths are resolved against
+     */
+    public static BindValues forQuery(QuerySpec query, Path baseDir) throws IOException {
+        List<String> files = query.getDirective("binds");
+        List<String> generatorSpecs = query.getDirective("bind");
+        if (files.isEmpty() && generatorSpecs.isEmpty()) {
+            return null;
+        }
+        if (!files.isEmpty() && !generatorSpecs.isEmpty() || files.size() > 1) {
+            throw new IllegalArgumentException("Query " + query.getName() + " must use either one @binds file or @bind generators.");
+        }
+        BindValues values = files.isEmpty()
+            ? fromGenerators(generatorSpecs)
+            : fromCsv(baseDir.resolve(files.get(0).trim()));
+        int placeholders = countPlaceholders(query.getSql());
+        if (placeholders != values.parameterCount) {
+            throw new IllegalArgumentException("Query " + query.getName() + " has " + placeholders
+                + " ? placeholders but " + values.parameterCount + " bind values per execution from " + values.source + ".");
+        }
+        return values;
+    }
+
+    static BindValues fromCsv(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("Bind value file " + path + " is empty.");
+        }
+        List<String> header = splitCsv(lines.get(0));
+        int[] sqlTypes = new int[header.size()];
+        for (int c = 0; c < sqlTypes.length; c++) {
+            String column = header.get(c);
+            int colon = column.lastIndexOf(':');
+            sqlTypes[c] = colon == -1 ? Types.VARCHAR : parseType(column.substring(colon + 1), path);
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i < lines.size(); i++) {
+            if (lines.get(i).trim().isEmpty()) {
+                continue;
+            }
+            List<String> fields = splitCsv(lines.get(i));
+            if (fields.size() != sqlTypes.length) {
+                throw new IllegalArgumentException(path + " line " + (i + 1) + " has " + fields.size()
+                    + " fields, the header has " + sqlTypes.length + ".");
+            }
+            Object[] row = new Object[sqlTypes.length];
+            for (int c = 0; c < row.length; c++) {
+                try {
+                    row[c] = convert(fields.get(c), sqlTypes[c]);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(path + " line " + (i + 1) + ": cannot read '" + fields.get(c)
+                        + "' as " + header.get(c) + ".");
+                }
+            }
+            rows.add(row);
+        }
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Bind value file " + path + " has no rows.");
+        }
+        return new BindValues(path.getFileName().toString(), sqlTypes, rows, null);
+    }
+
+    static BindValues fromGenerators(List<String> specs) {
+        List<Generator> generators = new ArrayList<>();
+        int[] sqlTypes = new int[specs.size()];
+        for (int i = 0; i < specs.size(); i++) {
+            Generator generator = Generator.parse(specs.get(i), i);
+            generators.add(generator);
+            sqlTypes[i] = generator.sqlType;
+        }
+        return new BindValues("@bind generators", sqlTypes, null, generators);
+    }
+
+    /**
+     * The CSV file name, or "@bind generators".
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * The values for the next execution.
+     */
+    public Object[] next() {
+        long n = position++;
+        if (rows != null) {
+            return rows.get((int) (n % rows.size()));
+        }
+        Object[] values = new Object[generators.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = generators.get(i).value(n);
+        }
+        return values;
+    }
+
+    public void bind(PreparedStatement stmt, Object[] values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                stmt.setNull(i + 1, sqlTypes[i]);
+            } else {
+                stmt.setObject(i + 1, values[i], sqlTypes[i]);
+            }
+        }
+    }
+
+    /**
+     * The SQL with every ? outside quotes replaced by the value as a SQL literal,
+     * for running the same execution as a plain Statement.
+     */
+    public static String inline(String sql, Object[] values) {
+        StringBuilder sb = new StringBuilder(sql.length() + 16 * values.length);
+        int next = 0;
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char ch = sql.charAt(i);
+            if (quote != 0) {
+                if (ch == quote) {
+                    quote = 0;
+                }
+            } else if (ch == '\'' || ch == '"' || ch == '[') {
+                quote = ch == '[' ? ']' : ch;
+            } else if (ch == '?' && next < values.length) {
+                sb.append(literal(values[next++]));
+                continue;
+            }
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Number of ? placeholders outside quoted strings and identifiers.
+     */
+    public static int countPlaceholders(String sql) {
+        int count = 0;
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char ch = sql.charAt(i);
+            if (quote != 0) {
+                if (ch == quote) {
+                    quote = 0;
+                }
+            } else if (ch == '\'' || ch == '"' || ch == '[') {
+                quote = ch == '[' ? ']' : ch;
+            } else if (ch == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String literal(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof Number) {
+            return value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value.toString();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? "TRUE" : "FALSE";
+        }
+        return "'" + value.toString().replace("'", "''") + "'";
+    }
+
+    private static int parseType(String type, Path path) {
+        switch (type.trim().toLowerCase(Locale.ROOT)) {
+            case "int":
+            case "integer":
+                return Types.INTEGER;
+            case "long":
+            case "bigint":
+                return Types.BIGINT;
+            case "double":
+                return Types.DOUBLE;
+            case "decimal":
+                return Types.DECIMAL;
+            case "boolean":
+                return Types.BOOLEAN;
+            case "date":
+                return Types.DATE;
+            case "timestamp":
+                return Types.TIMESTAMP;
+            case "string":
+            case "varchar":
+                return Types.VARCHAR;
+            default:
+                throw new IllegalArgumentException("Unknown bind type '" + type + "' in " + path
+                    + ". Use int, long, double, decimal, boolean, date, timestamp or string.");
+        }
+    }
+
+    private static Object convert(String field, int sqlType) {
+        if (field.isEmpty()) {
+            return null;
+        }
+        switch (sqlType) {
+            case Types.INTEGER:
+                return Integer.valueOf(field.trim());
+            case Types.BIGINT:
+                return Long.valueOf(field.trim());
+            case Types.DOUBLE:
+                return Double.valueOf(field.trim());
+            case Types.DECIMAL:
+                return new BigDecimal(field.trim());
+            case Types.BOOLEAN:
+                return Boolean.valueOf(field.trim());
+            case Types.DATE:
+                return Date.valueOf(field.trim());
+            case Types.TIMESTAMP:
+                return Timestamp.valueOf(field.trim());
+            default:
+                return field;
+        }
+    }
+
+    /**
+     * Splits one CSV line; fields may be double-quoted, with "" for a quote inside.
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (ch == '"') {
+                    quoted = false;
+                } else {
+                    field.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(ch);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private abstract static class Generator {
+        final int sqlType;
+
+        Generator(int sqlType) {
+            this.sqlType = sqlType;
+        }
+
+        abstract Object value(long n);
+
+        static Generator parse(String spec, int index) {
+            int colon = spec.indexOf(':');
+            String kind = colon == -1 ? "" : spec.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String args = colon == -1 ? "" : spec.substring(colon + 1).trim();
+            try {
+                switch (kind) {
+                    case "seq":
+                    case "random": {
+                        String[] range = args.split("\\.\\.");
+                        long start = Long.parseLong(range[0].trim());
+                        long span = Long.parseLong(range[1].trim()) - start + 1;
+                        if (span <= 0) {
+                            break;
+                        }
+                        boolean random = kind.equals("random");
+                        return new Generator(Types.BIGINT) {
+                            @Override
+                            Object value(long n) {
+                                return start + Math.floorMod(random ? mix(n * 31 + index) : n, span);
+                            }
+                        };
+                    }
+                    case "list": {
+                        List<String> items = Arrays.asList(args.split("\\|"));
+                        return new Generator(Types.VARCHAR) {
+                            @Override
+                            Object value(long n) {
+                                return items.get((int) (n % items.size()));
+                            }
+                        };
+                    }
+                    case "date": {
+                        String[] range = args.split("\\.\\.");
+                        LocalDate first = LocalDate.parse(range[0].trim());
+                        long days = LocalDate.parse(range[1].trim()).toEpochDay() - first.toEpochDay() + 1;
+                        if (days <= 0) {
+                            break;
+                        }
+                        return new Generator(Types.DATE) {
+                            @Override
+                            Object value(long n) {
+                                return Date.valueOf(first.plusDays(n % days));
+                            }
+                        };
+                    }
+                    default:
+                        break;
+                }
+            } catch (RuntimeException e) {
+                // Reported below together with the accepted forms
+            }
+            throw new IllegalArgumentException("Invalid @bind generator '" + spec
+                + "'. Use seq:start..end, random:start..end, list:a|b|c or date:yyyy-mm-dd..yyyy-mm-dd.");
+        }
+
+        // Stateless mixing (MurmurHash3 fmix64): the n-th value depends on n alone
+        private static long mix(long z) {
+            z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+            z = (z ^ (z >>> 33)) * 0xc4ceb3fe1a85ec53L;
+            return z ^ (z >>> 33);
+        }
+    }
+}
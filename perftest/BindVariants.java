@@ -0,0 +1,238 @@
+package perftest;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs each query three ways on the same connection with the same bind values:
+ * one PreparedStatement prepared once and bound for every execution, a new
+ * PreparedStatement prepared for every execution, and a plain Statement with the
+ * values written into the SQL as literals. The variants take turns within every
+ * iteration, in rotating order, so drift over the run and the advantage of going
+ * second with the same values are shared evenly between them.
+ */
+public final class BindVariants {
+
+    private static final Logger LOGGER = Logger.getLogger(BindVariants.class.getName());
+
+    private static final String[] VARIANTS = {"prepared-once", "prepare-per-execution", "statement"};
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final List<QuerySpec> queries;
+    private final Map<String, BindValues> bindValues;
+    private final int iterations;
+    private final ResultConsumer consumer;
+    private int warmup;
+    private int connectionId;
+
+    /**
+     * @param bindValues bind values by query name; queries without an entry run without parameters
+     */
+    public BindVariants(String url, String user, String password, List<QuerySpec> queries,
+                        Map<String, BindValues> bindValues, int iterations, ResultConsumer consumer) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.queries = queries;
+        this.bindValues = bindValues;
+        this.iterations = iterations;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Unmeasured iterations (each running all three variants) before the measured ones.
+     */
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * Runs the variants for each query and writes one CSV line per execution.
+     * Returns the report lines.
+     */
+    public List<String> run(PrintWriter csvWriter) {
+        csvWriter.println("Query Name,Variant,Iteration,total,prepare,start-res,res-read,rows,HTTPRequests,HTTPLogTime");
+        List<String> report = new ArrayList<>();
+        for (QuerySpec query : queries) {
+            BindValues binds = bindValues.get(query.getName());
+            if (binds == null && BindValues.countPlaceholders(query.getSql()) > 0) {
+                String message = "Query " + query.getName() + " skipped: it has ? placeholders but no @binds or @bind directives.";
+                LOGGER.warning(message);
+                report.add(message);
+                continue;
+            }
+            System.out.println("\n--- Bind variants for Query: " + query.getName() + " ---");
+            Series[] series = new Series[VARIANTS.length];
+            for (int v = 0; v < series.length; v++) {
+                series[v] = new Series(VARIANTS[v]);
+            }
+            measure(query, binds, series, csvWriter);
+            report(query.getName(), series, report);
+        }
+        return report;
+    }
+
+    private void measure(QuerySpec query, BindValues binds, Series[] series, PrintWriter csvWriter) {
+        String sql = query.getSql();
+        try (TrackedConnection connection = TrackedConnection.open(url, user, password, ++connectionId);
+             Statement statement = connection.getConnection().createStatement()) {
+            PreparedStatement prepared = connection.prepare(sql);
+            connection.pollHttpLog();
+            for (int run = 1; run <= warmup + iterations; run++) {
+                boolean measured = run > warmup;
+                int iteration = run - warmup;
+                Object[] values = binds == null ? NO_VALUES : binds.next();
+                if (measured) {
+                    System.out.printf("  Run %d/%d:", iteration, iterations);
+                } else {
+                    System.out.printf("  Warmup %d/%d:", run, warmup);
+                }
+                for (int turn = 0; turn < VARIANTS.length; turn++) {
+                    int v = (run + turn) % VARIANTS.length;
+                    Execution execution;
+                    try {
+                        execution = execute(v, connection.getConnection(), prepared, statement, sql, binds, values);
+                    } catch (SQLException e) {
+                        connection.pollHttpLog();
+                        if (measured) {
+                            series[v].errors++;
+                        }
+                        LOGGER.log(Level.WARNING, VARIANTS[v] + " failed in run " + run + " for query " + query.getName(), e);
+                        System.out.printf(" %s failed", VARIANTS[v]);
+                        continue;
+                    }
+                    HttpLogTailer.Result http = connection.pollHttpLog();
+                    if (!measured) {
+                        continue;
+                    }
+                    series[v].record(execution, http);
+                    System.out.printf(" %s %d ms", VARIANTS[v], TimeUnit.NANOSECONDS.toMillis(execution.totalNanos));
+                    csvWriter.printf("%s,%s,%d,%d,%d,%d,%d,%d,%d,%d\n",
+                        query.getName(), VARIANTS[v], iteration,
+                        TimeUnit.NANOSECONDS.toMillis(execution.totalNanos),
+                        TimeUnit.NANOSECONDS.toMillis(execution.prepareNanos),
+                        TimeUnit.NANOSECONDS.toMillis(execution.resultNanos - execution.prepareNanos),
+                        TimeUnit.NANOSECONDS.toMillis(execution.totalNanos - execution.resultNanos),
+                        execution.rows, http.getRequestCount(), http.getSumOfDurations());
+                }
+                System.out.println();
+            }
+        } catch (SQLException e) {
+            for (Series s : series) {
+                s.errors = iterations;
+            }
+            LOGGER.log(Level.WARNING, "Could not connect or prepare for " + query.getName(), e);
+            System.err.println("  Could not connect or prepare: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One timed execution of variant v, from before the prepare (or bind) to the last row.
+     */
+    private Execution execute(int v, Connection conn, PreparedStatement prepared, Statement statement,
+                              String sql, BindValues binds, Object[] values) throws SQLException {
+        long startNanos = System.nanoTime();
+        long prepareNanos = 0;
+        long resultNanos;
+        switch (v) {
+            case 0:
+                if (binds != null) {
+                    binds.bind(prepared, values);
+                }
+                try (ResultSet rs = prepared.executeQuery()) {
+                    resultNanos = System.nanoTime() - startNanos;
+                    consumer.consume(rs, startNanos);
+                }
+                break;
+            case 1:
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    prepareNanos = System.nanoTime() - startNanos;
+                    if (binds != null) {
+                        binds.bind(stmt, values);
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        resultNanos = System.nanoTime() - startNanos;
+                        consumer.consume(rs, startNanos);
+                    }
+                }
+                break;
+            default:
+                try (ResultSet rs = statement.executeQuery(BindValues.inline(sql, values))) {
+                    resultNanos = System.nanoTime() - startNanos;
+                    consumer.consume(rs, startNanos);
+                }
+                break;
+        }
+        return new Execution(System.nanoTime() - startNanos, prepareNanos, resultNanos, consumer.getRows());
+    }
+
+    private void report(String queryName, Series[] series, List<String> report) {
+        report.add(String.format("Query %s:", queryName));
+        long baselineP50 = series[0].total.getCount() > 0 ? series[0].total.getValueAtPercentile(50) : 0;
+        for (Series s : series) {
+            if (s.total.getCount() == 0) {
+                report.add(String.format("  %s: every run failed", s.variant));
+                continue;
+            }
+            StringBuilder line = new StringBuilder(String.format(
+                "  %s: p50=%.3f ms, p99=%.3f ms, prepare p50=%.3f ms, %.1f HTTP requests/run",
+                s.variant, s.total.getValueAtPercentile(50) / 1_000_000.0,
+                s.total.getValueAtPercentile(99) / 1_000_000.0,
+                s.prepare.getValueAtPercentile(50) / 1_000_000.0,
+                (double) s.httpRequests / s.total.getCount()));
+            if (s != series[0] && baselineP50 > 0) {
+                line.append(String.format(", p50 %+.1f%% vs %s",
+                    100.0 * (s.total.getValueAtPercentile(50) - baselineP50) / baselineP50, series[0].variant));
+            }
+            if (s.errors > 0) {
+                line.append(", ").append(s.errors).append(" failed runs");
+            }
+            report.add(line.toString());
+        }
+    }
+
+    private static final class Execution {
+        final long totalNanos;
+        final long prepareNanos;
+        final long resultNanos;
+        final long rows;
+
+        Execution(long totalNanos, long prepareNanos, long resultNanos, long rows) {
+            this.totalNanos = totalNanos;
+            this.prepareNanos = prepareNanos;
+            this.resultNanos = resultNanos;
+            this.rows = rows;
+        }
+    }
+
+    private static final class Series {
+        final String variant;
+        final LatencyHistogram total = new LatencyHistogram();
+        final LatencyHistogram prepare = new LatencyHistogram();
+        long httpRequests;
+        long errors;
+
+        Series(String variant) {
+            this.variant = variant;
+        }
+
+        void record(Execution execution, HttpLogTailer.Result http) {
+            total.record(execution.totalNanos);
+            prepare.record(execution.prepareNanos);
+            httpRequests += http.getRequestCount();
+        }
+    }
+}
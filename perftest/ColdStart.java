@@ -0,0 +1,83 @@
+package perftest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One-off costs paid before a query reaches steady state: loading the driver,
+ * the first connection, and the first prepare and execute of each query. They are
+ * reported on their own instead of being folded into the iteration statistics.
+ */
+public final class ColdStart {
+
+    private final List<Phase> phases = new ArrayList<>();
+
+    /**
+     * @param queryName the query the phase belongs to, or null for run-wide phases
+     * @param http      HTTP activity the driver logged during the phase, or null if not tracked
+     */
+    public void record(String phase, String queryName, long nanos, HttpLogTailer.Result http) {
+        phases.add(new Phase(phase, queryName, nanos,
+            http == null ? -1 : http.getSumOfDurations(),
+            http == null ? -1 : http.getRequestCount()));
+    }
+
+    public boolean isEmpty() {
+        return phases.isEmpty();
+    }
+
+    public List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        for (Phase phase : phases) {
+            StringBuilder sb = new StringBuilder("  ").append(phase.name);
+            if (phase.queryName != null) {
+                sb.append(" (").append(phase.queryName).append(')');
+            }
+            sb.append(String.format(": %.3f ms", phase.nanos / 1_000_000.0));
+            if (phase.httpRequests > 0) {
+                sb.append(String.format(", HTTP %d ms in %d requests", phase.httpMs, phase.httpRequests));
+            }
+            lines.add(sb.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the phases as CSV. When appending to an existing file the header is not repeated.
+     */
+    public void writeCsv(Path path, boolean append) throws IOException {
+        boolean writeHeader = !append || !Files.exists(path) || Files.size(path) == 0;
+        try (PrintWriter writer = new PrintWriter(append
+                ? Files.newBufferedWriter(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                : Files.newBufferedWriter(path))) {
+            if (writeHeader) {
+                writer.println("Phase,Query Name,ms,HTTPLogTime,HTTPRequests");
+            }
+            for (Phase phase : phases) {
+                writer.printf("%s,%s,%.3f,%d,%d%n", phase.name, phase.queryName == null ? "" : phase.queryName,
+                    phase.nanos / 1_000_000.0, phase.httpMs, phase.httpRequests);
+            }
+        }
+    }
+
+    private static final class Phase {
+        final String name;
+        final String queryName;
+        final long nanos;
+        final long httpMs;
+        final long httpRequests;
+
+        Phase(String name, String queryName, long nanos, long httpMs, long httpRequests) {
+            this.name = name;
+            this.queryName = queryName;
+            this.nanos = nanos;
+            this.httpMs = httpMs;
+            this.httpRequests = httpRequests;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package perftest;
+
+import java.io.PrintWriter;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the selected queries from several workers at once. Each worker either owns
+ * a connection or borrows one from a shared pool for every execution. Workers run
+ * on platform threads or, on Java 21+, on virtual threads.
+ */
+public final class ConcurrentLoadRunner {
+
+    private static final Logger LOGGER = Logger.getLogger(ConcurrentLoadRunner.class.getName());
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Map<String, String> queries;
+    private final int iterations;
+    private final int workers;
+    private final boolean virtualThreads;
+    private final int poolSize;
+    private final ResultConsumer.Strategy strategy;
+    private int warmup;
+    private JdbcTiming timing;
+    private LiveMetrics metrics;
+    private List<Worker> finishedWorkers = new ArrayList<>();
+
+    /**
+     * @param poolSize size of the shared connection pool, or 0 to give every worker its own connection
+     */
+    public ConcurrentLoadRunner(String url, String user, String password, Map<String, String> queries,
+                                int iterations, int workers, boolean virtualThreads, int poolSize,
+                                ResultConsumer.Strategy strategy) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.queries = queries;
+        this.iterations = iterations;
+        this.workers = workers;
+        this.virtualThreads = virtualThreads;
+        this.poolSize = poolSize;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Unmeasured rounds over the queries each worker runs before the clock starts.
+     */
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * Times the JDBC calls of every worker's connection; warmup rounds are not recorded.
+     */
+    public void setJdbcTiming(JdbcTiming timing) {
+        this.timing = timing;
+    }
+
+    /**
+     * Publishes the measured executions while the load is running.
+     */
+    public void setLiveMetrics(LiveMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs the load and writes one CSV line per execution. Returns the report lines.
+     */
+    public List<String> run(PrintWriter csvWriter) throws SQLException, InterruptedException {
+        csvWriter.println("Worker,Connection,Query Name,Iteration,start-res,res-read,total,rows,first-row,est-bytes,HTTPLogTime,HTTPRequests");
+
+        ConnectionPool pool = poolSize > 0 ? new ConnectionPool(url, user, password, poolSize, timing) : null;
+        List<TrackedConnection> owned = new ArrayList<>();
+        List<Worker> workerList = new ArrayList<>();
+        ExecutorService executor = newExecutor();
+        try {
+            // Connect before the clock starts
+            if (pool != null) {
+                pool.fill();
+            } else {
+                for (int w = 1; w <= workers; w++) {
+                    owned.add(TrackedConnection.open(url, user, password, w, timing));
+                }
+            }
+
+            CountDownLatch warmedUp = new CountDownLatch(workers);
+            CountDownLatch startGate = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int w = 1; w <= workers; w++) {
+                Worker worker = new Worker(w, pool, pool == null ? owned.get(w - 1) : null, csvWriter, warmedUp, startGate);
+                workerList.add(worker);
+                futures.add(executor.submit(worker));
+            }
+
+            warmedUp.await();
+            long startNanos = System.nanoTime();
+            startGate.countDown();
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.SEVERE, "Worker failed", e.getCause());
+                }
+            }
+            long wallNanos = System.nanoTime() - startNanos;
+            finishedWorkers = workerList;
+            return report(workerList, wallNanos);
+        } finally {
+            executor.shutdownNow();
+            for (TrackedConnection connection : owned) {
+                connection.close();
+            }
+            if (pool != null) {
+                pool.close();
+            }
+        }
+    }
+
+    /**
+     * Latency per query, merged across all workers. Empty until {@link #run} has completed.
+     */
+    public Map<String, LatencyHistogram> getQueryHistograms() {
+        Map<String, LatencyHistogram> merged = new LinkedHashMap<>();
+        for (String queryName : queries.keySet()) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            boolean any = false;
+            for (Worker worker : finishedWorkers) {
+                LatencyHistogram part = worker.queryLatency.get(queryName);
+                if (part != null) {
+                    histogram.merge(part);
+                    any = true;
+                }
+            }
+            if (any) {
+                merged.put(queryName, histogram);
+            }
+        }
+        return merged;
+    }
+
+    private ExecutorService newExecutor() {
+        if (!virtualThreads) {
+            return Executors.newFixedThreadPool(workers);
+        }
+        try {
+            // Looked up reflectively so the harness still compiles and runs on Java 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later (running on "
+                + System.getProperty("java.version") + ").", e);
+        }
+    }
+
+    private List<String> report(List<Worker> workerList, long wallNanos) {
+        List<String> lines = new ArrayList<>();
+        long executions = 0;
+        long errors = 0;
+        long rows = 0;
+        long httpMs = 0;
+        long httpRequests = 0;
+        LatencyHistogram overall = new LatencyHistogram();
+        for (Worker worker : workerList) {
+            overall.merge(worker.latency);
+            executions += worker.executions;
+            errors += worker.errors;
+            rows += worker.rows;
+            httpMs += worker.httpMs;
+            httpRequests += worker.httpRequests;
+        }
+        double wallSeconds = wallNanos / 1_000_000_000.0;
+
+        lines.add(String.format("Workers: %d (%s threads, %s), %s fetch", workers, virtualThreads ? "virtual" : "platform",
+            poolSize > 0 ? "shared pool of " + poolSize : "one connection per worker", strategy));
+        lines.add(String.format("Wall time: %.2f s, Executions: %d, Errors: %d", wallSeconds, executions, errors));
+        lines.add(String.format("Throughput: %.2f queries/sec, %.2f rows/sec", executions / wallSeconds, rows / wallSeconds));
+        lines.add(String.format("HTTP: %d requests, %d ms total", httpRequests, httpMs));
+        lines.add("Latency (all workers): " + overall.summary());
+        for (Map.Entry<String, LatencyHistogram> entry : getQueryHistograms().entrySet()) {
+            lines.add("  Query " + entry.getKey() + ": " + entry.getValue().summary());
+        }
+        for (Worker worker : workerList) {
+            lines.add(String.format("  Worker %d: Errors=%d, %s, HTTP=%d ms in %d requests (%.1f%% of latency)",
+                worker.id, worker.errors, worker.latency.summary(),
+                worker.httpMs, worker.httpRequests,
+                worker.totalNanos == 0 ? 0.0 : 100.0 * TimeUnit.MILLISECONDS.toNanos(worker.httpMs) / worker.totalNanos));
+        }
+        return lines;
+    }
+
+    private final class Worker implements Runnable {
+        private final int id;
+        private final ConnectionPool pool;
+        private final TrackedConnection ownConnection;
+        private final PrintWriter csvWriter;
+        private final CountDownLatch warmedUp;
+        private final CountDownLatch startGate;
+
+        final ResultConsumer consumer = new ResultConsumer(strategy);
+        final LatencyHistogram latency = new LatencyHistogram();
+        final Map<String, LatencyHistogram> queryLatency = new LinkedHashMap<>();
+        long executions;
+        long errors;
+        long rows;
+        long totalNanos;
+        long httpMs;
+        long httpRequests;
+
+        Worker(int id, ConnectionPool pool, TrackedConnection ownConnection, PrintWriter csvWriter,
+               CountDownLatch warmedUp, CountDownLatch startGate) {
+            this.id = id;
+            this.pool = pool;
+            this.ownConnection = ownConnection;
+            this.csvWriter = csvWriter;
+            this.warmedUp = warmedUp;
+            this.startGate = startGate;
+        }
+
+        @Override
+        public void run() {
+            try {
+                try {
+                    if (timing != null) {
+                        timing.setRecording(false);
+                    }
+                    for (int i = 1; i <= warmup; i++) {
+                        round(i, false);
+                    }
+                } finally {
+                    warmedUp.countDown();
+                }
+                startGate.await();
+                if (timing != null) {
+                    timing.setRecording(true);
+                }
+                for (int i = 1; i <= iterations; i++) {
+                    round(i, true);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (SQLException e) {
+                LOGGER.log(Level.SEVERE, "Worker " + id + " could not open a pooled connection", e);
+            }
+        }
+
+        private void round(int iteration, boolean measured) throws SQLException, InterruptedException {
+            for (Map.Entry<String, String> entry : queries.entrySet()) {
+                TrackedConnection connection = pool != null ? pool.borrow() : ownConnection;
+                try {
+                    execute(connection, entry.getKey(), entry.getValue(), iteration, measured);
+                } finally {
+                    if (pool != null) {
+                        pool.release(connection);
+                    }
+                }
+            }
+        }
+
+        private void execute(TrackedConnection connection, String queryName, String sql, int iteration, boolean measured) {
+            LiveMetrics.Query live = measured && metrics != null ? metrics.query(queryName) : null;
+            if (live != null) {
+                live.started();
+            }
+            long startNanos = System.nanoTime();
+            long resultNanos;
+            try {
+                PreparedStatement stmt = connection.prepare(sql);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    resultNanos = System.nanoTime();
+                    consumer.consume(rs, startNanos);
+                }
+            } catch (SQLException e) {
+                if (measured) {
+                    errors++;
+                }
+                if (live != null) {
+                    live.failed();
+                }
+                connection.pollHttpLog();
+                LOGGER.log(Level.WARNING, "SQL Execution Error in worker " + id + " run " + iteration + " for query " + queryName, e);
+                return;
+            }
+            long endNanos = System.nanoTime();
+            HttpLogTailer.Result http = connection.pollHttpLog();
+            if (!measured) {
+                return;
+            }
+
+            long durationNanos = endNanos - startNanos;
+            executions++;
+            long rowCount = consumer.getRows();
+            rows += rowCount;
+            totalNanos += durationNanos;
+            latency.record(durationNanos);
+            queryLatency.computeIfAbsent(queryName, k -> new LatencyHistogram()).record(durationNanos);
+            httpMs += http.getSumOfDurations();
+            httpRequests += http.getRequestCount();
+            if (live != null) {
+                live.completed(durationNanos, rowCount, http);
+            }
+
+            synchronized (csvWriter) {
+                csvWriter.printf("%d,%d,%s,%d,%d,%d,%d,%d,%d,%d,%d,%d\n",
+                    id, connection.getId(), queryName, iteration,
+                    TimeUnit.NANOSECONDS.toMillis(resultNanos - startNanos),
+                    TimeUnit.NANOSECONDS.toMillis(endNanos - resultNanos),
+                    TimeUnit.NANOSECONDS.toMillis(durationNanos),
+                    rowCount,
+                    consumer.getFirstRowNanos() < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(consumer.getFirstRowNanos()),
+                    consumer.getBytes(),
+                    http.getSumOfDurations(),
+                    http.getRequestCount());
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package perftest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * What it costs to get a connection, and what reusing one saves. First a series
+ * of connections is opened one after another, each running the first query twice,
+ * to show how connect time and first-query time change once the driver has cached
+ * tokens and metadata. Then the queries run under 1..n concurrent callers, each
+ * operation getting its connection one of three ways:
+ * <ul>
+ * <li>connect-per-query: a new connection for every query, closed afterwards</li>
+ * <li>reused: every caller opens one connection and keeps it</li>
+ * <li>pool: callers borrow from a shared {@link ConnectionPool} of bounded size</li>
+ * </ul>
+ * Each operation's time is split into acquiring the connection (connect or
+ * borrow, including waiting for a pooled one), the query, and releasing it.
+ */
+public final class ConnectionBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectionBenchmark.class.getName());
+
+    private static final String[] STRATEGIES = {"connect-per-query", "reused", "pool"};
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final List<String> queries;
+    private final int iterations;
+    private final List<Integer> callers;
+    private final int poolSize;
+    private final ResultConsumer.Strategy fetchStrategy;
+    private int warmup;
+
+    /**
+     * @param queries SQL run in turn by every caller
+     * @param iterations connections in the connect series, and operations per caller
+     * @param callers numbers of concurrent callers to try
+     */
+    public ConnectionBenchmark(String url, String user, String password, List<String> queries, int iterations,
+                               List<Integer> callers, int poolSize, ResultConsumer.Strategy fetchStrategy) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be a positive integer.");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.queries = queries;
+        this.iterations = iterations;
+        this.callers = callers;
+        this.poolSize = poolSize;
+        this.fetchStrategy = fetchStrategy;
+    }
+
+    /**
+     * Unmeasured operations per caller before the measured ones.
+     */
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * Runs the connect series and every strategy for each number of callers,
+     * writing one CSV line per connection or operation. Returns the report lines.
+     */
+    public List<String> run(PrintWriter csvWriter) throws InterruptedException {
+        csvWriter.println("Strategy,Callers,Caller,Iteration,acquire-ms,query-ms,release-ms,total-ms,repeat-query-ms,HTTPRequests,HTTPLogTime");
+        List<String> report = new ArrayList<>();
+        connectSeries(csvWriter, report);
+        for (int callerCount : callers) {
+            if (callerCount <= 0) {
+                continue;
+            }
+            report.add(String.format("%d caller(s), %d operations each:", callerCount, iterations));
+            Series baseline = null;
+            for (String strategy : STRATEGIES) {
+                Series series = measure(strategy, callerCount, csvWriter);
+                report.add(series.reportLine(baseline));
+                if (baseline == null) {
+                    baseline = series;
+                }
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Opens connections one at a time, running the first query twice on each.
+     */
+    private void connectSeries(PrintWriter csvWriter, List<String> report) {
+        System.out.printf("\n--- Connect series (%d connections) ---\n ", iterations);
+        LatencyHistogram laterConnects = new LatencyHistogram();
+        LatencyHistogram laterFirstQueries = new LatencyHistogram();
+        LatencyHistogram repeatQueries = new LatencyHistogram();
+        long laterConnectRequests = 0;
+        long firstConnectNanos = -1;
+        long firstQueryNanos = -1;
+        int firstConnectRequests = 0;
+        int errors = 0;
+        ResultConsumer consumer = new ResultConsumer(fetchStrategy);
+        try (CallerLog log = new CallerLog(0)) {
+            for (int i = 1; i <= iterations; i++) {
+                long startNanos = System.nanoTime();
+                try (Connection conn = DriverManager.getConnection(log.url, user, password)) {
+                    long connectNanos = System.nanoTime() - startNanos;
+                    HttpLogTailer.Result connectHttp = log.poll();
+                    long queryNanos = runQuery(conn, queries.get(0), consumer);
+                    long repeatNanos = runQuery(conn, queries.get(0), consumer);
+                    log.poll();
+                    if (i == 1) {
+                        firstConnectNanos = connectNanos;
+                        firstQueryNanos = queryNanos;
+                        firstConnectRequests = connectHttp.getRequestCount();
+                    } else {
+                        laterConnects.record(connectNanos);
+                        laterFirstQueries.record(queryNanos);
+                        laterConnectRequests += connectHttp.getRequestCount();
+                    }
+                    repeatQueries.record(repeatNanos);
+                    System.out.printf(" %d ms", connectNanos / 1_000_000);
+                    csvWriter.printf("new-connection,1,1,%d,%.3f,%.3f,-1,%.3f,%.3f,%d,%d\n", i,
+                        connectNanos / 1_000_000.0, queryNanos / 1_000_000.0,
+                        (System.nanoTime() - startNanos) / 1_000_000.0, repeatNanos / 1_000_000.0,
+                        connectHttp.getRequestCount(), connectHttp.getSumOfDurations());
+                } catch (SQLException e) {
+                    errors++;
+                    log.poll();
+                    LOGGER.log(Level.WARNING, "Connection " + i + " of the connect series failed", e);
+                    System.out.print(" failed");
+                }
+            }
+        }
+        System.out.println();
+
+        report.add(String.format("Connect series, %d connections opened one after another:", iterations));
+        if (firstConnectNanos < 0) {
+            report.add("  The first connection failed.");
+            return;
+        }
+        report.add(String.format("  first connect: %.3f ms, %d HTTP requests; first query on it: %.3f ms",
+            firstConnectNanos / 1_000_000.0, firstConnectRequests, firstQueryNanos / 1_000_000.0));
+        if (laterConnects.getCount() > 0) {
+            report.add(String.format("  later connects: p50=%.3f ms, p90=%.3f ms, Max=%.3f ms, %.1f HTTP requests; first query on them: p50=%.3f ms",
+                laterConnects.getValueAtPercentile(50) / 1_000_000.0,
+                laterConnects.getValueAtPercentile(90) / 1_000_000.0,
+                laterConnects.getMax() / 1_000_000.0,
+                (double) laterConnectRequests / laterConnects.getCount(),
+                laterFirstQueries.getValueAtPercentile(50) / 1_000_000.0));
+        }
+        report.add(String.format("  same query again on the same connection: p50=%.3f ms%s",
+            repeatQueries.getValueAtPercentile(50) / 1_000_000.0,
+            errors > 0 ? ", " + errors + " failed connections" : ""));
+    }
+
+    /**
+     * Runs one strategy with the given number of concurrent callers.
+     */
+    private Series measure(String strategy, int callerCount, PrintWriter csvWriter) throws InterruptedException {
+        String label = strategy.equals("pool") ? "pool(" + poolSize + ")" : strategy;
+        System.out.printf("  %s, %d caller(s)... ", label, callerCount);
+        Series series = new Series(label);
+        ConnectionPool pool = strategy.equals("pool") ? new ConnectionPool(url, user, password, poolSize) : null;
+        ExecutorService executor = Executors.newFixedThreadPool(callerCount);
+        CountDownLatch ready = new CountDownLatch(callerCount);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        long startNanos;
+        try {
+            for (int c = 1; c <= callerCount; c++) {
+                int caller = c;
+                futures.add(executor.submit(() -> {
+                    runCaller(strategy, caller, callerCount, pool, series, ready, start, csvWriter);
+                    return null;
+                }));
+            }
+            ready.await();
+            startNanos = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.SEVERE, "Caller failed", e.getCause());
+                    synchronized (series) {
+                        series.errors++;
+                    }
+                }
+            }
+            series.wallNanos = System.nanoTime() - startNanos;
+        } finally {
+            executor.shutdownNow();
+            if (pool != null) {
+                series.connections = pool.getOpenedCount();
+                pool.close();
+            }
+        }
+        System.out.printf("%d ops in %d ms\n", series.total.getCount(), series.wallNanos / 1_000_000);
+        return series;
+    }
+
+    private void runCaller(String strategy, int caller, int callerCount, ConnectionPool pool, Series series,
+                           CountDownLatch ready, CountDownLatch start, PrintWriter csvWriter) throws Exception {
+        ResultConsumer consumer = new ResultConsumer(fetchStrategy);
+        LatencyHistogram acquire = new LatencyHistogram();
+        LatencyHistogram total = new LatencyHistogram();
+        long httpRequests = 0;
+        long connections = 0;
+        long errors = 0;
+        List<String> lines = new ArrayList<>();
+        TrackedConnection own = null;
+        // Only connections the caller opens itself log to the caller's own file
+        try (CallerLog log = strategy.equals("connect-per-query") ? new CallerLog(caller) : null) {
+            ready.countDown();
+            start.await();
+            for (int op = 1; op <= warmup + iterations; op++) {
+                boolean measured = op > warmup;
+                String sql = queries.get((op - 1) % queries.size());
+                long opStart = System.nanoTime();
+                long acquireNanos;
+                long queryNanos;
+                long releaseNanos;
+                HttpLogTailer.Result http;
+                try {
+                    if (strategy.equals("connect-per-query")) {
+                        Connection conn = DriverManager.getConnection(log.url, user, password);
+                        acquireNanos = System.nanoTime() - opStart;
+                        connections++;
+                        try {
+                            queryNanos = runQuery(conn, sql, consumer);
+                        } finally {
+                            long closeStart = System.nanoTime();
+                            conn.close();
+                            releaseNanos = System.nanoTime() - closeStart;
+                        }
+                        http = log.poll();
+                    } else if (strategy.equals("reused")) {
+                        if (own == null) {
+                            own = TrackedConnection.open(url, user, password, caller);
+                            connections++;
+                        }
+                        acquireNanos = System.nanoTime() - opStart;
+                        queryNanos = runQuery(own, sql, consumer);
+                        releaseNanos = 0;
+                        http = own.pollHttpLog();
+                    } else {
+                        TrackedConnection borrowed = pool.borrow();
+                        acquireNanos = System.nanoTime() - opStart;
+                        try {
+                            queryNanos = runQuery(borrowed, sql, consumer);
+                            http = borrowed.pollHttpLog();
+                        } finally {
+                            long releaseStart = System.nanoTime();
+                            pool.release(borrowed);
+                            releaseNanos = System.nanoTime() - releaseStart;
+                        }
+                    }
+                } catch (SQLException e) {
+                    if (measured) {
+                        errors++;
+                    }
+                    LOGGER.log(Level.WARNING, strategy + " operation " + op + " of caller " + caller + " failed", e);
+                    continue;
+                }
+                if (!measured) {
+                    continue;
+                }
+                long opNanos = System.nanoTime() - opStart;
+                acquire.record(acquireNanos);
+                total.record(opNanos);
+                httpRequests += http.getRequestCount();
+                lines.add(String.format("%s,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,-1,%d,%d", series.strategy, callerCount,
+                    caller, op - warmup, acquireNanos / 1_000_000.0, queryNanos / 1_000_000.0,
+                    releaseNanos / 1_000_000.0, opNanos / 1_000_000.0, http.getRequestCount(), http.getSumOfDurations()));
+            }
+        } finally {
+            if (own != null) {
+                own.close();
+            }
+        }
+        synchronized (series) {
+            series.acquire.merge(acquire);
+            series.total.merge(total);
+            series.httpRequests += httpRequests;
+            series.connections += connections;
+            series.errors += errors;
+        }
+        synchronized (csvWriter) {
+            for (String line : lines) {
+                csvWriter.println(line);
+            }
+        }
+    }
+
+    /**
+     * Prepares, executes and reads one query on a plain connection; returns its nanoseconds.
+     */
+    private static long runQuery(Connection conn, String sql, ResultConsumer consumer) throws SQLException {
+        long startNanos = System.nanoTime();
+        try (PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            consumer.consume(rs, startNanos);
+        }
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Executes and reads one query with the connection's cached statement.
+     */
+    private static long runQuery(TrackedConnection conn, String sql, ResultConsumer consumer) throws SQLException {
+        long startNanos = System.nanoTime();
+        try (ResultSet rs = conn.prepare(sql).executeQuery()) {
+            consumer.consume(rs, startNanos);
+        }
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * The driver log of the connections one caller opens itself (fullLogs.caller3.log),
+     * cleared beforehand.
+     */
+    private final class CallerLog implements AutoCloseable {
+        final String url;
+        final HttpLogTailer tailer;
+
+        CallerLog(int caller) {
+            this.url = JdbcUrls.withLogfileSuffix(ConnectionBenchmark.this.url, "caller" + caller);
+            this.tailer = new HttpLogTailer(JdbcUrls.httpLogPath(this.url, "fullLogs.caller" + caller + ".log"));
+            try {
+                Files.deleteIfExists(tailer.getPath());
+            } catch (IOException ignored) {
+            }
+        }
+
+        HttpLogTailer.Result poll() {
+            try {
+                return tailer.poll();
+            } catch (IOException e) {
+                return new HttpLogTailer.Result(null, 0, 0);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                tailer.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class Series {
+        final String strategy;
+        final LatencyHistogram acquire = new LatencyHistogram();
+        final LatencyHistogram total = new LatencyHistogram();
+        long httpRequests;
+        long connections;
+        long errors;
+        long wallNanos;
+
+        Series(String strategy) {
+            this.strategy = strategy;
+        }
+
+        String reportLine(Series baseline) {
+            if (total.getCount() == 0) {
+                return String.format("  %s: every operation failed", strategy);
+            }
+            StringBuilder line = new StringBuilder(String.format(
+                "  %s: op p50=%.3f ms, p99=%.3f ms, acquire p50=%.3f ms, p99=%.3f ms, %.1f ops/sec, %d connections opened, %.1f HTTP requests/op",
+                strategy, total.getValueAtPercentile(50) / 1_000_000.0, total.getValueAtPercentile(99) / 1_000_000.0,
+                acquire.getValueAtPercentile(50) / 1_000_000.0, acquire.getValueAtPercentile(99) / 1_000_000.0,
+                wallNanos > 0 ? total.getCount() * 1_000_000_000.0 / wallNanos : 0.0,
+                connections, (double) httpRequests / total.getCount()));
+            if (baseline != null && baseline.total.getCount() > 0) {
+                long baselineP50 = baseline.total.getValueAtPercentile(50);
+                line.append(String.format(", p50 %+.1f%% vs %s",
+                    100.0 * (total.getValueAtPercentile(50) - baselineP50) / baselineP50, baseline.strategy));
+            }
+            if (errors > 0) {
+                line.append(", ").append(errors).append(" failed operations");
+            }
+            return line.toString();
+        }
+    }
+}
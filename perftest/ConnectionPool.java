@@ -0,0 +1,120 @@
+package perftest;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of tracked connections. Connections are opened on demand up to
+ * the pool size; beyond that, callers wait for one to be released.
+ */
+public final class ConnectionPool implements AutoCloseable {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final JdbcTiming timing;
+    private final BlockingQueue<TrackedConnection> idle;
+    private final List<TrackedConnection> all = new ArrayList<>();
+    private int reserved;
+    private int lastId;
+
+    public ConnectionPool(String url, String user, String password, int maxSize) {
+        this(url, user, password, maxSize, null);
+    }
+
+    /**
+     * @param timing times the JDBC calls of every pooled connection, or null
+     */
+    public ConnectionPool(String url, String user, String password, int maxSize, JdbcTiming timing) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be a positive integer.");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.timing = timing;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Connections opened so far.
+     */
+    public int getOpenedCount() {
+        synchronized (all) {
+            return all.size();
+        }
+    }
+
+    /**
+     * Opens every connection up front so connect cost stays out of the measured window.
+     */
+    public void fill() throws SQLException {
+        while (tryOpen()) {
+            // keep opening
+        }
+    }
+
+    public TrackedConnection borrow() throws SQLException, InterruptedException {
+        TrackedConnection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        if (tryOpen()) {
+            connection = idle.poll();
+            if (connection != null) {
+                return connection;
+            }
+        }
+        return idle.take();
+    }
+
+    public void release(TrackedConnection connection) {
+        idle.offer(connection);
+    }
+
+    private boolean tryOpen() throws SQLException {
+        int id;
+        synchronized (all) {
+            if (reserved >= maxSize) {
+                return false;
+            }
+            reserved++;
+            id = ++lastId;
+        }
+        TrackedConnection connection;
+        try {
+            connection = TrackedConnection.open(url, user, password, id, timing);
+        } catch (SQLException e) {
+            synchronized (all) {
+                reserved--;
+            }
+            throw e;
+        }
+        synchronized (all) {
+            all.add(connection);
+        }
+        idle.offer(connection);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        synchronized (all) {
+            for (TrackedConnection connection : all) {
+                connection.close();
+            }
+            all.clear();
+            reserved = 0;
+        }
+        idle.clear();
+    }
+}
@@ -0,0 +1,312 @@
+package perftest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Incrementally follows the driver's HTTP log (Verbosity=2, LogModules=HTTP).
+ * Each poll resumes from the byte position reached by the previous one, so the
+ * cost of a poll is proportional to what the driver wrote since, not to the size
+ * of the whole log. Truncation and rotation (the path now pointing at a different
+ * file) are detected and the tailer restarts from the beginning of the new file.
+ */
+public final class HttpLogTailer implements Closeable {
+
+    private static final String START_TEXT = "Request completed in ";
+    private static final String END_TEXT = "ms";
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+    private final Path path;
+    private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+
+    private FileChannel channel;
+    private Object fileKey;
+    private FileTime creationTime;
+    private long position;
+
+    // Bytes of a line the driver has not finished writing yet
+    private byte[] partialLine = new byte[512];
+    private int partialLength;
+
+    public HttpLogTailer(Path path) {
+        this.path = path;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Skips everything currently in the log so the next poll only reports lines
+     * written from now on.
+     */
+    public void skipToEnd() throws IOException {
+        poll();
+    }
+
+    /**
+     * Reads every complete line appended since the last poll.
+     */
+    public Result poll() throws IOException {
+        Accumulator acc = new Accumulator();
+        BasicFileAttributes attrs = currentAttributes();
+
+        if (channel != null && (attrs == null || isDifferentFile(attrs))) {
+            // Rotated or deleted: finish whatever the old file still holds, then start over
+            drain(acc);
+            closeChannel();
+        }
+        if (attrs == null) {
+            return acc.toResult();
+        }
+        if (channel == null) {
+            open(attrs);
+        } else if (channel.size() < position) {
+            // Truncated in place
+            position = 0;
+            partialLength = 0;
+        }
+        drain(acc);
+        return acc.toResult();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeChannel();
+    }
+
+    private BasicFileAttributes currentAttributes() throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private boolean isDifferentFile(BasicFileAttributes attrs) {
+        if (fileKey != null || attrs.fileKey() != null) {
+            return !Objects.equals(fileKey, attrs.fileKey());
+        }
+        // No inode-style key on this platform (Windows); fall back to creation time
+        return !Objects.equals(creationTime, attrs.creationTime());
+    }
+
+    private void open(BasicFileAttributes attrs) throws IOException {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        fileKey = attrs.fileKey();
+        creationTime = attrs.creationTime();
+        position = 0;
+        partialLength = 0;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        partialLength = 0;
+    }
+
+    private void drain(Accumulator acc) throws IOException {
+        if (channel == null) {
+            return;
+        }
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return;
+            }
+            position += read;
+            buffer.flip();
+
+            byte[] chunk = buffer.array();
+            int lineStart = 0;
+            for (int i = 0; i < read; i++) {
+                if (chunk[i] == '\n') {
+                    appendPartial(chunk, lineStart, i - lineStart);
+                    acc.line(decodePartial());
+                    partialLength = 0;
+                    lineStart = i + 1;
+                }
+            }
+            appendPartial(chunk, lineStart, read - lineStart);
+        }
+    }
+
+    private void appendPartial(byte[] src, int offset, int length) {
+        if (partialLength + length > partialLine.length) {
+            partialLine = Arrays.copyOf(partialLine, Math.max(partialLine.length * 2, partialLength + length));
+        }
+        System.arraycopy(src, offset, partialLine, partialLength, length);
+        partialLength += length;
+    }
+
+    private String decodePartial() {
+        int length = partialLength;
+        if (length > 0 && partialLine[length - 1] == '\r') {
+            length--;
+        }
+        return new String(partialLine, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static final class Accumulator {
+        private String firstTimestamp;
+        private boolean sawLine;
+        private long sumOfDurations;
+        private int requestCount;
+        private final List<Request> requests = new ArrayList<>();
+
+        void line(String line) {
+            int tsEnd = line.indexOf('\t');
+            if (!sawLine) {
+                sawLine = true;
+                if (tsEnd != -1) {
+                    firstTimestamp = line.substring(0, tsEnd);
+                }
+            }
+
+            int start = line.indexOf(START_TEXT);
+            if (start == -1) {
+                return;
+            }
+            int numberStart = start + START_TEXT.length();
+            int numberEnd = line.indexOf(END_TEXT, numberStart);
+            if (numberEnd == -1) {
+                return;
+            }
+            try {
+                long duration = Long.parseLong(line.substring(numberStart, numberEnd).trim());
+                sumOfDurations += duration;
+                requestCount++;
+                // The timestamp is parsed when someone asks for it, off the timed loop
+                requests.add(new Request(tsEnd == -1 ? null : line.substring(0, tsEnd), duration));
+            } catch (NumberFormatException e) {
+                // Skip lines where number extraction fails
+            }
+        }
+
+        Result toResult() {
+            return new Result(firstTimestamp, sumOfDurations, requestCount, requests);
+        }
+    }
+
+    /**
+     * Epoch milliseconds of a log timestamp, or -1 if it is not in the driver's format.
+     */
+    public static long parseMillis(String timestamp) {
+        try {
+            return OffsetDateTime.parse(timestamp.replace("'", ""), TIMESTAMP).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * One completed HTTP request. The driver logs when a request completed and how
+     * long it took; the start is derived from the two. The log timestamp is kept as
+     * written and only parsed on the first call to {@link #getStartMillis}.
+     */
+    public static final class Request {
+        private final String endTimestamp;
+        private final long durationMillis;
+        private long startMillis;
+        private boolean parsed;
+
+        public Request(long startMillis, long durationMillis) {
+            this.endTimestamp = null;
+            this.durationMillis = durationMillis;
+            this.startMillis = startMillis;
+            this.parsed = true;
+        }
+
+        Request(String endTimestamp, long durationMillis) {
+            this.endTimestamp = endTimestamp;
+            this.durationMillis = durationMillis;
+        }
+
+        /**
+         * Epoch milliseconds the request started, or -1 when the log line had no usable timestamp.
+         */
+        public long getStartMillis() {
+            if (!parsed) {
+                long endMillis = endTimestamp == null ? -1 : parseMillis(endTimestamp);
+                startMillis = endMillis == -1 ? -1 : endMillis - durationMillis;
+                parsed = true;
+            }
+            return startMillis;
+        }
+
+        public long getEndMillis() {
+            long start = getStartMillis();
+            return start == -1 ? -1 : start + durationMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+    }
+
+    /**
+     * What the driver logged between two polls: the timestamp of the first new line,
+     * the summed "Request completed in N ms" durations and each request on its own.
+     */
+    public static final class Result {
+        private final String timestamp;
+        private final long sumOfDurations;
+        private final int requestCount;
+        private final List<Request> requests;
+
+        public Result(String timestamp, long sumOfDurations, int requestCount) {
+            this(timestamp, sumOfDurations, requestCount, Collections.<Request>emptyList());
+        }
+
+        public Result(String timestamp, long sumOfDurations, int requestCount, List<Request> requests) {
+            this.timestamp = timestamp;
+            this.sumOfDurations = sumOfDurations;
+            this.requestCount = requestCount;
+            this.requests = Collections.unmodifiableList(requests);
+        }
+
+        public String getTimestamp() {
+            return timestamp;
+        }
+
+        public long getSumOfDurations() {
+            return sumOfDurations;
+        }
+
+        public int getRequestCount() {
+            return requestCount;
+        }
+
+        /**
+         * The completed requests in log order.
+         */
+        public List<Request> getRequests() {
+            return requests;
+        }
+    }
+}
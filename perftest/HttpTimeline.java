@@ -0,0 +1,119 @@
+package perftest;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The HTTP requests of one run laid out against the run's own start and end. The
+ * run splits into the time before the first request, time with a request in
+ * flight, gaps between requests (the driver decoding a page or the caller reading
+ * rows before the next page is asked for) and the time after the last request.
+ * Requests without a usable log timestamp count towards the request time but
+ * cannot be placed on the timeline.
+ */
+public final class HttpTimeline {
+
+    private final List<HttpLogTailer.Request> requests;
+    private final long runStartMillis;
+    private final long runEndMillis;
+
+    private long httpMillis;
+    private long gapMillis;
+    private long leadMillis = -1;
+    private long tailMillis = -1;
+    private final List<Long> gaps = new ArrayList<>();
+
+    public HttpTimeline(List<HttpLogTailer.Request> requests, long runStartMillis, long runEndMillis) {
+        this.requests = requests;
+        this.runStartMillis = runStartMillis;
+        this.runEndMillis = runEndMillis;
+
+        long firstStart = -1;
+        long busyUntil = -1;
+        for (HttpLogTailer.Request request : requests) {
+            httpMillis += request.getDurationMillis();
+            if (request.getStartMillis() == -1) {
+                gaps.add(-1L);
+                continue;
+            }
+            if (firstStart == -1) {
+                firstStart = request.getStartMillis();
+                gaps.add(0L);
+            } else {
+                // Requests that overlap the previous one leave no gap
+                long gap = Math.max(0, request.getStartMillis() - busyUntil);
+                gaps.add(gap);
+                gapMillis += gap;
+            }
+            busyUntil = Math.max(busyUntil, request.getEndMillis());
+        }
+        if (firstStart != -1) {
+            leadMillis = Math.max(0, firstStart - runStartMillis);
+            tailMillis = Math.max(0, runEndMillis - busyUntil);
+        }
+    }
+
+    public int getPageCount() {
+        return requests.size();
+    }
+
+    /**
+     * Summed request durations.
+     */
+    public long getHttpMillis() {
+        return httpMillis;
+    }
+
+    /**
+     * Summed idle time between one request completing and the next one starting.
+     */
+    public long getGapMillis() {
+        return gapMillis;
+    }
+
+    /**
+     * From the start of the run to the start of the first request, or -1 without requests.
+     */
+    public long getLeadMillis() {
+        return leadMillis;
+    }
+
+    /**
+     * From the end of the last request to the end of the run, or -1 without requests.
+     */
+    public long getTailMillis() {
+        return tailMillis;
+    }
+
+    /**
+     * Nearest-rank percentile of the request durations, or -1 without requests.
+     */
+    public long getPagePercentile(double percentile) {
+        if (requests.isEmpty()) {
+            return -1;
+        }
+        long[] durations = new long[requests.size()];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = requests.get(i).getDurationMillis();
+        }
+        Arrays.sort(durations);
+        int rank = (int) Math.ceil(percentile / 100.0 * durations.length);
+        return durations[Math.max(0, Math.min(durations.length - 1, rank - 1))];
+    }
+
+    /**
+     * Writes one CSV line per request, with its start relative to the run start.
+     */
+    public void writeCsv(PrintWriter writer, String queryName, int iteration) {
+        for (int i = 0; i < requests.size(); i++) {
+            HttpLogTailer.Request request = requests.get(i);
+            writer.printf("%s,%d,%d,%d,%d,%d,%d\n", queryName, iteration, i + 1,
+                request.getStartMillis() == -1 ? -1 : request.getStartMillis() - runStartMillis,
+                request.getDurationMillis(),
+                gaps.get(i),
+                runEndMillis - runStartMillis);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package perftest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Times every call made through a connection's JDBC interfaces, without relying on
+ * the driver's log. {@link #wrap} returns a dynamic proxy of the connection; the
+ * statements and result sets it hands out are wrapped as well. Each call is timed
+ * into a histogram per interface and method (ResultSet.next, ResultSet.getString,
+ * PreparedStatement.executeQuery, ...), so that for example next() calls that stall
+ * on a page fetch show up in its tail.
+ * <p>
+ * Calls are recorded per thread, so workers never contend on the same histogram.
+ * {@link #snapshot} must only be called while no thread is making calls.
+ */
+public final class JdbcTiming {
+
+    private static final Class<?>[] WRAPPED = {
+        Connection.class, CallableStatement.class, PreparedStatement.class, Statement.class, ResultSet.class
+    };
+
+    private final List<Recorder> recorders = new ArrayList<>();
+    private final ThreadLocal<Recorder> recorder = ThreadLocal.withInitial(() -> {
+        Recorder r = new Recorder();
+        synchronized (recorders) {
+            recorders.add(r);
+        }
+        return r;
+    });
+
+    public Connection wrap(Connection connection) {
+        return (Connection) wrap(connection, Connection.class, null);
+    }
+
+    /**
+     * Turns recording on or off for calls made by the current thread, e.g. to leave
+     * warmup runs out. Recording is on by default.
+     */
+    public void setRecording(boolean recording) {
+        recorder.get().recording = recording;
+    }
+
+    /**
+     * Returns the calls recorded so far, merged across threads, and starts over.
+     */
+    public Snapshot snapshot() {
+        Map<String, LatencyHistogram> calls = new TreeMap<>();
+        synchronized (recorders) {
+            for (Recorder r : recorders) {
+                for (int kind = 0; kind < WRAPPED.length; kind++) {
+                    for (Map.Entry<Method, LatencyHistogram> entry : r.byKind.get(kind).entrySet()) {
+                        if (entry.getValue().getCount() == 0) {
+                            continue;
+                        }
+                        String name = WRAPPED[kind].getSimpleName() + "." + entry.getKey().getName();
+                        calls.computeIfAbsent(name, k -> new LatencyHistogram()).merge(entry.getValue());
+                        entry.getValue().reset();
+                    }
+                }
+            }
+        }
+        return new Snapshot(calls);
+    }
+
+    private Object wrap(Object target, Class<?> type, Object parent) {
+        int kind = 0;
+        while (WRAPPED[kind] != type) {
+            kind++;
+        }
+        return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+            new TimingHandler(target, kind, parent));
+    }
+
+    /**
+     * The wrapped interface a call's result should be proxied as, or null to return it unwrapped.
+     */
+    private static Class<?> wrappedType(Class<?> returnType) {
+        for (int kind = 1; kind < WRAPPED.length; kind++) {
+            if (WRAPPED[kind] == returnType) {
+                return returnType;
+            }
+        }
+        return null;
+    }
+
+    private final class TimingHandler implements InvocationHandler {
+        private final Object target;
+        private final int kind;
+        private final Object parent;
+
+        TimingHandler(Object target, int kind, Object parent) {
+            this.target = target;
+            this.kind = kind;
+            this.parent = parent;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (method.getDeclaringClass() == Object.class) {
+                return name.equals("equals") ? proxy == args[0] : method.invoke(target, args);
+            }
+            // Hand back the wrappers, not the driver's own objects
+            if (parent != null && (name.equals("getConnection") || name.equals("getStatement")) && args == null) {
+                return parent;
+            }
+
+            Recorder r = recorder.get();
+            long startNanos = System.nanoTime();
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (r.recording) {
+                    r.record(kind, method, System.nanoTime() - startNanos);
+                }
+            }
+
+            Class<?> type = result == null ? null : wrappedType(method.getReturnType());
+            return type == null ? result : wrap(result, type, proxy);
+        }
+    }
+
+    private static final class Recorder {
+        final List<Map<Method, LatencyHistogram>> byKind = new ArrayList<>();
+        boolean recording = true;
+
+        Recorder() {
+            for (int kind = 0; kind < WRAPPED.length; kind++) {
+                byKind.add(new HashMap<>());
+            }
+        }
+
+        void record(int kind, Method method, long nanos) {
+            Map<Method, LatencyHistogram> calls = byKind.get(kind);
+            LatencyHistogram histogram = calls.get(method);
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                calls.put(method, histogram);
+            }
+            histogram.record(nanos);
+        }
+    }
+
+    /**
+     * Per-call histograms, keyed by Interface.method.
+     */
+    public static final class Snapshot {
+        private final Map<String, LatencyHistogram> calls;
+
+        Snapshot(Map<String, LatencyHistogram> calls) {
+            this.calls = calls;
+        }
+
+        public Map<String, LatencyHistogram> getCalls() {
+            return calls;
+        }
+
+        public boolean isEmpty() {
+            return calls.isEmpty();
+        }
+
+        /**
+         * One line per call, slowest total first, with its share of the given wall time.
+         */
+        public List<String> summaryLines(long wallNanos) {
+            List<Map.Entry<String, LatencyHistogram>> entries = new ArrayList<>(calls.entrySet());
+            entries.sort((a, b) -> Double.compare(total(b.getValue()), total(a.getValue())));
+            List<String> lines = new ArrayList<>();
+            for (Map.Entry<String, LatencyHistogram> entry : entries) {
+                LatencyHistogram histogram = entry.getValue();
+                lines.add(String.format("  %s: calls=%d, total=%.3f ms (%.1f%%), p50=%.4f ms, p99=%.4f ms, Max=%.3f ms",
+                    entry.getKey(), histogram.getCount(), total(histogram) / 1_000_000.0,
+                    wallNanos > 0 ? 100.0 * total(histogram) / wallNanos : 0.0,
+                    histogram.getValueAtPercentile(50) / 1_000_000.0,
+                    histogram.getValueAtPercentile(99) / 1_000_000.0,
+                    histogram.getMax() / 1_000_000.0));
+            }
+            return lines;
+        }
+
+        private static double total(LatencyHistogram histogram) {
+            return histogram.getMean() * histogram.getCount();
+        }
+    }
+
+    /**
+     * Writes one CSV line per query and call. When appending to an existing file the header is not repeated.
+     */
+    public static void writeCsv(Path path, boolean append, Map<String, Snapshot> byQuery) throws IOException {
+        boolean writeHeader = !append || !Files.exists(path) || Files.size(path) == 0;
+        try (PrintWriter writer = new PrintWriter(append
+                ? Files.newBufferedWriter(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                : Files.newBufferedWriter(path))) {
+            if (writeHeader) {
+                writer.println("Query Name,Call,Calls,total-ms,avg-ms,p50-ms,p90-ms,p99-ms,max-ms");
+            }
+            for (Map.Entry<String, Snapshot> query : byQuery.entrySet()) {
+                for (Map.Entry<String, LatencyHistogram> call : query.getValue().calls.entrySet()) {
+                    LatencyHistogram histogram = call.getValue();
+                    writer.printf("%s,%s,%d,%.3f,%.4f,%.4f,%.4f,%.4f,%.3f%n", query.getKey(), call.getKey(),
+                        histogram.getCount(), Snapshot.total(histogram) / 1_000_000.0,
+                        histogram.getMean() / 1_000_000.0,
+                        histogram.getValueAtPercentile(50) / 1_000_000.0,
+                        histogram.getValueAtPercentile(90) / 1_000_000.0,
+                        histogram.getValueAtPercentile(99) / 1_000_000.0,
+                        histogram.getMax() / 1_000_000.0);
+                }
+            }
+        }
+    }
+}
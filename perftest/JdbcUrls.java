@@ -0,0 +1,88 @@
+package perftest;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Helpers for CData style connection strings, where connection properties follow
+ * the subprotocol as Name=Value pairs separated by semicolons
+ * (jdbc:github:InitiateOAuth=GETANDREFRESH;Logfile=...;Verbosity=2;).
+ */
+public final class JdbcUrls {
+
+    private JdbcUrls() {
+    }
+
+    /**
+     * Returns the value of a connection property, or null when the URL does not set it.
+     * Property names are matched case-insensitively, surrounding quotes are removed.
+     */
+    public static String getProperty(String url, String name) {
+        Matcher matcher = propertyPattern(name).matcher(url);
+        if (!matcher.find()) {
+            return null;
+        }
+        return unquote(matcher.group(2).trim());
+    }
+
+    /**
+     * Returns the URL with the given property set, replacing an existing value or
+     * appending the property at the end. A replaced value keeps the quotes of the
+     * old one, so a path with spaces stays quoted.
+     */
+    public static String withProperty(String url, String name, String value) {
+        Matcher matcher = propertyPattern(name).matcher(url);
+        if (matcher.find()) {
+            String old = matcher.group(2).trim();
+            if (!old.equals(unquote(old)) && value.equals(unquote(value))) {
+                value = old.charAt(0) + value + old.charAt(0);
+            }
+            return url.substring(0, matcher.start(2)) + value + url.substring(matcher.end(2));
+        }
+        String separator = url.endsWith(";") || url.endsWith(":") ? "" : ";";
+        return url + separator + name + "=" + value + ";";
+    }
+
+    /**
+     * The driver log the HTTP timings are read from: the Logfile property when the
+     * URL sets one, otherwise the given default.
+     */
+    public static Path httpLogPath(String url, String defaultPath) {
+        String logfile = getProperty(url, "Logfile");
+        return Paths.get(logfile != null ? logfile : defaultPath);
+    }
+
+    /**
+     * Returns the URL with its Logfile (if any) renamed to carry the given suffix,
+     * so that several connections do not interleave their HTTP log lines.
+     */
+    public static String withLogfileSuffix(String url, String suffix) {
+        String logfile = getProperty(url, "Logfile");
+        if (logfile == null) {
+            return url;
+        }
+        int dot = logfile.lastIndexOf('.');
+        int slash = Math.max(logfile.lastIndexOf('/'), logfile.lastIndexOf('\\'));
+        String renamed = dot > slash
+            ? logfile.substring(0, dot) + "." + suffix + logfile.substring(dot)
+            : logfile + "." + suffix;
+        return withProperty(url, "Logfile", renamed);
+    }
+
+    private static Pattern propertyPattern(String name) {
+        return Pattern.compile("(?i)(^|[:;])\\s*" + Pattern.quote(name) + "\\s*=\\s*([^;]*)");
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2) {
+            char first = value.charAt(0);
+            char last = value.charAt(value.length() - 1);
+            if ((first == '\'' || first == '"') && first == last) {
+                return value.substring(1, value.length() - 1);
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,67 @@
+package perftest;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+
+/**
+ * A Java Flight Recorder recording, started and dumped around the measured part of
+ * a run. JFR is reached reflectively so the harness still compiles for Java 8;
+ * it needs a JVM that ships jdk.jfr (11+, or 8u262+).
+ */
+public final class JfrRecording implements AutoCloseable {
+
+    private final Object recording;
+    private boolean closed;
+
+    private JfrRecording(Object recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Starts a recording with one of the JVM's settings files, e.g. default or profile.
+     */
+    public static JfrRecording start(String settings) {
+        try {
+            Class<?> configurationClass = Class.forName("jdk.jfr.Configuration");
+            Object configuration = configurationClass.getMethod("getConfiguration", String.class).invoke(null, settings);
+            Object recording = Class.forName("jdk.jfr.Recording").getConstructor(configurationClass).newInstance(configuration);
+            recording.getClass().getMethod("start").invoke(recording);
+            return new JfrRecording(recording);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("JFR is not available on this JVM (" + System.getProperty("java.version") + ").", e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Could not start a JFR recording with settings '" + settings + "': "
+                + e.getCause().getMessage(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not start a JFR recording: " + e, e);
+        }
+    }
+
+    /**
+     * Stops the recording and writes it to the given file.
+     */
+    public void stopAndDump(Path path) {
+        try {
+            recording.getClass().getMethod("stop").invoke(recording);
+            recording.getClass().getMethod("dump", Path.class).invoke(recording, path);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Could not write JFR recording " + path + ": " + e.getCause().getMessage(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not write JFR recording " + path + ": " + e, e);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            recording.getClass().getMethod("close").invoke(recording);
+        } catch (ReflectiveOperationException ignored) {
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package perftest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Fixed-memory latency histogram with log-linear buckets. Values are nanoseconds;
+ * every power-of-two range is split into 64 linear sub-buckets, so any recorded
+ * value is reproduced within 1/64 (about 1.6%) of itself while the whole range
+ * from 1 ns to about 9.7 hours fits in 2,560 counters. Histograms with the same
+ * layout can be merged, which is how results from separate runs are combined.
+ * <p>
+ * Not thread-safe; give every recording thread its own instance and merge them.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+    private static final int MAX_EXPONENT = 44;
+    /** Largest value tracked exactly by bucket; larger values are clamped into the last bucket. */
+    public static final long MAX_TRACKABLE_NANOS = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKET_COUNT = indexOf(MAX_TRACKABLE_NANOS) + 1;
+
+    private static final String FILE_HEADER = "# LatencyHistogram v1 unit=ns subBucketBits=" + SUB_BUCKET_BITS;
+    private static final double[] REPORTED_PERCENTILES = {50, 90, 99, 99.9};
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[indexOf(Math.min(value, MAX_TRACKABLE_NANOS))]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.merge(this);
+        return copy;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    /**
+     * The value below which the given percentage of recorded values fall, reported
+     * as the midpoint of the bucket holding that rank and capped to the exact max.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * totalCount);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.max(getMin(), Math.min(max, midpointOf(i)));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Mann-Whitney z statistic of the other histogram's values against this one's,
+     * positive when the other's tend to be larger. Values in the same bucket count
+     * as ties. See {@link RankSum}.
+     */
+    public double rankSumZ(LatencyHistogram other) {
+        return RankSum.z(counts, other.counts, BUCKET_COUNT);
+    }
+
+    /**
+     * One line summary in milliseconds: count, mean, p50/p90/p99/p99.9 and max.
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("n=%d, Avg=%.3f ms", totalCount, getMean() / 1_000_000.0));
+        for (double p : REPORTED_PERCENTILES) {
+            sb.append(String.format(", p%s=%.3f ms", formatPercentile(p), getValueAtPercentile(p) / 1_000_000.0));
+        }
+        sb.append(String.format(", Max=%.3f ms", max / 1_000_000.0));
+        return sb.toString();
+    }
+
+    /**
+     * Writes the histogram in a small text format that {@link #read(Path)} loads back.
+     * Percentiles are included as comments for people reading the file.
+     */
+    public void write(Path path) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(FILE_HEADER);
+            writer.newLine();
+            for (double p : REPORTED_PERCENTILES) {
+                writer.write(String.format("# p%s=%d", formatPercentile(p), getValueAtPercentile(p)));
+                writer.newLine();
+            }
+            writer.write("count=" + totalCount);
+            writer.newLine();
+            writer.write("sum=" + sum);
+            writer.newLine();
+            writer.write("min=" + getMin());
+            writer.newLine();
+            writer.write("max=" + max);
+            writer.newLine();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                if (counts[i] != 0) {
+                    writer.write(i + " " + counts[i]);
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    public static LatencyHistogram read(Path path) throws IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (!FILE_HEADER.equals(header)) {
+                throw new IOException(path + " is not a histogram file with this bucket layout.");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    int eq = line.indexOf('=');
+                    if (eq != -1) {
+                        long value = Long.parseLong(line.substring(eq + 1));
+                        switch (line.substring(0, eq)) {
+                            case "count": histogram.totalCount = value; break;
+                            case "sum": histogram.sum = value; break;
+                            case "min": histogram.min = value; break;
+                            case "max": histogram.max = value; break;
+                            default: break;
+                        }
+                    } else {
+                        int space = line.indexOf(' ');
+                        histogram.counts[Integer.parseInt(line.substring(0, space))] = Long.parseLong(line.substring(space + 1));
+                    }
+                } catch (RuntimeException e) {
+                    throw new IOException("Malformed histogram line in " + path + ": " + line, e);
+                }
+            }
+        }
+        if (histogram.totalCount == 0) {
+            histogram.min = Long.MAX_VALUE;
+        }
+        return histogram;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    private static long midpointOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index - shift * SUB_BUCKET_HALF;
+        long lowest = subBucket << shift;
+        return lowest + ((1L << shift) - 1) / 2;
+    }
+
+    private static String formatPercentile(double p) {
+        return p == Math.rint(p) ? String.valueOf((long) p) : String.valueOf(p);
+    }
+}
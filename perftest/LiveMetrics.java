@@ -0,0 +1,292 @@
+package perftest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Counters and latency percentiles per query, published while a run is going so
+ * it can be watched from outside: as one JMX MBean per query
+ * ({@link LiveMetricsMBean}, perftest:type=LiveMetrics,query=Q1) and, when a file is
+ * given, in the Prometheus text format, rewritten every interval for a node
+ * exporter textfile collector or similar to pick up. Nothing listens on the network.
+ * <p>
+ * Recording is safe from several threads. The file is written by a background
+ * thread and replaced atomically where the file system allows it.
+ */
+public final class LiveMetrics implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(LiveMetrics.class.getName());
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final Map<String, Query> queries = new ConcurrentHashMap<>();
+    private final List<String> order = new ArrayList<>();
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final Path prometheusFile;
+    private final ScheduledExecutorService writer;
+
+    /**
+     * @param prometheusFile file to keep the metrics in, or null for JMX only
+     * @param intervalMillis how often the file is rewritten
+     */
+    public LiveMetrics(Path prometheusFile, long intervalMillis) {
+        this.prometheusFile = prometheusFile;
+        if (prometheusFile == null) {
+            writer = null;
+            return;
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "live-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleAtFixedRate(this::writeQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The metrics of the named query, registering its MBean on first use.
+     */
+    public Query query(String name) {
+        Query query = queries.get(name);
+        if (query != null) {
+            return query;
+        }
+        synchronized (order) {
+            query = queries.get(name);
+            if (query == null) {
+                query = new Query();
+                try {
+                    server.registerMBean(new StandardMBean(query, LiveMetricsMBean.class), objectName(name));
+                } catch (JMException e) {
+                    LOGGER.log(Level.WARNING, "Could not register the live metrics MBean for " + name, e);
+                }
+                queries.put(name, query);
+                order.add(name);
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Writes the current metrics in the Prometheus text format to the file.
+     */
+    public void writePrometheus() throws IOException {
+        if (prometheusFile == null) {
+            return;
+        }
+        List<String> names;
+        synchronized (order) {
+            names = new ArrayList<>(order);
+        }
+        Path absolute = prometheusFile.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(temp))) {
+            counter(out, names, "perftest_executions_total", "Measured query executions completed.", q -> q.executions.sum());
+            counter(out, names, "perftest_errors_total", "Measured query executions that failed.", q -> q.errors.sum());
+            counter(out, names, "perftest_rows_total", "Rows read by completed executions.", q -> q.rows.sum());
+            counter(out, names, "perftest_http_requests_total", "HTTP requests logged by the driver.", q -> q.httpRequests.sum());
+            out.println("# HELP perftest_http_seconds_total Time in HTTP requests logged by the driver.");
+            out.println("# TYPE perftest_http_seconds_total counter");
+            for (String name : names) {
+                out.printf(Locale.ROOT, "perftest_http_seconds_total{query=\"%s\"} %.3f%n", escape(name), queries.get(name).httpMillis.sum() / 1000.0);
+            }
+            out.println("# HELP perftest_in_flight Query executions running now.");
+            out.println("# TYPE perftest_in_flight gauge");
+            for (String name : names) {
+                out.printf(Locale.ROOT, "perftest_in_flight{query=\"%s\"} %d%n", escape(name), queries.get(name).inFlight.get());
+            }
+            out.println("# HELP perftest_query_duration_seconds Execute-to-last-row time of completed executions.");
+            out.println("# TYPE perftest_query_duration_seconds summary");
+            for (String name : names) {
+                LatencyHistogram latency = queries.get(name).latencySnapshot();
+                String label = escape(name);
+                for (double quantile : QUANTILES) {
+                    out.printf(Locale.ROOT, "perftest_query_duration_seconds{query=\"%s\",quantile=\"%s\"} %.6f%n", label, quantile,
+                        latency.getValueAtPercentile(quantile * 100) / 1_000_000_000.0);
+                }
+                out.printf(Locale.ROOT, "perftest_query_duration_seconds_sum{query=\"%s\"} %.6f%n", label,
+                    latency.getMean() * latency.getCount() / 1_000_000_000.0);
+                out.printf(Locale.ROOT, "perftest_query_duration_seconds_count{query=\"%s\"} %d%n", label, latency.getCount());
+            }
+        }
+        try {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Stops the file writer after a last write and unregisters the MBeans.
+     */
+    @Override
+    public void close() {
+        if (writer != null) {
+            writer.shutdownNow();
+            // A scheduled write may still be running; the last write must not overlap it
+            boolean stopped = false;
+            try {
+                stopped = writer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (stopped) {
+                writeQuietly();
+            } else {
+                LOGGER.warning("The live metrics writer did not stop; skipped the last write of " + prometheusFile);
+            }
+        }
+        synchronized (order) {
+            for (String name : order) {
+                try {
+                    server.unregisterMBean(objectName(name));
+                } catch (JMException ignored) {
+                }
+            }
+        }
+    }
+
+    private void writeQuietly() {
+        try {
+            writePrometheus();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not write " + prometheusFile, e);
+        }
+    }
+
+    private void counter(PrintWriter out, List<String> names, String metric, String help,
+                         java.util.function.ToLongFunction<Query> value) {
+        out.println("# HELP " + metric + " " + help);
+        out.println("# TYPE " + metric + " counter");
+        for (String name : names) {
+            out.printf(Locale.ROOT, "%s{query=\"%s\"} %d%n", metric, escape(name), value.applyAsLong(queries.get(name)));
+        }
+    }
+
+    private static ObjectName objectName(String queryName) throws JMException {
+        return new ObjectName("perftest:type=LiveMetrics,query=" + ObjectName.quote(queryName));
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * One query's metrics. Call {@link #started} when an execution begins and then
+     * either {@link #completed} or {@link #failed}.
+     */
+    public static final class Query implements LiveMetricsMBean {
+        private final LongAdder executions = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder httpRequests = new LongAdder();
+        private final LongAdder httpMillis = new LongAdder();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        Query() {
+        }
+
+        public void started() {
+            inFlight.incrementAndGet();
+        }
+
+        public void completed(long nanos, long rowCount, HttpLogTailer.Result http) {
+            inFlight.decrementAndGet();
+            executions.increment();
+            rows.add(rowCount);
+            httpRequests.add(http.getRequestCount());
+            httpMillis.add(http.getSumOfDurations());
+            synchronized (latency) {
+                latency.record(nanos);
+            }
+        }
+
+        public void failed() {
+            inFlight.decrementAndGet();
+            errors.increment();
+        }
+
+        LatencyHistogram latencySnapshot() {
+            synchronized (latency) {
+                return latency.copy();
+            }
+        }
+
+        @Override
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public long getRows() {
+            return rows.sum();
+        }
+
+        @Override
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        @Override
+        public double getLatencyMeanMillis() {
+            return latencySnapshot().getMean() / 1_000_000.0;
+        }
+
+        @Override
+        public double getLatencyP50Millis() {
+            return latencySnapshot().getValueAtPercentile(50) / 1_000_000.0;
+        }
+
+        @Override
+        public double getLatencyP90Millis() {
+            return latencySnapshot().getValueAtPercentile(90) / 1_000_000.0;
+        }
+
+        @Override
+        public double getLatencyP99Millis() {
+            return latencySnapshot().getValueAtPercentile(99) / 1_000_000.0;
+        }
+
+        @Override
+        public double getLatencyMaxMillis() {
+            return latencySnapshot().getMax() / 1_000_000.0;
+        }
+
+        @Override
+        public long getHttpRequests() {
+            return httpRequests.sum();
+        }
+
+        @Override
+        public long getHttpMillis() {
+            return httpMillis.sum();
+        }
+    }
+}
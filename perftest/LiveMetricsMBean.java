@@ -0,0 +1,31 @@
+package perftest;
+
+/**
+ * JMX view of one query's live metrics, registered as
+ * perftest:type=LiveMetrics,query=&lt;name&gt; while a run is going. Latencies are
+ * over all measured executions so far.
+ */
+public interface LiveMetricsMBean {
+
+    long getExecutions();
+
+    long getErrors();
+
+    long getRows();
+
+    int getInFlight();
+
+    double getLatencyMeanMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP90Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyMaxMillis();
+
+    long getHttpRequests();
+
+    long getHttpMillis();
+}
@@ -0,0 +1,129 @@
+package perftest;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the memory cost of one run: bytes allocated by the calling thread, the
+ * collections and collection time of all garbage collectors, and the peak heap use.
+ * Call {@link #start} right before the run and {@link #stop} right after it, on the
+ * same thread.
+ * <p>
+ * Collector counts are JVM-wide, so work on other threads is included. Peak heap
+ * is the sum of each heap pool's peak since start, which can exceed the true peak
+ * when pools peak at different times. Collectors that report concurrent cycles
+ * rather than pauses (G1 Concurrent GC, ZGC Cycles, ...) are not counted.
+ */
+public final class MemoryProbe {
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final List<GarbageCollectorMXBean> collectors = new ArrayList<>();
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+
+    private long startAllocated;
+    private long startGcCount;
+    private long startGcMillis;
+
+    private long allocatedBytes;
+    private long gcCount;
+    private long gcMillis;
+    private long peakHeapBytes;
+
+    public MemoryProbe() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean = null;
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            allocationBean = (com.sun.management.ThreadMXBean) bean;
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        threads = allocationBean;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String name = collector.getName();
+            if (!name.contains("Concurrent") && !name.endsWith("Cycles")) {
+                collectors.add(collector);
+            }
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+    }
+
+    public void start() {
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+        }
+        startGcCount = collectionCount();
+        startGcMillis = collectionMillis();
+        // Read last, so the probe's own allocations above are not counted
+        startAllocated = allocated();
+    }
+
+    public void stop() {
+        long endAllocated = allocated();
+        allocatedBytes = startAllocated < 0 || endAllocated < 0 ? -1 : endAllocated - startAllocated;
+        gcCount = collectionCount() - startGcCount;
+        gcMillis = collectionMillis() - startGcMillis;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        peakHeapBytes = peak;
+    }
+
+    /**
+     * Bytes allocated by the thread between start and stop, or -1 when the JVM cannot tell.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcMillis() {
+        return gcMillis;
+    }
+
+    public long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    /**
+     * Heap in use now, summed over the heap pools.
+     */
+    public long getHeapUsedBytes() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    private long allocated() {
+        return threads == null ? -1 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private long collectionMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,154 @@
+package perftest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Optional command line switches that follow the two positional arguments,
+ * written as --name value, --name=value, or a bare --flag.
+ */
+public final class Options {
+
+    private final Map<String, List<String>> values = new LinkedHashMap<>();
+
+    private Options() {
+    }
+
+    /**
+     * Parses the options, rejecting any whose name is not in known.
+     */
+    public static Options parse(String[] args, int from, Collection<String> known) {
+        Options options = parse(args, from);
+        for (String name : options.values.keySet()) {
+            if (!known.contains(name)) {
+                throw new IllegalArgumentException("Unknown option --" + name + ".");
+            }
+        }
+        return options;
+    }
+
+    public static Options parse(String[] args, int from) {
+        Options options = new Options();
+        for (int i = from; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument '" + arg + "'. Options must start with --.");
+            }
+            String name = arg.substring(2);
+            String value;
+            int eq = name.indexOf('=');
+            if (eq != -1) {
+                value = name.substring(eq + 1);
+                name = name.substring(0, eq);
+            } else if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                value = args[++i];
+            } else {
+                value = "true";
+            }
+            options.values.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+        }
+        return options;
+    }
+
+    /**
+     * The options as --name=value arguments, leaving out the given names; used to
+     * pass the same settings on to a child JVM.
+     */
+    public List<String> toArgs(String... excluded) {
+        List<String> skip = Arrays.asList(excluded);
+        List<String> args = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : values.entrySet()) {
+            if (skip.contains(entry.getKey())) {
+                continue;
+            }
+            for (String value : entry.getValue()) {
+                args.add("--" + entry.getKey() + "=" + value);
+            }
+        }
+        return args;
+    }
+
+    public boolean has(String name) {
+        return values.containsKey(name);
+    }
+
+    public String getString(String name, String defaultValue) {
+        List<String> list = values.get(name);
+        return list == null ? defaultValue : list.get(list.size() - 1);
+    }
+
+    /**
+     * All values given for an option that may be repeated, in command line order.
+     */
+    public List<String> getAll(String name) {
+        List<String> list = values.get(name);
+        return list == null ? Collections.<String>emptyList() : Collections.unmodifiableList(list);
+    }
+
+    public boolean getFlag(String name) {
+        return Boolean.parseBoolean(getString(name, "false"));
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects an integer but was '" + value + "'.");
+        }
+    }
+
+    public double getDouble(String name, double defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects a number but was '" + value + "'.");
+        }
+    }
+
+    /**
+     * A duration such as 90s, 10m, 2h or 500ms, in milliseconds; a bare number is seconds.
+     */
+    public long getDurationMillis(String name, long defaultMillis) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultMillis;
+        }
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        long unit = 1000;
+        if (v.endsWith("ms")) {
+            unit = 1;
+            v = v.substring(0, v.length() - 2);
+        } else if (v.endsWith("s")) {
+            v = v.substring(0, v.length() - 1);
+        } else if (v.endsWith("m")) {
+            unit = 60_000;
+            v = v.substring(0, v.length() - 1);
+        } else if (v.endsWith("h")) {
+            unit = 3_600_000;
+            v = v.substring(0, v.length() - 1);
+        }
+        try {
+            double amount = Double.parseDouble(v.trim());
+            if (amount <= 0) {
+                throw new NumberFormatException();
+            }
+            return (long) (amount * unit);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects a positive duration such as 90s, 10m or 2h but was '" + value + "'.");
+        }
+    }
+}
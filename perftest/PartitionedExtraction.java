@@ -0,0 +1,337 @@
+package perftest;
+
+import java.io.PrintWriter;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bulk extraction of a query split into partitions. The partitions come from the
+ * query's "-- @partition: predicate" directives; each predicate replaces the
+ * ${partition} placeholder in the SQL. For every degree of parallelism the
+ * partitions are fetched concurrently on that many connections, all rows are
+ * handed to a single consumer, and the wall time is compared with one cursor
+ * reading the whole query (${partition} = 1=1) to give speedup and efficiency.
+ */
+public final class PartitionedExtraction {
+
+    private static final Logger LOGGER = Logger.getLogger(PartitionedExtraction.class.getName());
+
+    // Rows travel from the partition readers to the consumer in batches of this size
+    private static final int BATCH_ROWS = 256;
+    private static final Object[][] END = new Object[0][];
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final List<QuerySpec> queries;
+    private final int iterations;
+    private final List<Integer> parallelism;
+    private int warmup;
+    private int connectionId;
+
+    /**
+     * @param parallelism the numbers of concurrent connections to try; empty for 1, 2, 4, ... up to the partition count
+     */
+    public PartitionedExtraction(String url, String user, String password, List<QuerySpec> queries,
+                                 int iterations, List<Integer> parallelism) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.queries = queries;
+        this.iterations = iterations;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Unmeasured extractions before each measured series.
+     */
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * Runs the baseline and every degree of parallelism for each query and writes
+     * one CSV line per extraction. Returns the report lines.
+     */
+    public List<String> run(PrintWriter csvWriter) throws InterruptedException {
+        csvWriter.println("Query Name,Mode,Parallelism,Iteration,total,rows,rows-per-sec,slowest-partition,HTTPRequests,HTTPLogTime,errors");
+        List<String> report = new ArrayList<>();
+        for (QuerySpec query : queries) {
+            List<String> partitions = query.getDirective("partition");
+            if (partitions.isEmpty() || !query.hasPlaceholder("partition")) {
+                String message = "Query " + query.getName() + " skipped: it needs \"-- @partition: predicate\" lines and ${partition} in its SQL.";
+                LOGGER.warning(message);
+                report.add(message);
+                continue;
+            }
+
+            System.out.println("\n--- Partitioned extraction for Query: " + query.getName() + " (" + partitions.size() + " partitions) ---");
+            Series baseline = new Series("single-cursor", 1);
+            measure(query, Collections.singletonList(query.render(Collections.singletonMap("partition", "1=1"))), baseline, csvWriter);
+
+            List<Series> results = new ArrayList<>();
+            for (int threads : degrees(partitions.size())) {
+                Series series = new Series("partitioned", threads);
+                List<String> sqls = new ArrayList<>();
+                for (String predicate : partitions) {
+                    sqls.add(query.render(Collections.singletonMap("partition", "(" + predicate + ")")));
+                }
+                measure(query, sqls, series, csvWriter);
+                results.add(series);
+            }
+            report(query.getName(), partitions.size(), baseline, results, report);
+        }
+        return report;
+    }
+
+    private List<Integer> degrees(int partitions) {
+        List<Integer> degrees = new ArrayList<>();
+        if (parallelism.isEmpty()) {
+            for (int d = 1; d < partitions; d *= 2) {
+                degrees.add(d);
+            }
+            degrees.add(partitions);
+            return degrees;
+        }
+        for (int d : parallelism) {
+            if (d > partitions) {
+                LOGGER.warning("Parallelism " + d + " exceeds the " + partitions + " partitions; using " + partitions + ".");
+                d = partitions;
+            }
+            if (d > 0 && !degrees.contains(d)) {
+                degrees.add(d);
+            }
+        }
+        return degrees;
+    }
+
+    /**
+     * Runs the warmup and measured extractions of one series on freshly opened connections.
+     */
+    private void measure(QuerySpec query, List<String> sqls, Series series, PrintWriter csvWriter) throws InterruptedException {
+        System.out.printf("  %s, %d connection(s):", series.mode, series.threads);
+        List<TrackedConnection> connections = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(series.threads);
+        try {
+            for (int c = 0; c < series.threads; c++) {
+                connections.add(TrackedConnection.open(url, user, password, ++connectionId));
+            }
+            for (int run = 1; run <= warmup + iterations; run++) {
+                boolean measured = run > warmup;
+                Extraction extraction = extract(sqls, connections, executor);
+                long httpMs = 0;
+                long httpRequests = 0;
+                for (TrackedConnection connection : connections) {
+                    HttpLogTailer.Result http = connection.pollHttpLog();
+                    httpMs += http.getSumOfDurations();
+                    httpRequests += http.getRequestCount();
+                }
+                if (!measured) {
+                    continue;
+                }
+                int iteration = run - warmup;
+                if (extraction.errors > 0) {
+                    series.errors++;
+                } else {
+                    series.total.record(extraction.nanos);
+                    series.rows += extraction.rows;
+                    series.httpRequests += httpRequests;
+                    series.rowCounts.add(extraction.rows);
+                }
+                System.out.printf(" %d ms", TimeUnit.NANOSECONDS.toMillis(extraction.nanos));
+                csvWriter.printf("%s,%s,%d,%d,%d,%d,%.1f,%d,%d,%d,%d\n",
+                    query.getName(), series.mode, series.threads, iteration,
+                    TimeUnit.NANOSECONDS.toMillis(extraction.nanos), extraction.rows,
+                    extraction.rows * 1_000_000_000.0 / Math.max(1, extraction.nanos),
+                    TimeUnit.NANOSECONDS.toMillis(extraction.slowestPartitionNanos),
+                    httpRequests, httpMs, extraction.errors);
+            }
+        } catch (SQLException e) {
+            series.errors += iterations;
+            LOGGER.log(Level.WARNING, "Could not open connections for " + query.getName() + " at parallelism " + series.threads, e);
+            System.err.println("  Could not connect: " + e.getMessage());
+        } finally {
+            System.out.println();
+            executor.shutdownNow();
+            for (TrackedConnection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Fetches every partition once. Readers take partitions from a shared queue, so a
+     * connection that finishes early picks up the next one; the calling thread is
+     * the single consumer of all rows.
+     */
+    private Extraction extract(List<String> sqls, List<TrackedConnection> connections, ExecutorService executor)
+            throws InterruptedException {
+        Queue<String> pending = new ConcurrentLinkedQueue<>(sqls);
+        BlockingQueue<Object[][]> batches = new ArrayBlockingQueue<>(4 * connections.size());
+        AtomicInteger errors = new AtomicInteger();
+        AtomicLong slowestPartition = new AtomicLong();
+
+        long startNanos = System.nanoTime();
+        List<Future<?>> readers = new ArrayList<>();
+        for (TrackedConnection connection : connections) {
+            readers.add(executor.submit(() -> {
+                try {
+                    String sql;
+                    while ((sql = pending.poll()) != null) {
+                        long partitionStart = System.nanoTime();
+                        try {
+                            readPartition(connection.prepare(sql), batches);
+                        } catch (SQLException e) {
+                            errors.incrementAndGet();
+                            LOGGER.log(Level.WARNING, "Partition failed on connection " + connection.getId() + ": " + sql, e);
+                        }
+                        long partitionNanos = System.nanoTime() - partitionStart;
+                        slowestPartition.accumulateAndGet(partitionNanos, Math::max);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    try {
+                        batches.put(END);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+        }
+
+        long rows = 0;
+        int finished = 0;
+        while (finished < connections.size()) {
+            Object[][] batch = batches.take();
+            if (batch == END) {
+                finished++;
+            } else {
+                rows += batch.length;
+            }
+        }
+        long nanos = System.nanoTime() - startNanos;
+        for (Future<?> reader : readers) {
+            try {
+                reader.get();
+            } catch (ExecutionException e) {
+                errors.incrementAndGet();
+                LOGGER.log(Level.SEVERE, "Partition reader failed", e.getCause());
+            }
+        }
+        return new Extraction(nanos, rows, slowestPartition.get(), errors.get());
+    }
+
+    private static void readPartition(PreparedStatement stmt, BlockingQueue<Object[][]> batches)
+            throws SQLException, InterruptedException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            int columns = rs.getMetaData().getColumnCount();
+            Object[][] batch = new Object[BATCH_ROWS][];
+            int size = 0;
+            while (rs.next()) {
+                Object[] row = new Object[columns];
+                for (int c = 0; c < columns; c++) {
+                    row[c] = rs.getObject(c + 1);
+                }
+                batch[size++] = row;
+                if (size == BATCH_ROWS) {
+                    batches.put(batch);
+                    batch = new Object[BATCH_ROWS][];
+                    size = 0;
+                }
+            }
+            if (size > 0) {
+                Object[][] last = new Object[size][];
+                System.arraycopy(batch, 0, last, 0, size);
+                batches.put(last);
+            }
+        }
+    }
+
+    private void report(String queryName, int partitions, Series baseline, List<Series> results, List<String> report) {
+        report.add(String.format("Query %s, %d partitions:", queryName, partitions));
+        if (baseline.total.getCount() == 0) {
+            report.add("  Single cursor failed; no baseline to compare with.");
+            return;
+        }
+        long baselineP50 = baseline.total.getValueAtPercentile(50);
+        report.add(String.format("  Single cursor: p50=%.3f ms, %.1f rows/sec, %.1f HTTP requests/run%s",
+            baselineP50 / 1_000_000.0, baseline.rowsPerSecond(), baseline.httpRequestsPerRun(),
+            baseline.errors > 0 ? ", " + baseline.errors + " failed runs" : ""));
+        long baselineRows = baseline.rowCounts.get(0);
+        for (Series series : results) {
+            if (series.total.getCount() == 0) {
+                report.add(String.format("  %d connections: every run failed", series.threads));
+                continue;
+            }
+            double speedup = (double) baselineP50 / series.total.getValueAtPercentile(50);
+            StringBuilder line = new StringBuilder(String.format(
+                "  %d connections: p50=%.3f ms, speedup %.2fx, efficiency %.0f%%, %.1f rows/sec, %.1f HTTP requests/run",
+                series.threads, series.total.getValueAtPercentile(50) / 1_000_000.0, speedup,
+                100.0 * speedup / series.threads, series.rowsPerSecond(), series.httpRequestsPerRun()));
+            if (series.errors > 0) {
+                line.append(", ").append(series.errors).append(" failed runs");
+            }
+            if (!series.rowCounts.isEmpty() && series.rowCounts.get(0) != baselineRows) {
+                line.append(String.format(" (WARNING: %d rows, single cursor returned %d; check the partition predicates)",
+                    series.rowCounts.get(0), baselineRows));
+            }
+            report.add(line.toString());
+        }
+    }
+
+    private static final class Extraction {
+        final long nanos;
+        final long rows;
+        final long slowestPartitionNanos;
+        final int errors;
+
+        Extraction(long nanos, long rows, long slowestPartitionNanos, int errors) {
+            this.nanos = nanos;
+            this.rows = rows;
+            this.slowestPartitionNanos = slowestPartitionNanos;
+            this.errors = errors;
+        }
+    }
+
+    private static final class Series {
+        final String mode;
+        final int threads;
+        final LatencyHistogram total = new LatencyHistogram();
+        final List<Long> rowCounts = new ArrayList<>();
+        long rows;
+        long httpRequests;
+        long errors;
+
+        Series(String mode, int threads) {
+            this.mode = mode;
+            this.threads = threads;
+        }
+
+        double rowsPerSecond() {
+            double seconds = total.getMean() * total.getCount() / 1_000_000_000.0;
+            return seconds > 0 ? rows / seconds : 0.0;
+        }
+
+        double httpRequestsPerRun() {
+            return total.getCount() == 0 ? 0.0 : (double) httpRequests / total.getCount();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package perftest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parser for queries.sql, where every query is preceded by its name between
+ * $$ markers ($$Q1$$). Shared by the harness and the JMH benchmarks.
+ * Directive comments ("-- @name: value", see {@link QuerySpec}) are not part of
+ * the SQL returned by {@link #load}.
+ */
+public final class QueryFile {
+
+    private static final Logger LOGGER = Logger.getLogger(QueryFile.class.getName());
+
+    // Pattern to find $$QueryName$$ markers across multiple lines
+    // (\\s*\\$\\$\\s*([^$]*?)\\s*\\$\\$\\s*) captures the full marker block
+    private static final Pattern MARKER = Pattern.compile("(\\s*\\$\\$\\s*([^$]*?)\\s*\\$\\$\\s*)", Pattern.DOTALL);
+
+    private QueryFile() {
+    }
+
+    /**
+     * Loads the queries from the file in file order, keyed by name.
+     */
+    public static Map<String, String> load(Path path) throws IOException {
+        return parse(new String(Files.readAllBytes(path)));
+    }
+
+    /**
+     * Loads the queries with their directives, in file order, keyed by name.
+     */
+    public static Map<String, QuerySpec> loadSpecs(Path path) throws IOException {
+        return parseSpecs(new String(Files.readAllBytes(path)));
+    }
+
+    public static Map<String, String> parse(String content) {
+        Map<String, String> queries = new LinkedHashMap<>();
+        for (QuerySpec spec : parseSpecs(content).values()) {
+            // A block holding nothing but directives has no SQL to run
+            if (!spec.getTemplate().isEmpty()) {
+                queries.put(spec.getName(), spec.getSql());
+            }
+        }
+        return queries;
+    }
+
+    public static Map<String, QuerySpec> parseSpecs(String content) {
+        Map<String, QuerySpec> queries = new LinkedHashMap<>();
+        Matcher matcher = MARKER.matcher(content);
+
+        int lastEnd = 0;
+        String previousName = null;
+        LOGGER.fine("Starting query parsing...");
+
+        while (matcher.find()) {
+            if (previousName != null) {
+                // Extract the query content between the previous marker and the current one
+                String queryContent = content.substring(lastEnd, matcher.start()).trim();
+                if (!queryContent.isEmpty()) {
+                    queries.put(previousName, QuerySpec.parse(previousName, queryContent));
+                    LOGGER.fine("Parsed Query: " + previousName + " (Length: " + queryContent.length() + ")");
+                }
+            }
+
+            // Group 2 is the actual query name between $$ markers
+            previousName = matcher.group(2).trim();
+            lastEnd = matcher.end();
+        }
+
+        // Handle the final query block (from the last marker to the end of the file)
+        if (previousName != null) {
+            String finalQueryContent = content.substring(lastEnd).trim();
+            if (!finalQueryContent.isEmpty()) {
+                queries.put(previousName, QuerySpec.parse(previousName, finalQueryContent));
+                LOGGER.fine("Parsed Final Query: " + previousName + " (Length: " + finalQueryContent.length() + ")");
+            }
+        }
+        return queries;
+    }
+}
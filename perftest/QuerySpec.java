@@ -0,0 +1,107 @@
+package perftest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One query from queries.sql together with its directives: comment lines of the
+ * form "-- @name: value" that tell a mode how to run the query. Directives are
+ * removed from the SQL; a directive may be repeated. The SQL can hold ${name}
+ * placeholders that a mode fills in, e.g. ${partition} for partitioned extraction.
+ * <pre>
+ * $$Q1$$
+ * -- @partition: AuthoredDate &lt; '2024-01-01'
+ * -- @partition: AuthoredDate &gt;= '2024-01-01'
+ * SELECT Id, Message FROM Commits WHERE ${partition}
+ * </pre>
+ */
+public final class QuerySpec {
+
+    private static final Pattern DIRECTIVE = Pattern.compile("^\\s*--\\s*@([A-Za-z][\\w-]*)\\s*:?\\s*(.*?)\\s*$");
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([A-Za-z][\\w-]*)}");
+
+    // What a placeholder becomes when a query runs outside the mode that fills it in
+    private static final Map<String, String> DEFAULTS = Collections.singletonMap("partition", "1=1");
+
+    private final String name;
+    private final String template;
+    private final Map<String, List<String>> directives;
+
+    private QuerySpec(String name, String template, Map<String, List<String>> directives) {
+        this.name = name;
+        this.template = template;
+        this.directives = directives;
+    }
+
+    /**
+     * Splits a query block into its directives and its SQL.
+     */
+    static QuerySpec parse(String name, String block) {
+        Map<String, List<String>> directives = new LinkedHashMap<>();
+        StringBuilder sql = new StringBuilder();
+        for (String line : block.split("\\r?\\n")) {
+            Matcher matcher = DIRECTIVE.matcher(line);
+            if (matcher.matches()) {
+                directives.computeIfAbsent(matcher.group(1).toLowerCase(Locale.ROOT), k -> new ArrayList<>())
+                    .add(matcher.group(2));
+            } else {
+                sql.append(line).append('\n');
+            }
+        }
+        return new QuerySpec(name, sql.toString().trim(), directives);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The SQL with its placeholders left in.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Every value of a directive in file order; empty when the query does not have it.
+     */
+    public List<String> getDirective(String directive) {
+        List<String> values = directives.get(directive.toLowerCase(Locale.ROOT));
+        return values == null ? Collections.<String>emptyList() : Collections.unmodifiableList(values);
+    }
+
+    public boolean hasPlaceholder(String placeholder) {
+        return template.contains("${" + placeholder + "}");
+    }
+
+    /**
+     * The SQL to run when no mode fills in the placeholders: each known placeholder
+     * gets its neutral default (${partition} becomes 1=1).
+     */
+    public String getSql() {
+        return render(Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * The SQL with the given placeholder values filled in, and defaults for the rest.
+     */
+    public String render(Map<String, String> values) {
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        StringBuffer sql = new StringBuffer();
+        while (matcher.find()) {
+            String value = values.get(matcher.group(1));
+            if (value == null) {
+                value = DEFAULTS.get(matcher.group(1));
+            }
+            matcher.appendReplacement(sql, Matcher.quoteReplacement(value != null ? value : matcher.group()));
+        }
+        matcher.appendTail(sql);
+        return sql.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package perftest;
+
+import java.util.Arrays;
+
+/**
+ * Mann-Whitney U (Wilcoxon rank-sum) test: whether values from one sample tend to
+ * be larger than those from another, without assuming any distribution. Uses the
+ * normal approximation with a correction for ties, which suits latency samples
+ * (many ties once bucketed) but is rough below about eight values per sample.
+ */
+public final class RankSum {
+
+    private RankSum() {
+    }
+
+    /**
+     * The z statistic for b against a: positive when b's values tend to be larger.
+     * Returns 0 when either sample is empty or all values are equal.
+     */
+    public static double z(double[] a, double[] b) {
+        double[] sortedA = a.clone();
+        double[] sortedB = b.clone();
+        Arrays.sort(sortedA);
+        Arrays.sort(sortedB);
+        // Walk both samples in ascending order, one group of equal values at a time
+        long[] countsA = new long[sortedA.length + sortedB.length];
+        long[] countsB = new long[countsA.length];
+        int groups = 0;
+        int i = 0;
+        int j = 0;
+        while (i < sortedA.length || j < sortedB.length) {
+            double value = j >= sortedB.length || i < sortedA.length && sortedA[i] <= sortedB[j] ? sortedA[i] : sortedB[j];
+            while (i < sortedA.length && sortedA[i] == value) {
+                countsA[groups]++;
+                i++;
+            }
+            while (j < sortedB.length && sortedB[j] == value) {
+                countsB[groups]++;
+                j++;
+            }
+            groups++;
+        }
+        return z(countsA, countsB, groups);
+    }
+
+    /**
+     * The z statistic from counts of equal values, given in ascending value order:
+     * countsA[k] and countsB[k] values of each sample share the k-th value.
+     */
+    static double z(long[] countsA, long[] countsB, int groups) {
+        long n1 = 0;
+        long n2 = 0;
+        for (int k = 0; k < groups; k++) {
+            n1 += countsA[k];
+            n2 += countsB[k];
+        }
+        if (n1 == 0 || n2 == 0) {
+            return 0;
+        }
+        double n = n1 + n2;
+        double rankSumB = 0;
+        double ties = 0;
+        double below = 0;
+        for (int k = 0; k < groups; k++) {
+            double t = countsA[k] + countsB[k];
+            if (t == 0) {
+                continue;
+            }
+            // Equal values share the mean of the ranks they occupy
+            rankSumB += countsB[k] * (below + (t + 1) / 2);
+            ties += t * t * t - t;
+            below += t;
+        }
+        double u = rankSumB - n2 * (n2 + 1) / 2.0;
+        double mean = n1 * (double) n2 / 2.0;
+        double variance = n1 * (double) n2 / 12.0 * ((n + 1) - ties / (n * (n - 1)));
+        return variance <= 0 ? 0 : (u - mean) / Math.sqrt(variance);
+    }
+
+    /**
+     * Two-sided p-value of a z statistic.
+     */
+    public static double pValue(double z) {
+        return erfc(Math.abs(z) / Math.sqrt(2));
+    }
+
+    // Numerical Recipes erfc approximation, relative error below 1.2e-7
+    private static double erfc(double x) {
+        double t = 1.0 / (1.0 + 0.5 * x);
+        double y = t * Math.exp(-x * x - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+            + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+            + t * (-0.82215223 + t * 0.17087277)))))))));
+        return Math.min(1.0, y);
+    }
+}
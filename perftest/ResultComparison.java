@@ -0,0 +1,135 @@
+package perftest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares two {@link ResultsFile}s query by query, typically the same queries run
+ * with the current driver (baseline) and a candidate version. The change is taken
+ * at the median run time, and the Mann-Whitney test ({@link RankSum}) over all run
+ * times decides whether it is more than noise. A query is a regression when it is
+ * significantly slower by at least the minimum change.
+ */
+public final class ResultComparison {
+
+    // RankSum's normal approximation is rough below this
+    private static final int MIN_RUNS = 8;
+
+    private final ResultsFile baseline;
+    private final ResultsFile candidate;
+    private final double alpha;
+    private final double minChange;
+    private int regressions;
+
+    /**
+     * @param alpha     significance level, e.g. 0.01
+     * @param minChange smallest change in the median that counts, e.g. 0.05 for 5%
+     */
+    public ResultComparison(ResultsFile baseline, ResultsFile candidate, double alpha, double minChange) {
+        if (alpha <= 0 || alpha >= 1 || minChange < 0) {
+            throw new IllegalArgumentException("--alpha must be between 0 and 1 and --min-change must not be negative.");
+        }
+        this.baseline = baseline;
+        this.candidate = candidate;
+        this.alpha = alpha;
+        this.minChange = minChange;
+    }
+
+    /**
+     * Compares every query that is in both files. Returns the report lines.
+     */
+    public List<String> run() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Baseline:  " + String.join(", ", baseline.getLabels()));
+        lines.add("Candidate: " + String.join(", ", candidate.getLabels()));
+        int compared = 0;
+        regressions = 0;
+        for (String queryName : baseline.getQueryNames()) {
+            if (!candidate.getQueryNames().contains(queryName)) {
+                lines.add("Query " + queryName + ": only in the baseline");
+                continue;
+            }
+            compared++;
+            compare(queryName, lines);
+        }
+        for (String queryName : candidate.getQueryNames()) {
+            if (!baseline.getQueryNames().contains(queryName)) {
+                lines.add("Query " + queryName + ": only in the candidate");
+            }
+        }
+        lines.add(String.format("%d of %d compared queries slower by at least %.0f%% (p < %s)",
+            regressions, compared, 100 * minChange, alpha));
+        return lines;
+    }
+
+    /**
+     * Whether the last {@link #run} found a query that got significantly slower.
+     */
+    public boolean hasRegression() {
+        return regressions > 0;
+    }
+
+    private void compare(String queryName, List<String> lines) {
+        long[] beforeNanos = baseline.column(queryName, ResultsFile.TOTAL_NANOS);
+        long[] afterNanos = candidate.column(queryName, ResultsFile.TOTAL_NANOS);
+        LatencyHistogram before = histogram(beforeNanos);
+        LatencyHistogram after = histogram(afterNanos);
+        // The test runs on the exact times; the histograms only give the percentiles
+        double z = RankSum.z(doubles(beforeNanos), doubles(afterNanos));
+        double p = RankSum.pValue(z);
+        double p50Before = before.getValueAtPercentile(50);
+        double change = p50Before == 0 ? 0 : (after.getValueAtPercentile(50) - p50Before) / p50Before;
+
+        String verdict;
+        if (before.getCount() < MIN_RUNS || after.getCount() < MIN_RUNS) {
+            verdict = "too few runs to test (" + MIN_RUNS + " per side needed)";
+        } else if (p < alpha && change >= minChange) {
+            verdict = "SLOWER";
+            regressions++;
+        } else if (p < alpha && change <= -minChange) {
+            verdict = "faster";
+        } else {
+            verdict = "no significant change";
+        }
+        lines.add(String.format("Query %s: p50 %.3f -> %.3f ms (%+.1f%%), p99 %.3f -> %.3f ms, n=%d/%d, Mann-Whitney z=%.2f, p=%.4f - %s",
+            queryName, p50Before / 1_000_000.0, after.getValueAtPercentile(50) / 1_000_000.0, 100 * change,
+            before.getValueAtPercentile(99) / 1_000_000.0, after.getValueAtPercentile(99) / 1_000_000.0,
+            before.getCount(), after.getCount(), z, p, verdict));
+
+        double rowsBefore = mean(baseline.column(queryName, ResultsFile.ROWS));
+        double rowsAfter = mean(candidate.column(queryName, ResultsFile.ROWS));
+        lines.add(String.format("  rows/run %.0f -> %.0f, HTTP requests/run %.1f -> %.1f, HTTP ms/run %.1f -> %.1f, allocated MB/run %.2f -> %.2f",
+            rowsBefore, rowsAfter,
+            mean(baseline.column(queryName, ResultsFile.HTTP_REQUESTS)), mean(candidate.column(queryName, ResultsFile.HTTP_REQUESTS)),
+            mean(baseline.column(queryName, ResultsFile.HTTP_MILLIS)), mean(candidate.column(queryName, ResultsFile.HTTP_MILLIS)),
+            mean(baseline.column(queryName, ResultsFile.ALLOC_BYTES)) / (1024.0 * 1024.0),
+            mean(candidate.column(queryName, ResultsFile.ALLOC_BYTES)) / (1024.0 * 1024.0)));
+        if (rowsBefore != rowsAfter) {
+            lines.add("  Warning: the row counts differ, so the runs may not have done the same work.");
+        }
+    }
+
+    private static LatencyHistogram histogram(long[] nanos) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value : nanos) {
+            histogram.record(value);
+        }
+        return histogram;
+    }
+
+    private static double[] doubles(long[] values) {
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
+    }
+
+    private static double mean(long[] values) {
+        double sum = 0;
+        for (long v : values) {
+            sum += v;
+        }
+        return values.length == 0 ? 0 : sum / values.length;
+    }
+}
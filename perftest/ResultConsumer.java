@@ -0,0 +1,202 @@
+package perftest;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Locale;
+
+/**
+ * Reads a result set to the end with one of several strategies, so driver decode
+ * cost can be told apart from the cost of paging rows over the network. Column
+ * metadata is read once per result set. After each call the number of rows, the
+ * time the first row became available and an estimate of the bytes materialized
+ * can be read back.
+ * <p>
+ * Not thread-safe; use one instance per thread.
+ */
+public final class ResultConsumer {
+
+    public enum Strategy {
+        /** getObject for every column, as the harness always did. */
+        OBJECT,
+        /** The typed getter matching each column's getColumnType. */
+        TYPED,
+        /** getString for every column. */
+        STRING,
+        /** next() only; no column is read. */
+        CURSOR;
+
+        public static Strategy parse(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown fetch strategy '" + value + "'. Use object, typed, string or cursor.");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Strategy strategy;
+
+    private long rows;
+    private long firstRowNanos;
+    private long bytes;
+
+    public ResultConsumer(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Consumes every row of the result set.
+     *
+     * @param startNanos System.nanoTime() taken when the statement was executed
+     */
+    public void consume(ResultSet rs, long startNanos) throws SQLException {
+        rows = 0;
+        bytes = 0;
+        firstRowNanos = -1;
+
+        int columnCount = 0;
+        int[] types = null;
+        if (strategy != Strategy.CURSOR) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            columnCount = metaData.getColumnCount();
+            if (strategy == Strategy.TYPED) {
+                types = new int[columnCount + 1];
+                for (int c = 1; c <= columnCount; c++) {
+                    types[c] = metaData.getColumnType(c);
+                }
+            }
+        }
+
+        while (rs.next()) {
+            if (rows++ == 0) {
+                firstRowNanos = System.nanoTime() - startNanos;
+            }
+            switch (strategy) {
+                case OBJECT:
+                    for (int c = 1; c <= columnCount; c++) {
+                        bytes += estimateSize(rs.getObject(c));
+                    }
+                    break;
+                case TYPED:
+                    for (int c = 1; c <= columnCount; c++) {
+                        bytes += readTyped(rs, c, types[c]);
+                    }
+                    break;
+                case STRING:
+                    for (int c = 1; c <= columnCount; c++) {
+                        String value = rs.getString(c);
+                        bytes += value == null ? 0 : 2L * value.length();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Nanoseconds from execution to the first row, or -1 when the result was empty.
+     */
+    public long getFirstRowNanos() {
+        return firstRowNanos;
+    }
+
+    /**
+     * Approximate payload bytes of the values read: two bytes per character,
+     * the primitive width for numbers and the length of binary values. Object
+     * headers are not counted. Always 0 for the cursor strategy.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    private static long readTyped(ResultSet rs, int column, int type) throws SQLException {
+        switch (type) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                rs.getBoolean(column);
+                return 1;
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                rs.getInt(column);
+                return 4;
+            case Types.BIGINT:
+                rs.getLong(column);
+                return 8;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                rs.getDouble(column);
+                return 8;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return estimateSize(rs.getBigDecimal(column));
+            case Types.DATE:
+                return rs.getDate(column) == null ? 0 : 8;
+            case Types.TIME:
+            case Types.TIME_WITH_TIMEZONE:
+                return rs.getTime(column) == null ? 0 : 8;
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return rs.getTimestamp(column) == null ? 0 : 12;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                byte[] data = rs.getBytes(column);
+                return data == null ? 0 : data.length;
+            default:
+                String value = rs.getString(column);
+                return value == null ? 0 : 2L * value.length();
+        }
+    }
+
+    private static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return 2L * ((CharSequence) value).length();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof java.sql.Timestamp) {
+            return 12;
+        }
+        if (value instanceof Long || value instanceof Double || value instanceof java.util.Date) {
+            return 8;
+        }
+        if (value instanceof Integer || value instanceof Float) {
+            return 4;
+        }
+        if (value instanceof Short) {
+            return 2;
+        }
+        if (value instanceof Boolean || value instanceof Byte) {
+            return 1;
+        }
+        if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).unscaledValue().bitLength() / 8 + 5;
+        }
+        // Anything else: count its text form
+        return 2L * value.toString().length();
+    }
+}
@@ -0,0 +1,338 @@
+package perftest;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Takes the per-run results of the default mode off the timed loop. The loop only
+ * copies each run's numbers and its polled HTTP log result into a ring buffer
+ * allocated up front ({@link #record}); a background thread parses the HTTP log
+ * timestamps, lays out the {@link HttpTimeline}, and writes the {@link ResultsFile},
+ * the CSV export, the timeline CSV, the log and the console progress line. One
+ * thread records and one drains.
+ * <p>
+ * When the buffer is full the loop waits for the writer. Each wait is counted and
+ * reported, so a buffer that is too small shows up instead of becoming jitter.
+ */
+public final class ResultRecorder implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(ResultRecorder.class.getName());
+
+    private final int capacity;
+    private final long[] slots;
+    private final int[] slotQueries;
+    private final long[] slotStartMillis;
+    private final HttpLogTailer.Result[] slotHttp;
+    // Sequence numbers of the next record to publish and to drain
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong drained = new AtomicLong();
+    private final List<String> queryNames = new CopyOnWriteArrayList<>();
+    private final List<HttpTotals> httpTotals = new CopyOnWriteArrayList<>();
+
+    private final DataOutputStream out;
+    private final PrintWriter csvWriter;
+    private final PrintWriter timelineWriter;
+    private final boolean progress;
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private long stalls;
+    private int namesWritten;
+
+    /**
+     * @param resultsFile binary file to append to; created with its magic number if missing or empty
+     * @param csvWriter   CSV export, header already written
+     * @param timelineWriter HTTP timeline CSV export, header already written
+     * @param label       what was measured, usually the driver name and version
+     * @param capacity    runs the buffer holds
+     * @param progress    print a line per run on the console
+     */
+    public ResultRecorder(Path resultsFile, PrintWriter csvWriter, PrintWriter timelineWriter, String label, int capacity,
+                          boolean progress) throws IOException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The recorder buffer must hold at least one run.");
+        }
+        this.capacity = capacity;
+        this.slots = new long[capacity * ResultsFile.COLUMN_COUNT];
+        this.slotQueries = new int[capacity];
+        this.slotStartMillis = new long[capacity];
+        this.slotHttp = new HttpLogTailer.Result[capacity];
+        this.csvWriter = csvWriter;
+        this.timelineWriter = timelineWriter;
+        this.progress = progress;
+
+        boolean newFile = !Files.exists(resultsFile) || Files.size(resultsFile) == 0;
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(resultsFile,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND), 64 * 1024));
+        if (newFile) {
+            out.writeInt(ResultsFile.MAGIC);
+        }
+        out.writeByte(ResultsFile.HEADER);
+        out.writeLong(System.currentTimeMillis());
+        out.writeUTF(label);
+        out.writeShort(ResultsFile.COLUMN_COUNT);
+        for (String column : ResultsFile.COLUMNS) {
+            out.writeUTF(column);
+        }
+
+        writer = new Thread(this::drain, "result-recorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * The id to record a query's runs under; call outside the timed loop.
+     */
+    public int queryId(String queryName) {
+        int id = queryNames.indexOf(queryName);
+        if (id == -1) {
+            httpTotals.add(new HttpTotals());
+            queryNames.add(queryName);
+            id = queryNames.size() - 1;
+        }
+        return id;
+    }
+
+    /**
+     * Copies one run's values (indexed by the {@link ResultsFile} column constants)
+     * into the buffer, with the run's wall-clock start and its HTTP log lines. The
+     * HTTP columns (start-http, requests, page p50 and max, gaps) are filled in by
+     * the writer. Does no I/O and allocates nothing; waits only if the buffer is full.
+     */
+    public void record(int queryId, long[] row, long runStartMillis, HttpLogTailer.Result http) {
+        long sequence = published.get();
+        if (sequence - drained.get() >= capacity) {
+            stalls++;
+            do {
+                awaitWriter();
+            } while (sequence - drained.get() >= capacity);
+        }
+        int slot = (int) (sequence % capacity);
+        System.arraycopy(row, 0, slots, slot * ResultsFile.COLUMN_COUNT, ResultsFile.COLUMN_COUNT);
+        slotQueries[slot] = queryId;
+        slotStartMillis[slot] = runStartMillis;
+        slotHttp[slot] = http;
+        published.lazySet(sequence + 1);
+    }
+
+    /**
+     * Waits until everything recorded so far is written, so console output that
+     * follows does not interleave with the progress lines.
+     */
+    public void awaitDrained() {
+        while (drained.get() < published.get()) {
+            awaitWriter();
+        }
+    }
+
+    private void awaitWriter() {
+        if (!writer.isAlive()) {
+            throw new IllegalStateException("The result recorder has stopped.", failure);
+        }
+        LockSupport.unpark(writer);
+        LockSupport.parkNanos(100_000);
+    }
+
+    /**
+     * The HTTP requests and timeline totals of a query's runs so far; read after
+     * {@link #awaitDrained}.
+     */
+    public HttpTotals getHttpTotals(int queryId) {
+        return httpTotals.get(queryId);
+    }
+
+    /**
+     * Times the loop had to wait because the buffer was full.
+     */
+    public long getStalls() {
+        return stalls;
+    }
+
+    /**
+     * Drains the buffer, stops the writer and closes the results file (not the CSV).
+     * Throws the first error writing a run, if there was one.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        csvWriter.flush();
+        timelineWriter.flush();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void drain() {
+        long[] row = new long[ResultsFile.COLUMN_COUNT];
+        long next = drained.get();
+        while (true) {
+            long available = published.get();
+            if (next == available) {
+                flush();
+                if (closed && published.get() == next) {
+                    return;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                continue;
+            }
+            for (; next < available; next++) {
+                int slot = (int) (next % capacity);
+                System.arraycopy(slots, slot * ResultsFile.COLUMN_COUNT, row, 0, ResultsFile.COLUMN_COUNT);
+                HttpLogTailer.Result http = slotHttp[slot];
+                slotHttp[slot] = null;
+                try {
+                    addHttp(slotQueries[slot], row, slotStartMillis[slot], http);
+                    write(slotQueries[slot], row);
+                } catch (Throwable e) {
+                    // A run that cannot be written must not stop the writer, or the loop
+                    // would wait for it forever; close() reports the first failure
+                    if (failure == null) {
+                        failure = new IOException("Could not record run " + row[ResultsFile.ITERATION] + " of "
+                            + queryNames.get(slotQueries[slot]) + ": " + e, e);
+                    }
+                }
+                drained.lazySet(next + 1);
+            }
+        }
+    }
+
+    private void addHttp(int queryId, long[] row, long runStartMillis, HttpLogTailer.Result http) {
+        long runEndMillis = runStartMillis + TimeUnit.NANOSECONDS.toMillis(row[ResultsFile.TOTAL_NANOS]);
+        HttpTimeline timeline = new HttpTimeline(http.getRequests(), runStartMillis, runEndMillis);
+        timeline.writeCsv(timelineWriter, queryNames.get(queryId), (int) row[ResultsFile.ITERATION]);
+        httpTotals.get(queryId).add(timeline, http);
+
+        // Pre-processing: from the start of the run to the driver's first log line
+        long httpStartMillis = http.getTimestamp() == null ? -1 : HttpLogTailer.parseMillis(http.getTimestamp());
+        row[ResultsFile.START_HTTP_MILLIS] = httpStartMillis == -1 ? -1 : httpStartMillis - runStartMillis;
+        row[ResultsFile.HTTP_REQUESTS] = timeline.getPageCount();
+        row[ResultsFile.PAGE_P50_MILLIS] = timeline.getPagePercentile(50);
+        row[ResultsFile.PAGE_MAX_MILLIS] = timeline.getPagePercentile(100);
+        row[ResultsFile.HTTP_GAP_MILLIS] = timeline.getGapMillis();
+    }
+
+    private void write(int queryId, long[] row) {
+        String queryName = queryNames.get(queryId);
+        if (failure == null) {
+            try {
+                while (namesWritten <= queryId) {
+                    out.writeByte(ResultsFile.QUERY);
+                    out.writeShort(namesWritten);
+                    out.writeUTF(queryNames.get(namesWritten));
+                    namesWritten++;
+                }
+                out.writeByte(ResultsFile.RECORD);
+                out.writeShort(queryId);
+                for (long value : row) {
+                    ResultsFile.writeVarLong(out, value);
+                }
+            } catch (IOException e) {
+                // Keep draining so the loop never blocks; close() reports the error
+                failure = e;
+            }
+        }
+        ResultsFile.writeCsvLine(csvWriter, queryName, row);
+        long millis = TimeUnit.NANOSECONDS.toMillis(row[ResultsFile.TOTAL_NANOS]);
+        if (progress) {
+            System.out.printf("  Run %d: %d ms, %d rows\n", row[ResultsFile.ITERATION], millis, row[ResultsFile.ROWS]);
+        }
+        LOGGER.fine("Run " + row[ResultsFile.ITERATION] + " of " + queryName + " duration: " + millis + " ms, "
+            + row[ResultsFile.ROWS] + " rows");
+    }
+
+    private void flush() {
+        if (failure == null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        csvWriter.flush();
+        timelineWriter.flush();
+    }
+
+    /**
+     * One query's HTTP requests as laid out by the {@link HttpTimeline}s of its runs.
+     */
+    public static final class HttpTotals {
+        // Per-request durations, in ms
+        private final LatencyHistogram pageTimes = new LatencyHistogram();
+        private long timelineRuns;
+        private long leadMillis;
+        private long httpMillis;
+        private long gapMillis;
+        private long tailMillis;
+
+        HttpTotals() {
+        }
+
+        void add(HttpTimeline timeline, HttpLogTailer.Result http) {
+            for (HttpLogTailer.Request request : http.getRequests()) {
+                pageTimes.record(TimeUnit.MILLISECONDS.toNanos(request.getDurationMillis()));
+            }
+            if (timeline.getLeadMillis() >= 0) {
+                timelineRuns++;
+                leadMillis += timeline.getLeadMillis();
+                httpMillis += timeline.getHttpMillis();
+                gapMillis += timeline.getGapMillis();
+                tailMillis += timeline.getTailMillis();
+            }
+        }
+
+        /**
+         * Durations of the single requests, recorded as nanoseconds.
+         */
+        public LatencyHistogram getPageTimes() {
+            return pageTimes;
+        }
+
+        /**
+         * Runs whose requests could be placed on the timeline.
+         */
+        public long getTimelineRuns() {
+            return timelineRuns;
+        }
+
+        public long getLeadMillis() {
+            return leadMillis;
+        }
+
+        public long getHttpMillis() {
+            return httpMillis;
+        }
+
+        public long getGapMillis() {
+            return gapMillis;
+        }
+
+        public long getTailMillis() {
+            return tailMillis;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package perftest;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The binary results file of the default mode: one record of {@link #COLUMN_COUNT}
+ * numbers per measured run, with times kept in nanoseconds. It is written by
+ * {@link ResultRecorder} and read back by the compare command; the CSV is an export
+ * of the same records in milliseconds.
+ * <p>
+ * Layout: a 4-byte magic number, then entries that each start with a tag byte.
+ * 'H' starts a run (start time, a label naming the driver, the column names),
+ * 'Q' names a query id and 'R' is one record: the query id and the values as
+ * zigzag variable-length longs, so most values take one to three bytes. Runs
+ * forked into separate JVMs append their own 'H' entry to the same file.
+ */
+public final class ResultsFile {
+
+    static final int MAGIC = 0x50545231; // "PTR1"
+    static final byte HEADER = 'H';
+    static final byte QUERY = 'Q';
+    static final byte RECORD = 'R';
+
+    public static final int ITERATION = 0;
+    public static final int START_RES_NANOS = 1;
+    public static final int RES_READ_NANOS = 2;
+    public static final int TOTAL_NANOS = 3;
+    public static final int HTTP_MILLIS = 4;
+    public static final int START_HTTP_MILLIS = 5;
+    public static final int QUEUE_DELAY_NANOS = 6;
+    public static final int ROWS = 7;
+    public static final int FIRST_ROW_NANOS = 8;
+    public static final int EST_BYTES = 9;
+    public static final int ALLOC_BYTES = 10;
+    public static final int GC_COUNT = 11;
+    public static final int GC_MILLIS = 12;
+    public static final int PEAK_HEAP_BYTES = 13;
+    public static final int HTTP_REQUESTS = 14;
+    public static final int PAGE_P50_MILLIS = 15;
+    public static final int PAGE_MAX_MILLIS = 16;
+    public static final int HTTP_GAP_MILLIS = 17;
+    public static final int COLUMN_COUNT = 18;
+
+    static final String[] COLUMNS = {
+        "iteration", "start-res-ns", "res-read-ns", "total-ns", "http-ms", "start-http-ms", "queue-delay-ns",
+        "rows", "first-row-ns", "est-bytes", "alloc-bytes", "gc-count", "gc-ms", "peak-heap-bytes",
+        "http-requests", "page-p50-ms", "page-max-ms", "http-gaps-ms"
+    };
+
+    public static final String CSV_HEADER = "Query Name,Iteration,start-res,res-read,total,HTTPLogTime,start-HTTPStart,queue-delay,rows,first-row,rows-per-sec,est-bytes,alloc-bytes,gc-count,gc-ms,peak-heap-bytes,http-requests,page-p50,page-max,http-gaps";
+
+    private final List<String> labels = new ArrayList<>();
+    private final Map<String, List<long[]>> records = new LinkedHashMap<>();
+
+    private ResultsFile() {
+    }
+
+    /**
+     * The labels of the runs in the file, usually one; forked runs repeat the same label.
+     */
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public List<String> getQueryNames() {
+        return new ArrayList<>(records.keySet());
+    }
+
+    /**
+     * The values of one column over the query's runs, in file order; empty for an unknown query.
+     */
+    public long[] column(String queryName, int column) {
+        List<long[]> rows = records.get(queryName);
+        if (rows == null) {
+            return new long[0];
+        }
+        long[] values = new long[rows.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rows.get(i)[column];
+        }
+        return values;
+    }
+
+    public static ResultsFile read(Path path) throws IOException {
+        ResultsFile file = new ResultsFile();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a results file.");
+            }
+            // Columns of the current run mapped to ours, so files with other columns still load
+            int[] mapping = null;
+            Map<Integer, String> names = new LinkedHashMap<>();
+            int tag;
+            while ((tag = in.read()) != -1) {
+                if (tag == HEADER) {
+                    in.readLong();
+                    String label = in.readUTF();
+                    if (!file.labels.contains(label)) {
+                        file.labels.add(label);
+                    }
+                    mapping = new int[in.readShort()];
+                    for (int i = 0; i < mapping.length; i++) {
+                        mapping[i] = Arrays.asList(COLUMNS).indexOf(in.readUTF());
+                    }
+                    names.clear();
+                } else if (tag == QUERY) {
+                    int id = in.readShort();
+                    names.put(id, in.readUTF());
+                } else if (tag == RECORD && mapping != null) {
+                    String name = names.get((int) in.readShort());
+                    long[] row = new long[COLUMN_COUNT];
+                    Arrays.fill(row, -1);
+                    for (int target : mapping) {
+                        long value = readVarLong(in);
+                        if (target >= 0) {
+                            row[target] = value;
+                        }
+                    }
+                    file.records.computeIfAbsent(name, k -> new ArrayList<>()).add(row);
+                } else {
+                    throw new IOException(path + " is damaged: unexpected entry '" + (char) tag + "'.");
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException(path + " ends in the middle of an entry.", e);
+        }
+        return file;
+    }
+
+    /**
+     * Writes one record as a line of the CSV export, times in milliseconds.
+     */
+    public static void writeCsvLine(PrintWriter csvWriter, String queryName, long[] row) {
+        csvWriter.printf("%s,%d,%d,%d,%d,%d,%d,%d,%d,%d,%.1f,%d,%d,%d,%d,%d,%d,%d,%d,%d\n",
+            queryName,
+            row[ITERATION],
+            TimeUnit.NANOSECONDS.toMillis(row[START_RES_NANOS]),
+            TimeUnit.NANOSECONDS.toMillis(row[RES_READ_NANOS]),
+            TimeUnit.NANOSECONDS.toMillis(row[TOTAL_NANOS]),
+            row[HTTP_MILLIS],
+            row[START_HTTP_MILLIS],
+            TimeUnit.NANOSECONDS.toMillis(row[QUEUE_DELAY_NANOS]),
+            row[ROWS],
+            row[FIRST_ROW_NANOS] < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(row[FIRST_ROW_NANOS]),
+            row[ROWS] * 1_000_000_000.0 / Math.max(1, row[TOTAL_NANOS]),
+            row[EST_BYTES],
+            row[ALLOC_BYTES],
+            row[GC_COUNT],
+            row[GC_MILLIS],
+            row[PEAK_HEAP_BYTES],
+            row[HTTP_REQUESTS],
+            row[PAGE_P50_MILLIS],
+            row[PAGE_MAX_MILLIS],
+            row[HTTP_GAP_MILLIS]);
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            out.write((int) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        out.write((int) zigzag);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Malformed variable-length number.");
+    }
+}
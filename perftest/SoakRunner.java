@@ -0,0 +1,307 @@
+package perftest;
+
+import java.io.PrintWriter;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Time-boxed soak run: the queries run back to back, in turn, on one connection
+ * until the duration is up. Statistics are kept per window of fixed length and
+ * reported as each window closes (runs/sec, latency percentiles, heap in use and
+ * the lowest heap use seen after any run in the window, which tracks the live set
+ * after collections), so slow degradation shows while the run is going.
+ * <p>
+ * At the end the first quarter of the windows is compared with the last quarter
+ * using the Mann-Whitney test ({@link RankSum}): each query's run latencies (from
+ * its merged window histograms) and per-window throughput, and the per-window
+ * lowest heap. A change
+ * is flagged as drift when it is significant (p &lt; 0.01) and at least 5%; over
+ * millions of runs even negligible changes are significant.
+ * <p>
+ * Memory stays bounded however long the run: per query one histogram for the
+ * current window and one each for the early and late windows, and a handful of
+ * numbers per window.
+ */
+public final class SoakRunner {
+
+    private static final Logger LOGGER = Logger.getLogger(SoakRunner.class.getName());
+
+    private static final double SIGNIFICANCE = 0.01;
+    private static final double MIN_CHANGE = 0.05;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Map<String, String> queries;
+    private final Map<String, BindValues> bindValues;
+    private final long durationMillis;
+    private final long windowMillis;
+    private final ResultConsumer consumer;
+    private int warmup;
+    private LiveMetrics metrics;
+
+    public SoakRunner(String url, String user, String password, Map<String, String> queries,
+                      Map<String, BindValues> bindValues, long durationMillis, long windowMillis, ResultConsumer consumer) {
+        if (windowMillis > durationMillis) {
+            throw new IllegalArgumentException("--window must not be longer than --duration.");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.queries = queries;
+        this.bindValues = bindValues;
+        this.durationMillis = durationMillis;
+        this.windowMillis = windowMillis;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Unmeasured runs of each query before the clock starts.
+     */
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * Publishes the measured runs while the soak is going.
+     */
+    public void setLiveMetrics(LiveMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs until the duration is up, writing one CSV line per query and window. Returns the report lines.
+     */
+    public List<String> run(PrintWriter csvWriter) throws SQLException {
+        csvWriter.println("Window,Query,start-s,end-s,runs,errors,runs-per-sec,p50-ms,p90-ms,p99-ms,max-ms,rows-per-sec,http-requests,gc-count,gc-ms,heap-used-mb,heap-min-mb");
+        int windowCount = (int) Math.max(1, (durationMillis + windowMillis - 1) / windowMillis);
+        int quarter = Math.max(1, windowCount / 4);
+
+        List<String> names = new ArrayList<>(queries.keySet());
+        int queryCount = names.size();
+        // Queries differ too much in cost to share a histogram, so everything is kept per query
+        LatencyHistogram[] overall = histograms(queryCount);
+        LatencyHistogram[] early = histograms(queryCount);
+        LatencyHistogram[] late = histograms(queryCount);
+        LatencyHistogram[] window = histograms(queryCount);
+        long[] rows = new long[queryCount];
+        long[] errors = new long[queryCount];
+        long[] httpRequests = new long[queryCount];
+        long[] totalErrors = new long[queryCount];
+        // Per-window figures for the trend tests; bounded by the number of windows
+        double[][] throughput = new double[queryCount][windowCount];
+        double[] heapMin = new double[windowCount];
+        int closed = 0;
+
+        MemoryProbe memory = new MemoryProbe();
+        try (TrackedConnection connection = TrackedConnection.open(url, user, password, 1)) {
+            for (int run = 0; run < warmup * queryCount; run++) {
+                runOnce(connection, names.get(run % queryCount));
+            }
+            connection.pollHttpLog();
+            System.out.printf("Soak run for %s in windows of %s (%d windows)\n",
+                formatMillis(durationMillis), formatMillis(windowMillis), windowCount);
+
+            long startNanos = System.nanoTime();
+            long endNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+            long windowStartNanos = startNanos;
+            long windowEndNanos = Math.min(endNanos, startNanos + TimeUnit.MILLISECONDS.toNanos(windowMillis));
+            long lowestHeap = Long.MAX_VALUE;
+            memory.start();
+            for (long run = 0; ; run++) {
+                long runStart = System.nanoTime();
+                if (runStart >= windowEndNanos) {
+                    memory.stop();
+                    long elapsed = runStart - windowStartNanos;
+                    double seconds = elapsed / 1_000_000_000.0;
+                    long heapUsed = memory.getHeapUsedBytes();
+                    long heapLow = Math.min(lowestHeap, heapUsed);
+                    heapMin[closed] = heapLow;
+                    long windowRuns = 0;
+                    long windowErrors = 0;
+                    StringBuilder latencies = new StringBuilder();
+                    for (int q = 0; q < queryCount; q++) {
+                        LatencyHistogram latency = window[q];
+                        throughput[q][closed] = latency.getCount() / seconds;
+                        csvWriter.printf("%d,%s,%.1f,%.1f,%d,%d,%.2f,%.3f,%.3f,%.3f,%.3f,%.1f,%d,%d,%d,%.1f,%.1f\n",
+                            closed + 1, names.get(q), (windowStartNanos - startNanos) / 1_000_000_000.0, (runStart - startNanos) / 1_000_000_000.0,
+                            latency.getCount(), errors[q], throughput[q][closed],
+                            latency.getValueAtPercentile(50) / 1_000_000.0, latency.getValueAtPercentile(90) / 1_000_000.0,
+                            latency.getValueAtPercentile(99) / 1_000_000.0, latency.getMax() / 1_000_000.0,
+                            rows[q] / seconds, httpRequests[q], memory.getGcCount(), memory.getGcMillis(),
+                            heapUsed / (1024.0 * 1024.0), heapLow / (1024.0 * 1024.0));
+                        latencies.append(String.format(", %s p50=%.3f ms p99=%.3f ms", names.get(q),
+                            latency.getValueAtPercentile(50) / 1_000_000.0, latency.getValueAtPercentile(99) / 1_000_000.0));
+                        windowRuns += latency.getCount();
+                        windowErrors += errors[q];
+                    }
+                    csvWriter.flush();
+                    String line = String.format("  [%s] %d runs, %.2f runs/sec%s, heap %.1f MB (lowest %.1f MB)%s",
+                        formatMillis(TimeUnit.NANOSECONDS.toMillis(runStart - startNanos)), windowRuns, windowRuns / seconds,
+                        latencies, heapUsed / (1024.0 * 1024.0), heapLow / (1024.0 * 1024.0),
+                        windowErrors > 0 ? ", " + windowErrors + " errors" : "");
+                    System.out.println(line);
+                    LOGGER.info("Soak window " + (closed + 1) + ":" + line.substring(line.indexOf(']') + 1));
+
+                    for (int q = 0; q < queryCount; q++) {
+                        if (closed < quarter) {
+                            early[q].merge(window[q]);
+                        }
+                        if (closed >= windowCount - quarter) {
+                            late[q].merge(window[q]);
+                        }
+                        overall[q].merge(window[q]);
+                        totalErrors[q] += errors[q];
+                    }
+                    closed++;
+                    if (runStart >= endNanos || closed == windowCount) {
+                        break;
+                    }
+                    for (int q = 0; q < queryCount; q++) {
+                        window[q].reset();
+                        rows[q] = 0;
+                        errors[q] = 0;
+                        httpRequests[q] = 0;
+                    }
+                    lowestHeap = Long.MAX_VALUE;
+                    windowStartNanos = runStart;
+                    windowEndNanos = Math.min(endNanos, windowEndNanos + TimeUnit.MILLISECONDS.toNanos(windowMillis));
+                    memory.start();
+                }
+
+                int q = (int) (run % queryCount);
+                String name = names.get(q);
+                LiveMetrics.Query live = metrics != null ? metrics.query(name) : null;
+                if (live != null) {
+                    live.started();
+                }
+                long runRows = runOnce(connection, name);
+                long runNanos = System.nanoTime() - runStart;
+                HttpLogTailer.Result http = connection.pollHttpLog();
+                httpRequests[q] += http.getRequestCount();
+                lowestHeap = Math.min(lowestHeap, memory.getHeapUsedBytes());
+                if (runRows < 0) {
+                    errors[q]++;
+                    if (live != null) {
+                        live.failed();
+                    }
+                } else {
+                    window[q].record(runNanos);
+                    rows[q] += runRows;
+                    if (live != null) {
+                        live.completed(runNanos, runRows, http);
+                    }
+                }
+            }
+        }
+        return report(names, overall, early, late, throughput, heapMin, closed, quarter, totalErrors);
+    }
+
+    private static LatencyHistogram[] histograms(int count) {
+        LatencyHistogram[] histograms = new LatencyHistogram[count];
+        for (int i = 0; i < count; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    /**
+     * Runs one query to its last row; returns the rows read, or -1 if it failed.
+     */
+    private long runOnce(TrackedConnection connection, String name) {
+        try {
+            PreparedStatement stmt = connection.prepare(queries.get(name));
+            BindValues binds = bindValues.get(name);
+            if (binds != null) {
+                binds.bind(stmt, binds.next());
+            }
+            long startNanos = System.nanoTime();
+            try (ResultSet rs = stmt.executeQuery()) {
+                consumer.consume(rs, startNanos);
+            }
+            return consumer.getRows();
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Soak run of " + name + " failed", e);
+            return -1;
+        }
+    }
+
+    private List<String> report(List<String> names, LatencyHistogram[] overall, LatencyHistogram[] early, LatencyHistogram[] late,
+                                double[][] throughput, double[] heapMin, int closed, int quarter, long[] errors) {
+        List<String> report = new ArrayList<>();
+        boolean enoughRuns = closed >= 2;
+        for (int q = 0; q < names.size(); q++) {
+            report.add(String.format("Query %s, all runs: %s%s", names.get(q), overall[q].summary(),
+                errors[q] > 0 ? ", " + errors[q] + " failed runs" : ""));
+            enoughRuns &= early[q].getCount() > 0 && late[q].getCount() > 0;
+        }
+        if (!enoughRuns) {
+            report.add("Too few windows to look for drift; use a longer --duration or a shorter --window.");
+            return report;
+        }
+        int earlyWindows = Math.min(quarter, closed / 2);
+        int lateStart = Math.max(earlyWindows, closed - quarter);
+        report.add(String.format("Drift, first %d window(s) against last %d:", earlyWindows, closed - lateStart));
+
+        for (int q = 0; q < names.size(); q++) {
+            double z = early[q].rankSumZ(late[q]);
+            double earlyP50 = early[q].getValueAtPercentile(50);
+            double lateP50 = late[q].getValueAtPercentile(50);
+            report.add(verdict(names.get(q) + " latency", String.format("p50 %.3f -> %.3f ms, p99 %.3f -> %.3f ms",
+                    earlyP50 / 1_000_000.0, lateP50 / 1_000_000.0,
+                    early[q].getValueAtPercentile(99) / 1_000_000.0, late[q].getValueAtPercentile(99) / 1_000_000.0),
+                z, change(earlyP50, lateP50), true));
+
+            double[] earlyThroughput = slice(throughput[q], 0, earlyWindows);
+            double[] lateThroughput = slice(throughput[q], lateStart, closed);
+            report.add(verdict(names.get(q) + " throughput", String.format("%.2f -> %.2f runs/sec", mean(earlyThroughput), mean(lateThroughput)),
+                RankSum.z(earlyThroughput, lateThroughput), change(mean(earlyThroughput), mean(lateThroughput)), false));
+        }
+
+        double[] earlyHeap = slice(heapMin, 0, earlyWindows);
+        double[] lateHeap = slice(heapMin, lateStart, closed);
+        report.add(verdict("lowest heap", String.format("%.1f -> %.1f MB", mean(earlyHeap) / (1024.0 * 1024.0),
+                mean(lateHeap) / (1024.0 * 1024.0)),
+            RankSum.z(earlyHeap, lateHeap), change(mean(earlyHeap), mean(lateHeap)), true));
+        return report;
+    }
+
+    private static String verdict(String what, String values, double z, double change, boolean increaseIsWorse) {
+        double p = RankSum.pValue(z);
+        String line = String.format("  %s: %s (%+.1f%%), Mann-Whitney z=%.2f, p=%.4f", what, values, 100 * change, z, p);
+        if (p < SIGNIFICANCE && Math.abs(change) >= MIN_CHANGE) {
+            line += (change > 0) == increaseIsWorse ? " - DRIFT (worse)" : " - DRIFT (better)";
+        }
+        return line;
+    }
+
+    private static double change(double before, double after) {
+        return before == 0 ? 0 : (after - before) / before;
+    }
+
+    private static double[] slice(double[] values, int from, int to) {
+        double[] slice = new double[Math.max(0, to - from)];
+        System.arraycopy(values, from, slice, 0, slice.length);
+        return slice;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) {
+            sum += v;
+        }
+        return values.length == 0 ? 0 : sum / values.length;
+    }
+
+    private static String formatMillis(long millis) {
+        long seconds = millis / 1000;
+        return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
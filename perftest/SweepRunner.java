@@ -0,0 +1,359 @@
+package perftest;
+
+import java.io.PrintWriter;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the selected queries under every combination of fetch size, max rows and
+ * connection-string properties, then ranks the combinations per query by median
+ * and p99 total time and by the HTTP time the driver logged.
+ */
+public final class SweepRunner {
+
+    private static final Logger LOGGER = Logger.getLogger(SweepRunner.class.getName());
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Map<String, String> queries;
+    private final int iterations;
+    private final ResultConsumer consumer;
+    private final List<Integer> fetchSizes;
+    private final List<Integer> maxRows;
+    private final Map<String, List<String>> urlProperties;
+    private int warmup;
+
+    /**
+     * @param fetchSizes    values for Statement.setFetchSize; a null entry leaves the driver default
+     * @param maxRows       values for Statement.setMaxRows; a null entry leaves the driver default
+     * @param urlProperties connection-string property name to the values to try
+     */
+    public SweepRunner(String url, String user, String password, Map<String, String> queries, int iterations,
+                       ResultConsumer.Strategy strategy, List<Integer> fetchSizes, List<Integer> maxRows,
+                       Map<String, List<String>> urlProperties) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.queries = queries;
+        this.iterations = iterations;
+        this.consumer = new ResultConsumer(strategy);
+        this.fetchSizes = fetchSizes.isEmpty() ? Collections.<Integer>singletonList(null) : fetchSizes;
+        this.maxRows = maxRows.isEmpty() ? Collections.<Integer>singletonList(null) : maxRows;
+        this.urlProperties = urlProperties;
+    }
+
+    /**
+     * Unmeasured rounds over all combinations before the measured ones; one is run
+     * even without warmup, so no combination pays for the first execution.
+     */
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * Expands a sweep value list. Accepts comma separated values and integer ranges
+     * written start..end or start..end:step, e.g. "0,100..1000:300" gives 0,100,400,700,1000.
+     */
+    public static List<String> parseValues(String spec) {
+        List<String> values = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            int dots = part.indexOf("..");
+            if (dots == -1) {
+                values.add(part);
+                continue;
+            }
+            try {
+                String rest = part.substring(dots + 2);
+                int colon = rest.indexOf(':');
+                long start = Long.parseLong(part.substring(0, dots).trim());
+                long end = Long.parseLong((colon == -1 ? rest : rest.substring(0, colon)).trim());
+                long step = colon == -1 ? 1 : Long.parseLong(rest.substring(colon + 1).trim());
+                if (step <= 0 || end < start) {
+                    throw new IllegalArgumentException("Invalid range '" + part + "'.");
+                }
+                for (long v = start; v <= end; v += step) {
+                    values.add(String.valueOf(v));
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid range '" + part + "'. Use start..end or start..end:step.");
+            }
+        }
+        return values;
+    }
+
+    public static List<Integer> parseIntValues(String spec) {
+        List<Integer> values = new ArrayList<>();
+        for (String value : parseValues(spec)) {
+            try {
+                values.add(Integer.valueOf(value));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected an integer but was '" + value + "'.");
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Runs every combination and writes one CSV line per query and combination.
+     * Returns the ranking report.
+     */
+    public List<String> run(PrintWriter csvWriter) {
+        List<String> propertyNames = new ArrayList<>(urlProperties.keySet());
+        StringBuilder header = new StringBuilder("Query Name,Combination,fetchSize,maxRows");
+        for (String name : propertyNames) {
+            header.append(',').append(name);
+        }
+        header.append(",runs,errors,p50,p90,p99,max,http-p50,http-p99,http-requests-per-run,rank-median,rank-p99,rank-http");
+        csvWriter.println(header);
+
+        List<Map<String, String>> propertyCombinations = combinations(propertyNames);
+        int total = propertyCombinations.size() * fetchSizes.size() * maxRows.size();
+        List<String> report = new ArrayList<>();
+        // One connection per set of connection-string properties, shared by the statement settings.
+        // All are open at once so the combinations can take turns.
+        List<TrackedConnection> connections = new ArrayList<>();
+        try {
+            int combination = 0;
+            for (Map<String, String> properties : propertyCombinations) {
+                String sweepUrl = url;
+                for (Map.Entry<String, String> property : properties.entrySet()) {
+                    sweepUrl = JdbcUrls.withProperty(sweepUrl, property.getKey(), property.getValue());
+                }
+                TrackedConnection connection;
+                try {
+                    connection = TrackedConnection.open(sweepUrl, user, password, connections.size() + 1);
+                } catch (SQLException e) {
+                    LOGGER.log(Level.WARNING, "Could not connect with sweep properties " + properties, e);
+                    System.err.println("  Could not connect with " + properties + ": " + e.getMessage());
+                    connection = null;
+                }
+                connections.add(connection);
+                for (Integer fetchSize : fetchSizes) {
+                    for (Integer maxRowsValue : maxRows) {
+                        combination++;
+                        String describe = new Result(combination, fetchSize, maxRowsValue, properties).describe();
+                        System.out.printf("  Combination %d/%d: %s%n", combination, total, describe);
+                        LOGGER.info("Sweep combination " + combination + ": " + describe);
+                    }
+                }
+            }
+
+            for (Map.Entry<String, String> query : queries.entrySet()) {
+                System.out.println("--- Sweep for Query: " + query.getKey() + " ---");
+                List<Result> results = new ArrayList<>();
+                List<TrackedConnection> resultConnections = new ArrayList<>();
+                combination = 0;
+                for (int p = 0; p < propertyCombinations.size(); p++) {
+                    for (Integer fetchSize : fetchSizes) {
+                        for (Integer maxRowsValue : maxRows) {
+                            results.add(new Result(++combination, fetchSize, maxRowsValue, propertyCombinations.get(p)));
+                            resultConnections.add(connections.get(p));
+                        }
+                    }
+                }
+                measure(query.getKey(), query.getValue(), results, resultConnections);
+                rankAndReport(query.getKey(), results, propertyNames, csvWriter, report);
+            }
+        } finally {
+            for (TrackedConnection connection : connections) {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Runs the query under every combination, one execution per combination in each
+     * round. The combination that goes first rotates from round to round, so no
+     * setting is always measured right after the same neighbour or first on a cold
+     * connection.
+     */
+    private void measure(String queryName, String sql, List<Result> results, List<TrackedConnection> connections) {
+        int count = results.size();
+        PreparedStatement[] statements = new PreparedStatement[count];
+        for (int c = 0; c < count; c++) {
+            Result result = results.get(c);
+            TrackedConnection connection = connections.get(c);
+            if (connection == null) {
+                result.errors = iterations;
+                continue;
+            }
+            try {
+                // Statements are cached per connection and SQL; the settings are applied before each execution
+                statements[c] = connection.prepare(sql);
+            } catch (SQLException e) {
+                result.errors = iterations;
+                LOGGER.log(Level.WARNING, "Could not prepare query " + queryName + " for sweep combination " + result.describe(), e);
+                System.err.println("  Could not prepare " + queryName + " with " + result.describe() + ": " + e.getMessage());
+            }
+            connection.pollHttpLog();
+        }
+
+        // Every combination gets at least one unmeasured execution, even without --warmup
+        int unmeasured = Math.max(warmup, 1);
+        for (int round = 1; round <= unmeasured + iterations; round++) {
+            boolean measured = round > unmeasured;
+            for (int position = 0; position < count; position++) {
+                int c = (round + position) % count;
+                if (statements[c] != null) {
+                    execute(queryName, statements[c], connections.get(c), results.get(c), measured, round);
+                }
+            }
+        }
+    }
+
+    private void execute(String queryName, PreparedStatement stmt, TrackedConnection connection, Result result,
+                         boolean measured, int round) {
+        long startNanos;
+        try {
+            stmt.setFetchSize(result.fetchSize == null ? 0 : result.fetchSize);
+            stmt.setMaxRows(result.maxRows == null ? 0 : result.maxRows);
+            startNanos = System.nanoTime();
+            try (ResultSet rs = stmt.executeQuery()) {
+                consumer.consume(rs, startNanos);
+            }
+        } catch (SQLException e) {
+            if (measured) {
+                result.errors++;
+            }
+            connection.pollHttpLog();
+            LOGGER.log(Level.WARNING, "SQL Execution Error in sweep round " + round + " for query " + queryName
+                + " with " + result.describe(), e);
+            return;
+        }
+        long durationNanos = System.nanoTime() - startNanos;
+        HttpLogTailer.Result http = connection.pollHttpLog();
+        if (!measured) {
+            return;
+        }
+        result.total.record(durationNanos);
+        result.http.record(http.getSumOfDurations() * 1_000_000L);
+        result.httpRequests += http.getRequestCount();
+    }
+
+    private void rankAndReport(String queryName, List<Result> results, List<String> propertyNames,
+                               PrintWriter csvWriter, List<String> report) {
+        List<Result> measured = new ArrayList<>();
+        for (Result result : results) {
+            if (result.total.getCount() > 0) {
+                measured.add(result);
+            }
+        }
+        assignRanks(measured, Comparator.comparingLong(r -> r.total.getValueAtPercentile(50)), 0);
+        assignRanks(measured, Comparator.comparingLong(r -> r.total.getValueAtPercentile(99)), 1);
+        // Ties in HTTP time (e.g. no Logfile configured) fall back to the median order
+        assignRanks(measured, Comparator.<Result>comparingLong(r -> r.http.getValueAtPercentile(50))
+            .thenComparingInt(r -> r.ranks[0]), 2);
+        measured.sort(Comparator.comparingInt(r -> r.ranks[0]));
+
+        for (Result result : results) {
+            StringBuilder line = new StringBuilder();
+            line.append(queryName).append(',').append(result.combination)
+                .append(',').append(result.fetchSize == null ? "" : result.fetchSize)
+                .append(',').append(result.maxRows == null ? "" : result.maxRows);
+            for (String name : propertyNames) {
+                line.append(',').append(result.properties.get(name));
+            }
+            long runs = result.total.getCount();
+            line.append(',').append(runs).append(',').append(result.errors)
+                .append(',').append(millis(result.total.getValueAtPercentile(50)))
+                .append(',').append(millis(result.total.getValueAtPercentile(90)))
+                .append(',').append(millis(result.total.getValueAtPercentile(99)))
+                .append(',').append(millis(result.total.getMax()))
+                .append(',').append(millis(result.http.getValueAtPercentile(50)))
+                .append(',').append(millis(result.http.getValueAtPercentile(99)))
+                .append(',').append(runs == 0 ? "" : String.format("%.1f", result.httpRequests / (double) runs));
+            for (int rank : result.ranks) {
+                line.append(',').append(rank == 0 ? "" : String.valueOf(rank));
+            }
+            csvWriter.println(line);
+        }
+
+        report.add("Query " + queryName + " (ranked by median total time):");
+        for (Result result : measured) {
+            report.add(String.format("  #%d %s: p50=%s ms, p99=%s ms (rank %d), HTTP p50=%s ms (rank %d), %.1f HTTP requests/run%s",
+                result.ranks[0], result.describe(),
+                millis(result.total.getValueAtPercentile(50)), millis(result.total.getValueAtPercentile(99)), result.ranks[1],
+                millis(result.http.getValueAtPercentile(50)), result.ranks[2],
+                result.httpRequests / (double) result.total.getCount(),
+                result.errors > 0 ? ", " + result.errors + " errors" : ""));
+        }
+        if (measured.isEmpty()) {
+            report.add("  No combination completed a run.");
+        }
+    }
+
+    private static void assignRanks(List<Result> results, Comparator<Result> order, int slot) {
+        List<Result> sorted = new ArrayList<>(results);
+        sorted.sort(order);
+        for (int i = 0; i < sorted.size(); i++) {
+            sorted.get(i).ranks[slot] = i + 1;
+        }
+    }
+
+    private List<Map<String, String>> combinations(List<String> propertyNames) {
+        List<Map<String, String>> combinations = new ArrayList<>();
+        combinations.add(new LinkedHashMap<>());
+        for (String name : propertyNames) {
+            List<Map<String, String>> expanded = new ArrayList<>();
+            for (Map<String, String> partial : combinations) {
+                for (String value : urlProperties.get(name)) {
+                    Map<String, String> next = new LinkedHashMap<>(partial);
+                    next.put(name, value);
+                    expanded.add(next);
+                }
+            }
+            combinations = expanded;
+        }
+        return combinations;
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+
+    private static final class Result {
+        final int combination;
+        final Integer fetchSize;
+        final Integer maxRows;
+        final Map<String, String> properties;
+        final LatencyHistogram total = new LatencyHistogram();
+        final LatencyHistogram http = new LatencyHistogram();
+        final int[] ranks = new int[3];
+        long httpRequests;
+        long errors;
+
+        Result(int combination, Integer fetchSize, Integer maxRows, Map<String, String> properties) {
+            this.combination = combination;
+            this.fetchSize = fetchSize;
+            this.maxRows = maxRows;
+            this.properties = properties;
+        }
+
+        String describe() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("fetchSize=").append(fetchSize == null ? "default" : fetchSize);
+            sb.append(", maxRows=").append(maxRows == null ? "default" : maxRows);
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                sb.append(", ").append(property.getKey()).append('=').append(property.getValue());
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package perftest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.DatabaseMetaData;
+import java.sql.Driver;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the same queries against several named targets (driver versions, vendors or
+ * connection strings) in one invocation and puts the results side by side. Every
+ * target's driver is loaded from its own jars in a class loader of its own, so two
+ * versions of the same driver can be compared, and is called through
+ * {@link Driver#connect} rather than DriverManager.
+ * <p>
+ * The targets take turns: each iteration runs the query once on every target, and
+ * the target that goes first rotates. A SaaS backend that speeds up or slows down
+ * during the run therefore affects all targets alike.
+ * <p>
+ * Targets are declared in the configuration:
+ * <pre>
+ * jdbc.url=jdbc:github:InitiateOAuth=GETANDREFRESH;Logfile=fullLogs.log;Verbosity=2;
+ * jdbc.driver.class=cdata.jdbc.github.GitHubDriver
+ * targets=current,candidate
+ * target.current.jdbc.driver.path=drivers/24.0/cdata.jdbc.github.jar
+ * target.candidate.jdbc.driver.path=drivers/25.0/cdata.jdbc.github.jar
+ * </pre>
+ * Settings a target leaves out are taken from the plain jdbc.* keys, except the
+ * driver path: without one the driver is loaded from the harness classpath.
+ */
+public final class TargetMatrix {
+
+    private static final Logger LOGGER = Logger.getLogger(TargetMatrix.class.getName());
+
+    private static final double SIGNIFICANCE = 0.01;
+
+    private final List<Target> targets;
+    private final Map<String, String> queries;
+    private final Map<String, BindValues> bindValues;
+    private final int iterations;
+    private final ResultConsumer consumer;
+    private int warmup;
+
+    public TargetMatrix(List<Target> targets, Map<String, String> queries, Map<String, BindValues> bindValues,
+                        int iterations, ResultConsumer consumer) {
+        if (targets.size() < 2) {
+            throw new IllegalArgumentException("Name at least two targets to compare.");
+        }
+        this.targets = targets;
+        this.queries = queries;
+        this.bindValues = bindValues;
+        this.iterations = iterations;
+        this.consumer = consumer;
+    }
+
+    /**
+     * The targets named by the comma-separated list, from target.&lt;name&gt;.* properties.
+     */
+    public static List<Target> parseTargets(Properties props, String names) {
+        List<Target> targets = new ArrayList<>();
+        for (String name : names.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!name.matches("[A-Za-z0-9_.-]+")) {
+                throw new IllegalArgumentException("Target name '" + name + "' may only contain letters, digits, '_', '.' and '-'.");
+            }
+            String prefix = "target." + name + ".";
+            String url = props.getProperty(prefix + "jdbc.url", props.getProperty("jdbc.url"));
+            String driverClass = props.getProperty(prefix + "jdbc.driver.class", props.getProperty("jdbc.driver.class"));
+            if (url == null || driverClass == null) {
+                throw new IllegalArgumentException("Target " + name + " needs " + prefix + "jdbc.url and "
+                    + prefix + "jdbc.driver.class (or the plain jdbc.* keys).");
+            }
+            targets.add(new Target(name, url,
+                props.getProperty(prefix + "jdbc.username", props.getProperty("jdbc.username")),
+                props.getProperty(prefix + "jdbc.password", props.getProperty("jdbc.password")),
+                driverClass, props.getProperty(prefix + "jdbc.driver.path")));
+        }
+        return targets;
+    }
+
+    /**
+     * Unmeasured rounds over the targets per query before the measured ones.
+     */
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    /**
+     * Loads the drivers, connects every target and runs the rounds, writing one CSV
+     * line per execution. Returns the report lines.
+     */
+    public List<String> run(PrintWriter csvWriter) throws SQLException {
+        csvWriter.println("Query Name,Target,Iteration,Position,total,start-res,res-read,rows,HTTPRequests,HTTPLogTime");
+        List<String> report = new ArrayList<>();
+        List<TrackedConnection> connections = new ArrayList<>();
+        try {
+            for (int t = 0; t < targets.size(); t++) {
+                Target target = targets.get(t);
+                Driver driver = target.loadDriver();
+                long startNanos = System.nanoTime();
+                TrackedConnection connection = TrackedConnection.open(driver, target.url, target.user, target.password,
+                    t + 1, "target-" + target.name);
+                long connectNanos = System.nanoTime() - startNanos;
+                connections.add(connection);
+                String line = String.format("Target %s: %s, connect %.1f ms%s", target.name, describe(driver, connection),
+                    connectNanos / 1_000_000.0, target.driverPath == null ? ", driver from the classpath" : ", " + target.driverPath);
+                report.add(line);
+                System.out.println(line);
+                LOGGER.info(line);
+            }
+
+            Map<String, Cell[]> cells = new LinkedHashMap<>();
+            for (Map.Entry<String, String> entry : queries.entrySet()) {
+                cells.put(entry.getKey(), runQuery(entry.getKey(), entry.getValue(), connections, csvWriter));
+            }
+            report.addAll(matrix(cells));
+        } finally {
+            for (TrackedConnection connection : connections) {
+                connection.close();
+            }
+            // Only after the connections, which may still load driver classes while closing
+            for (Target target : targets) {
+                target.closeLoader();
+            }
+        }
+        return report;
+    }
+
+    private Cell[] runQuery(String queryName, String sql, List<TrackedConnection> connections, PrintWriter csvWriter) {
+        System.out.println("\n--- Query " + queryName + " on " + targets.size() + " targets ---");
+        LOGGER.info("Starting matrix run for query: " + queryName);
+        BindValues binds = bindValues.get(queryName);
+        Cell[] cells = new Cell[targets.size()];
+        for (int t = 0; t < cells.length; t++) {
+            cells[t] = new Cell();
+        }
+        for (int round = 1; round <= warmup + iterations; round++) {
+            boolean measured = round > warmup;
+            int iteration = round - warmup;
+            // Every target sees the same bind values in a round
+            Object[] values = binds != null ? binds.next() : null;
+            for (int position = 0; position < cells.length; position++) {
+                int t = (round + position) % cells.length;
+                execute(queryName, sql, t, connections.get(t), values, binds, measured ? cells[t] : null,
+                    csvWriter, iteration, position + 1);
+            }
+        }
+        for (int t = 0; t < cells.length; t++) {
+            String line = String.format("  %s: %s%s", targets.get(t).name, cells[t].latency.summary(),
+                cells[t].errors > 0 ? ", " + cells[t].errors + " errors" : "");
+            System.out.println(line);
+            LOGGER.info("Query " + queryName + " on " + line.trim());
+        }
+        return cells;
+    }
+
+    private void execute(String queryName, String sql, int t, TrackedConnection connection, Object[] values, BindValues binds,
+                         Cell cell, PrintWriter csvWriter, int iteration, int position) {
+        long startNanos = System.nanoTime();
+        long resultNanos;
+        try {
+            PreparedStatement stmt = connection.prepare(sql);
+            if (binds != null) {
+                binds.bind(stmt, values);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                resultNanos = System.nanoTime();
+                consumer.consume(rs, startNanos);
+            }
+        } catch (SQLException e) {
+            connection.pollHttpLog();
+            if (cell != null) {
+                cell.errors++;
+            }
+            LOGGER.log(Level.WARNING, "SQL Execution Error on target " + targets.get(t).name + " for query " + queryName, e);
+            return;
+        }
+        long endNanos = System.nanoTime();
+        HttpLogTailer.Result http = connection.pollHttpLog();
+        if (cell == null) {
+            return;
+        }
+        long totalNanos = endNanos - startNanos;
+        cell.latency.record(totalNanos);
+        cell.nanos += totalNanos;
+        cell.rows += consumer.getRows();
+        cell.httpRequests += http.getRequestCount();
+        cell.httpMs += http.getSumOfDurations();
+        csvWriter.printf("%s,%s,%d,%d,%d,%d,%d,%d,%d,%d\n", queryName, targets.get(t).name, iteration, position,
+            TimeUnit.NANOSECONDS.toMillis(totalNanos),
+            TimeUnit.NANOSECONDS.toMillis(resultNanos - startNanos),
+            TimeUnit.NANOSECONDS.toMillis(endNanos - resultNanos),
+            consumer.getRows(), http.getRequestCount(), http.getSumOfDurations());
+    }
+
+    /**
+     * One block per query: a column per target, a row per figure, and each target's
+     * p50 against the first target's with the Mann-Whitney p-value.
+     */
+    private List<String> matrix(Map<String, Cell[]> cells) {
+        List<String> lines = new ArrayList<>();
+        int width = 12;
+        for (Target target : targets) {
+            width = Math.max(width, target.name.length() + 2);
+        }
+        String cellFormat = "%" + width + "s";
+        lines.add(String.format("Side by side; \"p50 vs %s\" is the change in the median, * where significant (Mann-Whitney, p < 0.01):",
+            targets.get(0).name));
+
+        Cell[] overall = new Cell[targets.size()];
+        for (int t = 0; t < overall.length; t++) {
+            overall[t] = new Cell();
+        }
+        for (Map.Entry<String, Cell[]> entry : cells.entrySet()) {
+            Cell[] row = entry.getValue();
+            StringBuilder header = new StringBuilder(String.format("%-22s", "Query " + entry.getKey()));
+            for (Target target : targets) {
+                header.append(String.format(cellFormat, target.name));
+            }
+            lines.add(header.toString());
+            lines.add(figure("  p50 ms", cellFormat, row, c -> String.format("%.3f", c.latency.getValueAtPercentile(50) / 1_000_000.0)));
+            lines.add(figure("  p99 ms", cellFormat, row, c -> String.format("%.3f", c.latency.getValueAtPercentile(99) / 1_000_000.0)));
+            lines.add(figure("  runs/sec", cellFormat, row, c -> String.format("%.2f", c.runsPerSecond())));
+            lines.add(figure("  rows/sec", cellFormat, row, c -> String.format("%.1f", c.rowsPerSecond())));
+            lines.add(figure("  HTTP req/run", cellFormat, row, c -> String.format("%.1f", c.perRun(c.httpRequests))));
+            lines.add(figure("  HTTP ms/run", cellFormat, row, c -> String.format("%.1f", c.perRun(c.httpMs))));
+            lines.add(figure("  errors", cellFormat, row, c -> Long.toString(c.errors)));
+            StringBuilder versus = new StringBuilder(String.format("%-22s", "  p50 vs " + targets.get(0).name));
+            versus.append(String.format(cellFormat, "-"));
+            for (int t = 1; t < row.length; t++) {
+                versus.append(String.format(cellFormat, versus(row[0], row[t])));
+            }
+            lines.add(versus.toString());
+            for (int t = 0; t < row.length; t++) {
+                overall[t].add(row[t]);
+            }
+        }
+        if (cells.size() > 1) {
+            StringBuilder header = new StringBuilder(String.format("%-22s", "All queries"));
+            for (Target target : targets) {
+                header.append(String.format(cellFormat, target.name));
+            }
+            lines.add(header.toString());
+            lines.add(figure("  runs/sec", cellFormat, overall, c -> String.format("%.2f", c.runsPerSecond())));
+            lines.add(figure("  rows/sec", cellFormat, overall, c -> String.format("%.1f", c.rowsPerSecond())));
+            lines.add(figure("  errors", cellFormat, overall, c -> Long.toString(c.errors)));
+        }
+        return lines;
+    }
+
+    private static String figure(String label, String cellFormat, Cell[] row, Function<Cell, String> value) {
+        StringBuilder sb = new StringBuilder(String.format("%-22s", label));
+        for (Cell cell : row) {
+            sb.append(String.format(cellFormat, cell.latency.getCount() == 0 ? "-" : value.apply(cell)));
+        }
+        return sb.toString();
+    }
+
+    private static String versus(Cell base, Cell other) {
+        if (base.latency.getCount() == 0 || other.latency.getCount() == 0) {
+            return "-";
+        }
+        double before = base.latency.getValueAtPercentile(50);
+        double change = before == 0 ? 0 : (other.latency.getValueAtPercentile(50) - before) / before;
+        double p = RankSum.pValue(base.latency.rankSumZ(other.latency));
+        return String.format("%+.1f%%%s", 100 * change, p < SIGNIFICANCE ? "*" : "");
+    }
+
+    private static String describe(Driver driver, TrackedConnection connection) {
+        try {
+            DatabaseMetaData meta = connection.getConnection().getMetaData();
+            return meta.getDriverName() + " " + meta.getDriverVersion();
+        } catch (SQLException e) {
+            return driver.getClass().getName() + " " + driver.getMajorVersion() + "." + driver.getMinorVersion();
+        }
+    }
+
+    /**
+     * One named driver and connection string.
+     */
+    public static final class Target {
+        private final String name;
+        private final String url;
+        private final String user;
+        private final String password;
+        private final String driverClass;
+        private final String driverPath;
+        private URLClassLoader loader;
+
+        Target(String name, String url, String user, String password, String driverClass, String driverPath) {
+            this.name = name;
+            this.url = url;
+            this.user = user;
+            this.password = password;
+            this.driverClass = driverClass;
+            this.driverPath = driverPath;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * A new instance of the driver class, from the target's jars when it has a
+         * jdbc.driver.path (comma-separated jars or directories of jars).
+         */
+        Driver loadDriver() throws SQLException {
+            try {
+                if (driverPath == null) {
+                    return Class.forName(driverClass, true, TargetMatrix.class.getClassLoader())
+                        .asSubclass(Driver.class).getDeclaredConstructor().newInstance();
+                }
+                closeLoader();
+                // Parent is the platform loader, so a driver on the harness classpath cannot shadow the jars
+                loader = new URLClassLoader(jarUrls(driverPath), ClassLoader.getSystemClassLoader().getParent());
+                return Class.forName(driverClass, true, loader).asSubclass(Driver.class).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException | MalformedURLException e) {
+                throw new SQLException("Could not load driver " + driverClass + " for target " + name
+                    + (driverPath != null ? " from " + driverPath : "") + ": " + e, e);
+            }
+        }
+
+        /**
+         * Closes the class loader of the target's jars, if {@link #loadDriver} opened one.
+         */
+        void closeLoader() {
+            if (loader == null) {
+                return;
+            }
+            try {
+                loader.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Could not close the driver class loader of target " + name, e);
+            }
+            loader = null;
+        }
+
+        private static URL[] jarUrls(String driverPath) throws MalformedURLException {
+            List<URL> urls = new ArrayList<>();
+            for (String part : driverPath.split(",")) {
+                File file = new File(part.trim());
+                File[] jars = file.isDirectory() ? file.listFiles((dir, n) -> n.endsWith(".jar")) : null;
+                if (jars != null) {
+                    Arrays.sort(jars);
+                    for (File jar : jars) {
+                        urls.add(jar.toURI().toURL());
+                    }
+                } else {
+                    urls.add(file.toURI().toURL());
+                }
+            }
+            return urls.toArray(new URL[0]);
+        }
+    }
+
+    private static final class Cell {
+        final LatencyHistogram latency = new LatencyHistogram();
+        long nanos;
+        long rows;
+        long httpRequests;
+        long httpMs;
+        long errors;
+
+        void add(Cell other) {
+            latency.merge(other.latency);
+            nanos += other.nanos;
+            rows += other.rows;
+            httpRequests += other.httpRequests;
+            httpMs += other.httpMs;
+            errors += other.errors;
+        }
+
+        double runsPerSecond() {
+            return nanos == 0 ? 0 : latency.getCount() * 1_000_000_000.0 / nanos;
+        }
+
+        double rowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1_000_000_000.0 / nanos;
+        }
+
+        double perRun(long total) {
+            return latency.getCount() == 0 ? 0 : (double) total / latency.getCount();
+        }
+    }
+}
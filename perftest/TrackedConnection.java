@@ -0,0 +1,138 @@
+package perftest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A connection together with its own driver HTTP log, so that the HTTP time of a
+ * query can be attributed to whoever held the connection while it ran. Prepared
+ * statements are cached per connection and reused across executions.
+ */
+public final class TrackedConnection implements AutoCloseable {
+
+    private final int id;
+    private final Connection connection;
+    private final HttpLogTailer httpLog;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    private TrackedConnection(int id, Connection connection, HttpLogTailer httpLog) {
+        this.id = id;
+        this.connection = connection;
+        this.httpLog = httpLog;
+    }
+
+    /**
+     * Opens connection number id. When the URL sets a Logfile, the connection logs
+     * to its own copy of it (fullLogs.conn3.log) which is cleared beforehand.
+     */
+    public static TrackedConnection open(String url, String user, String password, int id) throws SQLException {
+        return open(url, user, password, id, null);
+    }
+
+    /**
+     * Opens connection number id with its JDBC calls timed by the given timing, if not null.
+     */
+    public static TrackedConnection open(String url, String user, String password, int id, JdbcTiming timing) throws SQLException {
+        String connectionUrl = JdbcUrls.withLogfileSuffix(url, "conn" + id);
+        HttpLogTailer httpLog = clearedLog(connectionUrl, "conn" + id);
+        Connection connection = DriverManager.getConnection(connectionUrl, user, password);
+        if (timing != null) {
+            connection = timing.wrap(connection);
+        }
+        return tracked(id, connection, httpLog);
+    }
+
+    /**
+     * Opens connection number id through the given driver instead of DriverManager,
+     * for a driver loaded in a class loader of its own. The connection logs to a copy
+     * of the Logfile named after the tag (fullLogs.tag.log).
+     */
+    public static TrackedConnection open(Driver driver, String url, String user, String password, int id, String tag) throws SQLException {
+        String connectionUrl = JdbcUrls.withLogfileSuffix(url, tag);
+        HttpLogTailer httpLog = clearedLog(connectionUrl, tag);
+        Properties info = new Properties();
+        if (user != null) {
+            info.setProperty("user", user);
+        }
+        if (password != null) {
+            info.setProperty("password", password);
+        }
+        Connection connection = driver.connect(connectionUrl, info);
+        if (connection == null) {
+            throw new SQLException(driver.getClass().getName() + " does not accept the URL " + url);
+        }
+        return tracked(id, connection, httpLog);
+    }
+
+    private static HttpLogTailer clearedLog(String connectionUrl, String tag) {
+        HttpLogTailer httpLog = new HttpLogTailer(JdbcUrls.httpLogPath(connectionUrl, "fullLogs." + tag + ".log"));
+        try {
+            Files.deleteIfExists(httpLog.getPath());
+        } catch (IOException ignored) {
+        }
+        return httpLog;
+    }
+
+    private static TrackedConnection tracked(int id, Connection connection, HttpLogTailer httpLog) {
+        TrackedConnection tracked = new TrackedConnection(id, connection, httpLog);
+        // Connection setup traffic is not part of any query
+        tracked.pollHttpLog();
+        return tracked;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = connection.prepareStatement(sql);
+            statements.put(sql, stmt);
+        }
+        return stmt;
+    }
+
+    /**
+     * HTTP activity logged by this connection since the previous poll; an unreadable
+     * log counts as no activity.
+     */
+    public HttpLogTailer.Result pollHttpLog() {
+        try {
+            return httpLog.poll();
+        } catch (IOException e) {
+            return new HttpLogTailer.Result(null, 0, 0);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (PreparedStatement stmt : statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+        try {
+            httpLog.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package perftest.mock;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Locale;
+
+/**
+ * Column types the mock driver can generate. Values are derived from the row and
+ * column number, so every run of the same URL returns the same data.
+ */
+enum ColumnType {
+    INTEGER(Types.INTEGER, Integer.class),
+    BIGINT(Types.BIGINT, Long.class),
+    DOUBLE(Types.DOUBLE, Double.class),
+    DECIMAL(Types.DECIMAL, BigDecimal.class),
+    BOOLEAN(Types.BOOLEAN, Boolean.class),
+    TIMESTAMP(Types.TIMESTAMP, Timestamp.class),
+    VARCHAR(Types.VARCHAR, String.class),
+    VARBINARY(Types.VARBINARY, byte[].class);
+
+    private static final char[] TEXT = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+    private static final long BASE_MILLIS = 1_700_000_000_000L;
+
+    final int sqlType;
+    final Class<?> javaClass;
+
+    ColumnType(int sqlType, Class<?> javaClass) {
+        this.sqlType = sqlType;
+        this.javaClass = javaClass;
+    }
+
+    static ColumnType parse(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "int":
+            case "integer":
+                return INTEGER;
+            case "long":
+            case "bigint":
+                return BIGINT;
+            case "double":
+                return DOUBLE;
+            case "decimal":
+                return DECIMAL;
+            case "bool":
+            case "boolean":
+                return BOOLEAN;
+            case "timestamp":
+                return TIMESTAMP;
+            case "string":
+            case "varchar":
+                return VARCHAR;
+            case "binary":
+            case "varbinary":
+                return VARBINARY;
+            default:
+                throw new IllegalArgumentException("Unknown column type '" + name
+                    + "'. Use int, bigint, double, decimal, boolean, timestamp, varchar or binary.");
+        }
+    }
+
+    /**
+     * @param width characters for varchar, bytes for binary; ignored by other types
+     */
+    Object value(long row, int column, int width) {
+        long seed = row * 31 + column;
+        switch (this) {
+            case INTEGER:
+                return (int) seed;
+            case BIGINT:
+                return seed * 1_000_003L;
+            case DOUBLE:
+                return seed * 1.5;
+            case DECIMAL:
+                return BigDecimal.valueOf(seed * 100 + column, 2);
+            case BOOLEAN:
+                return (seed & 1) == 0;
+            case TIMESTAMP:
+                return new Timestamp(BASE_MILLIS + row * 1000);
+            case VARBINARY:
+                byte[] bytes = new byte[width];
+                for (int i = 0; i < width; i++) {
+                    bytes[i] = (byte) (seed + i);
+                }
+                return bytes;
+            default:
+                char[] chars = new char[width];
+                for (int i = 0; i < width; i++) {
+                    chars[i] = TEXT[(int) ((seed + i) % TEXT.length)];
+                }
+                return new String(chars);
+        }
+    }
+}
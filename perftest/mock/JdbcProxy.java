@@ -0,0 +1,87 @@
+package perftest.mock;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * Base of the mock JDBC objects. The JDBC interfaces are implemented as dynamic
+ * proxies so the mock only spells out the methods a benchmark calls; anything else
+ * fails with SQLFeatureNotSupportedException, naming the method.
+ */
+abstract class JdbcProxy implements InvocationHandler {
+
+    private final Class<?> type;
+    private final Object proxy;
+    private boolean closed;
+
+    JdbcProxy(Class<?> type) {
+        this.type = type;
+        this.proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, this);
+    }
+
+    @SuppressWarnings("unchecked")
+    final <T> T proxy() {
+        return (T) proxy;
+    }
+
+    final boolean isClosed() {
+        return closed;
+    }
+
+    void close() throws SQLException {
+        closed = true;
+    }
+
+    final void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException(type.getSimpleName() + " is closed.");
+        }
+    }
+
+    /**
+     * Handles a JDBC method. Returns {@link #UNSUPPORTED} for methods the mock does not implement.
+     */
+    abstract Object handle(String name, Object[] args) throws SQLException;
+
+    static final Object UNSUPPORTED = new Object();
+
+    @Override
+    public final Object invoke(Object self, Method method, Object[] args) throws Throwable {
+        Object[] actual = args == null ? new Object[0] : args;
+        switch (method.getName()) {
+            case "toString":
+                return "Mock" + type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(self));
+            case "hashCode":
+                return System.identityHashCode(self);
+            case "equals":
+                return self == actual[0];
+            case "isWrapperFor":
+                return ((Class<?>) actual[0]).isInstance(self);
+            case "unwrap":
+                if (((Class<?>) actual[0]).isInstance(self)) {
+                    return self;
+                }
+                throw new SQLException("Not a wrapper for " + actual[0]);
+            case "isClosed":
+                return closed;
+            case "close":
+                close();
+                return null;
+            case "getWarnings":
+                return null;
+            case "clearWarnings":
+                return null;
+            default:
+                break;
+        }
+        Object result = handle(method.getName(), actual);
+        if (result == UNSUPPORTED) {
+            throw new SQLFeatureNotSupportedException(type.getSimpleName() + "." + method.getName()
+                + " is not supported by the mock driver.");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,65 @@
+package perftest.mock;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * A latency distribution in milliseconds, written in URL properties as
+ * fixed:20, uniform:10:50, normal:30:5 (mean, standard deviation),
+ * lognormal:30:0.5 (median, sigma) or exp:25 (mean). Samples are never negative.
+ */
+final class LatencyDistribution {
+
+    private enum Kind { FIXED, UNIFORM, NORMAL, LOGNORMAL, EXP }
+
+    static final LatencyDistribution NONE = new LatencyDistribution(Kind.FIXED, 0, 0);
+
+    private final Kind kind;
+    private final double a;
+    private final double b;
+
+    private LatencyDistribution(Kind kind, double a, double b) {
+        this.kind = kind;
+        this.a = a;
+        this.b = b;
+    }
+
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        try {
+            Kind kind = parts.length == 1 ? Kind.FIXED : Kind.valueOf(parts[0].trim().toUpperCase(Locale.ROOT));
+            int first = parts.length == 1 ? 0 : 1;
+            double a = Double.parseDouble(parts[first].trim());
+            double b = parts.length > first + 1 ? Double.parseDouble(parts[first + 1].trim()) : 0;
+            if (kind == Kind.UNIFORM && b < a) {
+                throw new IllegalArgumentException("uniform:min:max needs max >= min");
+            }
+            return kind == Kind.FIXED && a <= 0 ? NONE : new LatencyDistribution(kind, a, b);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid latency '" + spec
+                + "'. Use fixed:ms, uniform:min:max, normal:mean:sd, lognormal:median:sigma or exp:mean.", e);
+        }
+    }
+
+    double sampleMillis(Random random) {
+        double value;
+        switch (kind) {
+            case UNIFORM:
+                value = a + random.nextDouble() * (b - a);
+                break;
+            case NORMAL:
+                value = a + random.nextGaussian() * b;
+                break;
+            case LOGNORMAL:
+                value = a * Math.exp(random.nextGaussian() * b);
+                break;
+            case EXP:
+                value = -a * Math.log(1 - random.nextDouble());
+                break;
+            default:
+                value = a;
+                break;
+        }
+        return Math.max(0, value);
+    }
+}
@@ -0,0 +1,111 @@
+package perftest.mock;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * A mock connection. Opening it costs one simulated token request
+ * (ConnectLatency); preparing a statement costs one metadata request
+ * (PrepareLatency) when that latency is set.
+ */
+final class MockConnection extends JdbcProxy {
+
+    final MockSettings settings;
+    final MockHttpLog httpLog;
+    private boolean autoCommit = true;
+
+    private MockConnection(MockSettings settings, MockHttpLog httpLog) {
+        super(Connection.class);
+        this.settings = settings;
+        this.httpLog = httpLog;
+    }
+
+    static Connection open(MockSettings settings) throws SQLException {
+        MockHttpLog httpLog = null;
+        try {
+            httpLog = new MockHttpLog(settings.logfile, settings.seed);
+            httpLog.request("POST", "oauth/token", settings.connectLatency);
+        } catch (IOException e) {
+            closeQuietly(httpLog);
+            throw new SQLException("Could not write the mock log " + settings.logfile + ": " + e.getMessage(), "08001", e);
+        }
+        return new MockConnection(settings, httpLog).proxy();
+    }
+
+    /**
+     * One simulated HTTP request, with log failures surfaced as SQLException.
+     */
+    long request(String method, String resource, LatencyDistribution latency) throws SQLException {
+        try {
+            return httpLog.request(method, resource, latency);
+        } catch (IOException e) {
+            throw new SQLException("Could not write the mock log " + settings.logfile + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    void close() throws SQLException {
+        if (!isClosed()) {
+            super.close();
+            try {
+                httpLog.close();
+            } catch (IOException e) {
+                throw new SQLException("Could not close the mock log " + settings.logfile, e);
+            }
+        }
+    }
+
+    @Override
+    Object handle(String name, Object[] args) throws SQLException {
+        switch (name) {
+            case "createStatement":
+                checkOpen();
+                return new MockStatement(this, null).proxy();
+            case "prepareStatement":
+                checkOpen();
+                if (settings.prepareLatency != LatencyDistribution.NONE) {
+                    request("GET", "metadata", settings.prepareLatency);
+                }
+                return new MockStatement(this, (String) args[0]).proxy();
+            case "isValid":
+                return !isClosed();
+            case "getAutoCommit":
+                return autoCommit;
+            case "setAutoCommit":
+                autoCommit = (Boolean) args[0];
+                return null;
+            case "commit":
+            case "rollback":
+                checkOpen();
+                return null;
+            case "setReadOnly":
+            case "setCatalog":
+            case "setSchema":
+            case "setTransactionIsolation":
+            case "setClientInfo":
+                return null;
+            case "isReadOnly":
+                return false;
+            case "getCatalog":
+            case "getSchema":
+                return null;
+            case "getTransactionIsolation":
+                return Connection.TRANSACTION_NONE;
+            case "getHoldability":
+                return ResultSet.CLOSE_CURSORS_AT_COMMIT;
+            default:
+                return UNSUPPORTED;
+        }
+    }
+
+    private static void closeQuietly(MockHttpLog httpLog) {
+        if (httpLog != null) {
+            try {
+                httpLog.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
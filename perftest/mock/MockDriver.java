@@ -0,0 +1,88 @@
+package perftest.mock;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * A loopback JDBC driver for running the harness without a licensed driver or a
+ * network. Load it with jdbc.driver.class=perftest.mock.MockDriver and a URL such as
+ * <pre>
+ * jdbc:mock:Rows=5000;Columns=8;ColumnTypes=int,varchar,decimal,timestamp;Width=40;
+ *     PageSize=500;PageLatency=lognormal:120:0.4;ConnectLatency=300;Logfile=fullLogs.log;
+ * </pre>
+ * Connection properties:
+ * <ul>
+ * <li>Rows - rows every query returns (1000)</li>
+ * <li>Columns - number of columns (10, or the length of ColumnTypes)</li>
+ * <li>ColumnTypes - comma separated int, bigint, double, decimal, boolean, timestamp,
+ *     varchar, binary; repeated to fill Columns (varchar)</li>
+ * <li>Width - characters per varchar and bytes per binary value (32)</li>
+ * <li>PageSize - rows per simulated HTTP page; a statement fetch size overrides it (100)</li>
+ * <li>PageLatency - latency of each page, batch and update request in ms, as fixed:20,
+ *     uniform:10:50, normal:30:5, lognormal:30:0.5 or exp:25 (0)</li>
+ * <li>ConnectLatency, PrepareLatency - latency of the token request made on connect and of
+ *     the metadata request made on prepare (0, no request for a zero prepare latency)</li>
+ * <li>BatchSize - batched rows sent per request by executeBatch (100)</li>
+ * <li>ErrorRate - fraction of executions that fail with an SQLException (0)</li>
+ * <li>Seed - seed of the latency and error samples, per connection (42)</li>
+ * <li>Logfile - file the simulated requests are logged to, in the format of a CData
+ *     driver at Verbosity=2; nothing is logged without it</li>
+ * </ul>
+ * Every query returns the same generated rows, except SELECT COUNT(*) which returns Rows.
+ */
+public final class MockDriver implements Driver {
+
+    static final String URL_PREFIX = "jdbc:mock:";
+
+    static {
+        try {
+            DriverManager.registerDriver(new MockDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        return MockConnection.open(MockSettings.parse(url, info));
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.regionMatches(true, 0, URL_PREFIX, 0, URL_PREFIX.length());
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("The mock driver does not use java.util.logging.");
+    }
+}
@@ -0,0 +1,67 @@
+package perftest.mock;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simulated HTTP traffic of one mock connection. Each request sleeps for a sampled
+ * latency and, when the URL sets a Logfile, writes the two lines a CData driver
+ * logs at Verbosity=2: the request line and "Request completed in N ms", each
+ * starting with a timestamp and a tab.
+ */
+final class MockHttpLog implements AutoCloseable {
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+    private final OutputStream out;
+    private final Random random;
+
+    MockHttpLog(String logfile, long seed) throws IOException {
+        // Appending, like the real driver; every line is written with a single call
+        this.out = logfile == null ? null : new FileOutputStream(logfile, true);
+        this.random = new Random(seed);
+    }
+
+    Random random() {
+        return random;
+    }
+
+    /**
+     * Performs one simulated request and returns its duration in milliseconds.
+     */
+    long request(String method, String resource, LatencyDistribution latency) throws IOException {
+        write("[HTTP|Info] Sending " + method + " request to mock://" + resource);
+        long start = System.nanoTime();
+        long sleepNanos = (long) (latency.sampleMillis(random) * 1_000_000);
+        long deadline = start + sleepNanos;
+        while (sleepNanos > 0) {
+            LockSupport.parkNanos(sleepNanos);
+            sleepNanos = deadline - System.nanoTime();
+        }
+        long ms = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        write("[HTTP|Info] Request completed in " + ms + " ms.");
+        return ms;
+    }
+
+    private void write(String message) throws IOException {
+        if (out == null) {
+            return;
+        }
+        String line = ZonedDateTime.now().format(TIMESTAMP) + "\t" + message + System.lineSeparator();
+        out.write(line.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package perftest.mock;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * A forward-only result set over generated rows. Rows arrive in pages: the first
+ * page is fetched when the query executes, the next one when next() moves past the
+ * last fetched row, each costing one simulated request (PageLatency).
+ */
+final class MockResultSet extends JdbcProxy {
+
+    private final MockStatement statement;
+    private final MockConnection connection;
+    private final List<ColumnType> types;
+    private final long countValue;
+    private final long totalRows;
+    private final int pageSize;
+    private final int width;
+    private long fetched;
+    private long row;
+    private int pages;
+
+    /**
+     * @param countValue the single value of a COUNT(*) result, or -1 for generated rows
+     */
+    MockResultSet(MockStatement statement, MockConnection connection, List<ColumnType> types,
+                  long countValue, long totalRows, int pageSize) {
+        super(ResultSet.class);
+        this.statement = statement;
+        this.connection = connection;
+        this.types = types;
+        this.countValue = countValue;
+        this.totalRows = totalRows;
+        this.pageSize = pageSize;
+        this.width = connection.settings.width;
+    }
+
+    void fetchPage() throws SQLException {
+        connection.request("GET", "query/page/" + (++pages), connection.settings.pageLatency);
+        fetched = Math.min(totalRows, fetched + pageSize);
+    }
+
+    @Override
+    Object handle(String name, Object[] args) throws SQLException {
+        switch (name) {
+            case "next":
+                checkOpen();
+                if (row >= totalRows) {
+                    row = totalRows + 1;
+                    return false;
+                }
+                if (row == fetched) {
+                    fetchPage();
+                }
+                row++;
+                return true;
+            case "wasNull":
+                return false;
+            case "findColumn":
+                return findColumn((String) args[0]);
+            case "getMetaData":
+                return new MetaData().proxy();
+            case "getStatement":
+                return statement.proxy();
+            case "getRow":
+                return row > totalRows ? 0 : (int) row;
+            case "isBeforeFirst":
+                return row == 0 && totalRows > 0;
+            case "isAfterLast":
+                return row > totalRows && totalRows > 0;
+            case "getFetchSize":
+                return pageSize;
+            case "setFetchSize":
+            case "setFetchDirection":
+                return null;
+            case "getFetchDirection":
+                return ResultSet.FETCH_FORWARD;
+            case "getType":
+                return ResultSet.TYPE_FORWARD_ONLY;
+            case "getConcurrency":
+                return ResultSet.CONCUR_READ_ONLY;
+            case "getHoldability":
+                return ResultSet.CLOSE_CURSORS_AT_COMMIT;
+            default:
+                if (name.startsWith("get") && args.length >= 1 && (args[0] instanceof Integer || args[0] instanceof String)) {
+                    int column = args[0] instanceof Integer ? (Integer) args[0] : findColumn((String) args[0]);
+                    return convert(name, value(column));
+                }
+                return UNSUPPORTED;
+        }
+    }
+
+    private Object value(int column) throws SQLException {
+        checkOpen();
+        if (row < 1 || row > totalRows) {
+            throw new SQLException("The cursor is not on a row.");
+        }
+        if (column < 1 || column > types.size()) {
+            throw new SQLException("Column index " + column + " is out of range 1.." + types.size() + ".");
+        }
+        return countValue >= 0 ? countValue : types.get(column - 1).value(row, column, width);
+    }
+
+    private int findColumn(String label) throws SQLException {
+        for (int c = 1; c <= types.size(); c++) {
+            if (columnName(c).equalsIgnoreCase(label)) {
+                return c;
+            }
+        }
+        throw new SQLException("Unknown column '" + label + "'.");
+    }
+
+    private String columnName(int column) {
+        return countValue >= 0 ? "Count" : "Col" + column;
+    }
+
+    private static Object convert(String getter, Object value) throws SQLException {
+        try {
+            switch (getter) {
+                case "getObject":
+                    return value;
+                case "getString":
+                case "getNString":
+                    return value instanceof byte[] ? hex((byte[]) value) : value.toString();
+                case "getBoolean":
+                    return value instanceof Boolean ? value : number(value).doubleValue() != 0;
+                case "getByte":
+                    return number(value).byteValue();
+                case "getShort":
+                    return number(value).shortValue();
+                case "getInt":
+                    return number(value).intValue();
+                case "getLong":
+                    return number(value).longValue();
+                case "getFloat":
+                    return number(value).floatValue();
+                case "getDouble":
+                    return number(value).doubleValue();
+                case "getBigDecimal":
+                    return value instanceof BigDecimal ? value : new BigDecimal(number(value).toString());
+                case "getTimestamp":
+                    return timestamp(value);
+                case "getDate":
+                    return new Date(timestamp(value).getTime());
+                case "getTime":
+                    return new Time(timestamp(value).getTime());
+                case "getBytes":
+                    return value instanceof byte[] ? value : value.toString().getBytes(StandardCharsets.UTF_8);
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            throw new SQLException("Cannot convert '" + value + "' with " + getter + ".", "22018");
+        }
+        throw new SQLException("ResultSet." + getter + " is not supported by the mock driver.");
+    }
+
+    private static Number number(Object value) {
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).getTime();
+        }
+        return new BigDecimal(value.toString());
+    }
+
+    private static Timestamp timestamp(Object value) throws SQLException {
+        if (value instanceof Timestamp) {
+            return (Timestamp) value;
+        }
+        if (value instanceof Number) {
+            return new Timestamp(((Number) value).longValue());
+        }
+        throw new SQLException("Cannot convert '" + value + "' to a timestamp.", "22007");
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private final class MetaData extends JdbcProxy {
+
+        MetaData() {
+            super(ResultSetMetaData.class);
+        }
+
+        @Override
+        Object handle(String name, Object[] args) throws SQLException {
+            if (name.equals("getColumnCount")) {
+                return types.size();
+            }
+            int column = (Integer) args[0];
+            if (column < 1 || column > types.size()) {
+                throw new SQLException("Column index " + column + " is out of range 1.." + types.size() + ".");
+            }
+            ColumnType type = countValue >= 0 ? ColumnType.BIGINT : types.get(column - 1);
+            switch (name) {
+                case "getColumnName":
+                case "getColumnLabel":
+                    return columnName(column);
+                case "getColumnType":
+                    return type.sqlType;
+                case "getColumnTypeName":
+                    return type.name();
+                case "getColumnClassName":
+                    return type.javaClass.getName();
+                case "getPrecision":
+                case "getColumnDisplaySize":
+                    return type == ColumnType.VARCHAR || type == ColumnType.VARBINARY ? width : 19;
+                case "getScale":
+                    return type == ColumnType.DECIMAL ? 2 : 0;
+                case "isNullable":
+                    return ResultSetMetaData.columnNoNulls;
+                case "getTableName":
+                    return "MockTable";
+                case "getSchemaName":
+                case "getCatalogName":
+                    return "";
+                case "isSigned":
+                    return type != ColumnType.VARCHAR && type != ColumnType.VARBINARY && type != ColumnType.BOOLEAN;
+                case "isCaseSensitive":
+                    return type == ColumnType.VARCHAR;
+                case "isReadOnly":
+                case "isSearchable":
+                    return true;
+                case "isAutoIncrement":
+                case "isCurrency":
+                case "isWritable":
+                case "isDefinitelyWritable":
+                    return false;
+                default:
+                    return UNSUPPORTED;
+            }
+        }
+    }
+}
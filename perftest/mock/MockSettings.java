@@ -0,0 +1,101 @@
+package perftest.mock;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Connection properties of a mock URL, parsed once per connection. Names are
+ * case-insensitive, as in CData connection strings.
+ */
+final class MockSettings {
+
+    private static final List<String> KNOWN = Arrays.asList(
+        "rows", "columns", "columntypes", "width", "pagesize", "pagelatency", "connectlatency",
+        "preparelatency", "batchsize", "errorrate", "seed", "logfile", "verbosity");
+
+    final long rows;
+    final List<ColumnType> columnTypes;
+    final int width;
+    final int pageSize;
+    final LatencyDistribution pageLatency;
+    final LatencyDistribution connectLatency;
+    final LatencyDistribution prepareLatency;
+    final int batchSize;
+    final double errorRate;
+    final long seed;
+    final String logfile;
+
+    private MockSettings(Map<String, String> props) {
+        rows = Long.parseLong(get(props, "Rows", "1000"));
+        width = Integer.parseInt(get(props, "Width", "32"));
+        pageSize = Integer.parseInt(get(props, "PageSize", "100"));
+        pageLatency = LatencyDistribution.parse(get(props, "PageLatency", "0"));
+        connectLatency = LatencyDistribution.parse(get(props, "ConnectLatency", "0"));
+        prepareLatency = LatencyDistribution.parse(get(props, "PrepareLatency", "0"));
+        batchSize = Integer.parseInt(get(props, "BatchSize", "100"));
+        errorRate = Double.parseDouble(get(props, "ErrorRate", "0"));
+        seed = Long.parseLong(get(props, "Seed", "42"));
+        logfile = props.get("logfile");
+
+        String[] typeNames = get(props, "ColumnTypes", "varchar").split(",");
+        int columns = Integer.parseInt(get(props, "Columns", props.containsKey("columntypes")
+            ? Integer.toString(typeNames.length) : "10"));
+        List<ColumnType> types = new ArrayList<>();
+        for (int c = 0; c < columns; c++) {
+            // Shorter type lists repeat until every column has a type
+            types.add(ColumnType.parse(typeNames[c % typeNames.length]));
+        }
+        columnTypes = Collections.unmodifiableList(types);
+
+        if (rows < 0 || columns < 1 || width < 0 || pageSize < 1 || batchSize < 1 || errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("Rows and Width must be >= 0, Columns, PageSize and BatchSize >= 1, ErrorRate between 0 and 1.");
+        }
+    }
+
+    /**
+     * Parses the Name=Value pairs after the subprotocol; values from the Properties
+     * passed to connect fill in names the URL does not set.
+     */
+    static MockSettings parse(String url, Map<?, ?> info) throws SQLException {
+        Map<String, String> props = new TreeMap<>();
+        if (info != null) {
+            for (Map.Entry<?, ?> entry : info.entrySet()) {
+                props.put(entry.getKey().toString().toLowerCase(Locale.ROOT), entry.getValue().toString());
+            }
+        }
+        for (String pair : url.substring(MockDriver.URL_PREFIX.length()).split(";")) {
+            if (pair.trim().isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            if (eq == -1) {
+                throw new SQLException("Invalid connection property '" + pair + "'. Use Name=Value.", "08001");
+            }
+            String name = pair.substring(0, eq).trim().toLowerCase(Locale.ROOT);
+            String value = pair.substring(eq + 1).trim();
+            if (value.length() >= 2 && (value.startsWith("\"") && value.endsWith("\"") || value.startsWith("'") && value.endsWith("'"))) {
+                value = value.substring(1, value.length() - 1);
+            }
+            if (!KNOWN.contains(name)) {
+                throw new SQLException("Unknown connection property '" + pair.substring(0, eq).trim() + "'.", "08001");
+            }
+            props.put(name, value);
+        }
+        try {
+            return new MockSettings(props);
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Invalid mock connection string: " + e.getMessage(), "08001", e);
+        }
+    }
+
+    private static String get(Map<String, String> props, String name, String defaultValue) {
+        String value = props.get(name.toLowerCase(Locale.ROOT));
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+}
@@ -0,0 +1,188 @@
+package perftest.mock;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+/**
+ * A mock Statement or PreparedStatement. Every query returns the generated rows
+ * of the connection's schema, except SELECT COUNT(*) which returns the row count.
+ * Parameters are accepted and ignored. Updates cost one request each, batches one
+ * request per BatchSize rows.
+ */
+final class MockStatement extends JdbcProxy {
+
+    private static final Pattern COUNT_QUERY = Pattern.compile("(?is)^\\s*select\\s+count\\s*\\(\\s*\\*\\s*\\).*");
+    private static final Pattern QUERY = Pattern.compile("(?is)^\\s*(select|with)\\b.*");
+
+    private final MockConnection connection;
+    private final String sql;
+    private int fetchSize;
+    private long maxRows;
+    private int queryTimeout;
+    private int batchCount;
+    private MockResultSet resultSet;
+    private int updateCount = -1;
+
+    MockStatement(MockConnection connection, String sql) {
+        super(sql == null ? Statement.class : PreparedStatement.class);
+        this.connection = connection;
+        this.sql = sql;
+    }
+
+    @Override
+    void close() throws SQLException {
+        closeResultSet();
+        super.close();
+    }
+
+    @Override
+    Object handle(String name, Object[] args) throws SQLException {
+        switch (name) {
+            case "executeQuery":
+                checkOpen();
+                return executeQuery(sql(args)).proxy();
+            case "execute":
+                checkOpen();
+                if (QUERY.matcher(sql(args)).matches()) {
+                    executeQuery(sql(args));
+                    return true;
+                }
+                updateCount = (int) executeUpdate();
+                return false;
+            case "executeUpdate":
+                checkOpen();
+                return (int) executeUpdate();
+            case "executeLargeUpdate":
+                checkOpen();
+                return executeUpdate();
+            case "getResultSet":
+                return resultSet == null ? null : resultSet.proxy();
+            case "getUpdateCount":
+                return updateCount;
+            case "getMoreResults":
+                closeResultSet();
+                updateCount = -1;
+                return false;
+            case "addBatch":
+                checkOpen();
+                batchCount++;
+                return null;
+            case "clearBatch":
+                batchCount = 0;
+                return null;
+            case "executeBatch":
+                checkOpen();
+                return executeBatch();
+            case "getConnection":
+                return connection.proxy();
+            case "setFetchSize":
+                fetchSize = (Integer) args[0];
+                return null;
+            case "getFetchSize":
+                return fetchSize;
+            case "setMaxRows":
+                maxRows = (Integer) args[0];
+                return null;
+            case "getMaxRows":
+                return (int) maxRows;
+            case "setLargeMaxRows":
+                maxRows = (Long) args[0];
+                return null;
+            case "getLargeMaxRows":
+                return maxRows;
+            case "setQueryTimeout":
+                queryTimeout = (Integer) args[0];
+                return null;
+            case "getQueryTimeout":
+                return queryTimeout;
+            case "setFetchDirection":
+            case "setEscapeProcessing":
+            case "setPoolable":
+            case "clearParameters":
+                return null;
+            case "getFetchDirection":
+                return ResultSet.FETCH_FORWARD;
+            case "getResultSetType":
+                return ResultSet.TYPE_FORWARD_ONLY;
+            case "getResultSetConcurrency":
+                return ResultSet.CONCUR_READ_ONLY;
+            default:
+                // setInt, setString, setObject, ... on a prepared statement
+                if (sql != null && name.startsWith("set") && args.length >= 2 && args[0] instanceof Integer) {
+                    checkOpen();
+                    return null;
+                }
+                return UNSUPPORTED;
+        }
+    }
+
+    private String sql(Object[] args) throws SQLException {
+        if (args.length > 0) {
+            if (sql != null) {
+                throw new SQLException("SQL cannot be passed to a PreparedStatement execute method.");
+            }
+            return (String) args[0];
+        }
+        if (sql == null) {
+            throw new SQLException("No SQL given.");
+        }
+        return sql;
+    }
+
+    private MockResultSet executeQuery(String query) throws SQLException {
+        closeResultSet();
+        updateCount = -1;
+        MockSettings settings = connection.settings;
+        boolean count = COUNT_QUERY.matcher(query).matches();
+        long rows = count ? 1 : settings.rows;
+        if (maxRows > 0) {
+            rows = Math.min(rows, maxRows);
+        }
+        resultSet = new MockResultSet(this, connection,
+            count ? Collections.singletonList(ColumnType.BIGINT) : settings.columnTypes,
+            count ? settings.rows : -1, rows, fetchSize > 0 ? fetchSize : settings.pageSize);
+        resultSet.fetchPage();
+        failSometimes();
+        return resultSet;
+    }
+
+    private long executeUpdate() throws SQLException {
+        closeResultSet();
+        connection.request("POST", "rows", connection.settings.pageLatency);
+        failSometimes();
+        return 1;
+    }
+
+    private int[] executeBatch() throws SQLException {
+        MockSettings settings = connection.settings;
+        int rows = batchCount;
+        batchCount = 0;
+        for (int sent = 0; sent < rows; sent += settings.batchSize) {
+            connection.request("POST", "batch/" + (sent / settings.batchSize + 1), settings.pageLatency);
+        }
+        failSometimes();
+        int[] counts = new int[rows];
+        Arrays.fill(counts, 1);
+        return counts;
+    }
+
+    private void failSometimes() throws SQLException {
+        MockSettings settings = connection.settings;
+        if (settings.errorRate > 0 && connection.httpLog.random().nextDouble() < settings.errorRate) {
+            closeResultSet();
+            throw new SQLException("Simulated failure (ErrorRate=" + settings.errorRate + ").", "08S01");
+        }
+    }
+
+    private void closeResultSet() throws SQLException {
+        if (resultSet != null) {
+            resultSet.close();
+            resultSet = null;
+        }
+    }
+}